@@ -0,0 +1,213 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe cache holding at most a fixed number of entries.
+ * 
+ * When the cache is full, adding a new entry evicts the least recently used
+ * entry or the oldest entry, depending on the {@link Eviction} policy. The
+ * cache counts the number of successful and failed lookups.
+ * 
+ * The cache can be split into stripes, each holding a part of the entries
+ * behind its own lock, so that threads using different keys do not wait on
+ * each other. The eviction policy is then applied in each stripe separately.
+ * 
+ * A maximum size of zero disables the cache: nothing is stored, and every
+ * lookup is a miss.
+ * 
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ * @author Gaëtan Staquet
+ */
+public final class BoundedCache<K, V> {
+
+    /**
+     * The policy used to select the entry to remove when the cache is full.
+     */
+    public enum Eviction {
+        /**
+         * Removes the entry that was used the least recently.
+         */
+        LEAST_RECENTLY_USED,
+        /**
+         * Removes the entry that was added first.
+         */
+        FIRST_IN_FIRST_OUT
+    }
+
+    private final int maximumSize;
+    private final Eviction eviction;
+    private final Map<K, V>[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache with a single stripe.
+     * 
+     * @param maximumSize The maximal number of entries in the cache
+     * @param eviction    The eviction policy
+     */
+    public BoundedCache(final int maximumSize, final Eviction eviction) {
+        this(maximumSize, eviction, 1);
+    }
+
+    /**
+     * @param maximumSize The maximal number of entries in the cache
+     * @param eviction    The eviction policy
+     * @param stripes     The number of stripes. It is reduced to the maximal
+     *                    size, if needed
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public BoundedCache(final int maximumSize, final Eviction eviction, final int stripes) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The maximal size of a cache can not be negative");
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("A cache needs at least one stripe");
+        }
+        this.maximumSize = maximumSize;
+        this.eviction = eviction;
+        this.stripes = new Map[Math.max(1, Math.min(stripes, maximumSize))];
+        for (int i = 0; i < this.stripes.length; i++) {
+            // The entries are spread as evenly as possible between the stripes
+            final int stripeSize = maximumSize / this.stripes.length + (i < maximumSize % this.stripes.length ? 1 : 0);
+            this.stripes[i] = new LinkedHashMap<K, V>(16, 0.75f, eviction == Eviction.LEAST_RECENTLY_USED) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > stripeSize;
+                }
+            };
+        }
+    }
+
+    private Map<K, V> stripe(final Object key) {
+        if (stripes.length == 1) {
+            return stripes[0];
+        }
+        final int hash = key.hashCode();
+        return stripes[Math.floorMod(hash ^ (hash >>> 16), stripes.length)];
+    }
+
+    /**
+     * Gets the value associated with the key.
+     * 
+     * @param key The key
+     * @return The value, or null if the key is not in the cache
+     */
+    public V get(final K key) {
+        final Map<K, V> stripe = stripe(key);
+        final V value;
+        synchronized (stripe) {
+            value = stripe.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Associates the value with the key, possibly evicting an other entry.
+     * 
+     * @param key   The key
+     * @param value The value
+     */
+    public void put(final K key, final V value) {
+        if (maximumSize != 0) {
+            final Map<K, V> stripe = stripe(key);
+            synchronized (stripe) {
+                stripe.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Removes all the entries and resets the counters.
+     */
+    public void clear() {
+        for (final Map<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Map<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    public int getNumberOfStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * @return The number of lookups that found a value
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that did not find a value
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The proportion of lookups that found a value, or zero if there was
+     *         no lookup
+     */
+    public double getHitRate() {
+        final long hits = getHits();
+        final long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedCache[size=" + size() + ", maximumSize=" + maximumSize + ", eviction=" + eviction
+                + ", stripes=" + stripes.length + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+}
@@ -19,18 +19,29 @@
 package be.ac.umons.jsonschematools;
 
 import java.util.Collection;
-import java.util.Objects;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
- * A {@code JSONArray} that overrides the {@code hashCode} function.
+ * A {@code JSONArray} that overrides the {@code hashCode} and {@code equals}
+ * functions.
+ * 
+ * As for {@link HashableJSONObject}, equality is given by
+ * {@link JSONArray#similar(Object)}, and nested values are copy-on-write: a
+ * copy (or a value returned by a getter) shares its nested objects and arrays
+ * with the original array, and they are only duplicated when they are
+ * modified. Since {@code JSONArray} does not allow to share its list of
+ * elements, a copy of an array duplicates the references to its elements, but
+ * not the elements themselves.
  * 
  * @author Gaëtan Staquet
  */
 public class HashableJSONArray extends JSONArray {
+    private int hash;
+
     public HashableJSONArray() {
         super();
     }
@@ -40,36 +51,146 @@ public class HashableJSONArray extends JSONArray {
     }
 
     public HashableJSONArray(Collection<?> values) {
-        super(values);
+        super(values.size());
+        putAll(values);
     }
 
+    /**
+     * Copies an array.
+     * 
+     * If the array is hashable, the nested objects and arrays are shared with the
+     * copy until they are modified. Otherwise, the array is converted.
+     * 
+     * @param array The array to copy
+     */
     public HashableJSONArray(JSONArray array) {
-        super(array);
+        super(array.length());
+        if (array instanceof HashableJSONArray) {
+            // The elements of a hashable array are never modified
+            for (int i = 0; i < array.length(); i++) {
+                super.put(rawElement(array, i));
+            }
+            this.hash = ((HashableJSONArray) array).hash;
+        } else {
+            putAll(array);
+        }
+    }
+
+    private static Object rawElement(final JSONArray array, final int index) {
+        return ((HashableJSONArray) array).rawOpt(index);
+    }
+
+    private Object rawOpt(final int index) {
+        return super.opt(index);
+    }
+
+    static int hashArray(final JSONArray array) {
+        int hash = 1;
+        for (int i = 0; i < array.length(); i++) {
+            hash = 31 * hash + HashableJSONObject.structuralHash(array.opt(i));
+        }
+        return hash;
     }
 
     @Override
-    public JSONObject getJSONObject(int index) throws JSONException {
-        return new HashableJSONObject(super.getJSONObject(index));
+    public Object opt(int index) {
+        return HashableJSONObject.expose(super.opt(index));
     }
 
     @Override
-    public JSONArray getJSONArray(int index) throws JSONException {
-        return new HashableJSONArray(super.getJSONArray(index));
+    public JSONArray put(Object value) {
+        hash = 0;
+        return super.put(HashableJSONObject.share(value));
     }
 
     @Override
-    public Object get(int index) throws JSONException {
-        Object value = super.get(index);
-        if (value instanceof JSONObject) {
-            return new HashableJSONObject((JSONObject) value);
-        } else if (value instanceof JSONArray) {
-            return new HashableJSONArray((JSONArray) value);
+    public JSONArray put(int index, Object value) throws JSONException {
+        hash = 0;
+        return super.put(index, HashableJSONObject.share(value));
+    }
+
+    @Override
+    public JSONArray putAll(Collection<?> collection) {
+        return putAll((Iterable<?>) collection);
+    }
+
+    @Override
+    public JSONArray putAll(Iterable<?> iter) {
+        for (final Object value : new JSONArray(iter)) {
+            put(value);
         }
-        return value;
+        return this;
+    }
+
+    @Override
+    public JSONArray putAll(JSONArray array) {
+        for (int i = 0; i < array.length(); i++) {
+            put(array.opt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public JSONArray putAll(Object array) throws JSONException {
+        if (array instanceof JSONArray) {
+            return putAll((JSONArray) array);
+        }
+        return putAll(new JSONArray(array));
+    }
+
+    @Override
+    public Object remove(int index) {
+        hash = 0;
+        return HashableJSONObject.expose(super.remove(index));
+    }
+
+    @Override
+    public void clear() {
+        hash = 0;
+        super.clear();
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < length();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return opt(index++);
+            }
+        };
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.toList());
+        int result = hash;
+        if (result == 0) {
+            result = 1;
+            for (int i = 0; i < length(); i++) {
+                result = 31 * result + HashableJSONObject.structuralHash(super.opt(i));
+            }
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof HashableJSONArray)) {
+            return false;
+        }
+        return hashCode() == other.hashCode() && similar(other);
     }
 }
@@ -18,7 +18,11 @@
 
 package be.ac.umons.jsonschematools;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -26,12 +30,49 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 /**
- * A {@code JSONObject} that overrides the {@code hashCode} function.
+ * A {@code JSONObject} that overrides the {@code hashCode} and {@code equals}
+ * functions.
+ * 
+ * Two hashable objects are equal if they are similar (see
+ * {@link JSONObject#similar(Object)}), and the hash code is computed from the
+ * whole content of the object, consistently with {@code similar}.
+ * 
+ * Copies are copy-on-write: the copy constructor and the getters return an
+ * object that shares its entries with the original one, and the entries are
+ * only duplicated the first time one of the objects is modified. As for a
+ * copy, modifying a value returned by a getter does not modify the object it
+ * was read from, and conversely. Reading a value never modifies the object.
+ * Plain {@code JSONObject}s and {@code JSONArray}s are converted once, when they
+ * are added to a hashable object.
  * 
  * @author Gaëtan Staquet
  */
 public class HashableJSONObject extends JSONObject {
 
+    /**
+     * The entries of one or more objects. The values that are objects or arrays
+     * are hashable, and are never exposed: the getters return copies.
+     * 
+     * Once shared, the entries are never modified, which allows to cache the hash
+     * code. An object that holds shared entries duplicates them before modifying
+     * them. The flag is volatile, as marking the entries as shared is the only
+     * write that copying an object performs, and copies may be made by multiple
+     * threads.
+     */
+    private static final class Entries {
+        private final Map<String, Object> map;
+        private volatile boolean shared;
+        private int hash;
+
+        Entries(final Map<String, Object> map) {
+            this.map = map;
+        }
+    }
+
+    // Not initialized in the declarations, as the constructor from a tokener adds
+    // entries before the fields of this class are initialized
+    private Entries entries;
+
     public HashableJSONObject() {
         super();
     }
@@ -40,35 +81,226 @@ public class HashableJSONObject extends JSONObject {
         super(tokener);
     }
 
+    /**
+     * Copies an object.
+     * 
+     * If the object is hashable, the copy shares the entries of the object until
+     * one of them is modified. Otherwise, the object is converted. The copied
+     * object is not modified: only its entries are marked as shared.
+     * 
+     * @param object The object to copy
+     */
     public HashableJSONObject(JSONObject object) {
-        super(object.toString());
+        super();
+        if (object instanceof HashableJSONObject) {
+            final Entries entries = ((HashableJSONObject) object).entries;
+            if (entries != null) {
+                entries.shared = true;
+                this.entries = entries;
+            }
+        } else {
+            for (final String key : object.keySet()) {
+                put(key, object.opt(key));
+            }
+        }
+    }
+
+    /**
+     * Gets a value that can be stored in a hashable object or array.
+     * 
+     * Hashable objects and arrays are copied (see
+     * {@link #HashableJSONObject(JSONObject)} and
+     * {@link HashableJSONArray#HashableJSONArray(JSONArray)}), and plain objects
+     * and arrays are converted. Other values are immutable and returned as-is.
+     * 
+     * @param value The value
+     * @return A value that is not affected by later modifications of the argument
+     */
+    static Object share(final Object value) {
+        if (value instanceof JSONObject) {
+            final HashableJSONObject copy = new HashableJSONObject((JSONObject) value);
+            // Stored values are never modified, so that exposing them is free
+            copy.entries().shared = true;
+            return copy;
+        } else if (value instanceof JSONArray) {
+            return new HashableJSONArray((JSONArray) value);
+        }
+        return value;
+    }
+
+    /**
+     * Gets a copy of a stored value, that can be given to the caller.
+     */
+    static Object expose(final Object value) {
+        if (value instanceof HashableJSONObject) {
+            final HashableJSONObject stored = (HashableJSONObject) value;
+            // The entries of a stored value are already marked as shared
+            final HashableJSONObject copy = new HashableJSONObject();
+            copy.entries = stored.entries();
+            return copy;
+        } else if (value instanceof HashableJSONArray) {
+            return new HashableJSONArray((HashableJSONArray) value);
+        }
+        return value;
+    }
+
+    private Entries entries() {
+        Entries entries = this.entries;
+        if (entries == null) {
+            entries = new Entries(new HashMap<>());
+            this.entries = entries;
+        }
+        return entries;
+    }
+
+    private Map<String, Object> map() {
+        return entries().map;
+    }
+
+    /**
+     * Gets the entries to modify, duplicating them if they are shared.
+     */
+    private Map<String, Object> writableMap() {
+        final Entries entries = entries();
+        if (entries.shared) {
+            // Added one by one, so that the copy iterates in the same order as a
+            // JSONObject built with the same entries
+            final Map<String, Object> copy = new HashMap<>();
+            for (final Map.Entry<String, Object> entry : entries.map.entrySet()) {
+                copy.put(entry.getKey(), entry.getValue());
+            }
+            this.entries = new Entries(copy);
+        } else {
+            entries.hash = 0;
+        }
+        return this.entries.map;
+    }
+
+    /**
+     * Computes a hash code of a JSON value that is consistent with
+     * {@link JSONObject#similar(Object)}.
+     * 
+     * Numbers are hashed through their double value, as similar numbers can be
+     * stored with different classes.
+     * 
+     * @param value The value
+     * @return The hash code
+     */
+    static int structuralHash(final Object value) {
+        if (value instanceof HashableJSONObject || value instanceof HashableJSONArray) {
+            return value.hashCode();
+        } else if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            int hash = 0;
+            for (final String key : object.keySet()) {
+                hash += key.hashCode() ^ structuralHash(object.opt(key));
+            }
+            return hash;
+        } else if (value instanceof JSONArray) {
+            return HashableJSONArray.hashArray((JSONArray) value);
+        } else if (value instanceof Number) {
+            final double number = ((Number) value).doubleValue();
+            // -0.0 and 0.0 must have the same hash
+            return Double.hashCode(number == 0 ? 0 : number);
+        }
+        return Objects.hashCode(value);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(keySet());
+        final Entries entries = entries();
+        int result = entries.hash;
+        if (result == 0) {
+            for (final Map.Entry<String, Object> entry : entries.map.entrySet()) {
+                result += entry.getKey().hashCode() ^ structuralHash(entry.getValue());
+            }
+            entries.hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof HashableJSONObject)) {
+            return false;
+        }
+        return hashCode() == other.hashCode() && similar(other);
     }
 
     @Override
     public HashableJSONObject getJSONObject(String key) throws JSONException {
-        JSONObject object = super.getJSONObject(key);
-        return new HashableJSONObject(object);
+        return (HashableJSONObject) super.getJSONObject(key);
     }
 
     @Override
-    public JSONArray getJSONArray(String key) throws JSONException {
-        return new HashableJSONArray(super.getJSONArray(key));
+    public Object opt(String key) {
+        return key == null ? null : expose(map().get(key));
     }
 
     @Override
-    public Object get(String key) throws JSONException {
-        Object value = super.get(key);
-        if (value instanceof JSONObject) {
-            return new HashableJSONObject((JSONObject) value);
-        } else if (value instanceof JSONArray) {
-            return new HashableJSONArray((JSONArray) value);
+    public boolean has(String key) {
+        return map().containsKey(key);
+    }
+
+    @Override
+    public int length() {
+        return map().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map().isEmpty();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(map().keySet());
+    }
+
+    @Override
+    protected Set<Map.Entry<String, Object>> entrySet() {
+        return Collections.unmodifiableMap(map()).entrySet();
+    }
+
+    @Override
+    public JSONArray names() {
+        if (isEmpty()) {
+            return null;
         }
-        return value;
+        return new JSONArray(map().keySet());
     }
 
+    @Override
+    public JSONObject put(String key, Object value) throws JSONException {
+        if (key == null) {
+            throw new NullPointerException("Null key.");
+        }
+        if (value == null) {
+            remove(key);
+            return this;
+        }
+        testValidity(value);
+        writableMap().put(key, share(value));
+        return this;
+    }
+
+    @Override
+    public Object remove(String key) {
+        if (!has(key)) {
+            return null;
+        }
+        return expose(writableMap().remove(key));
+    }
+
+    @Override
+    public void clear() {
+        if (entries != null && entries.shared) {
+            entries = null;
+        } else {
+            writableMap().clear();
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.math.BigDecimal;
+
+import be.ac.umons.jsonschematools.tree.JSONTreeModel;
+import be.ac.umons.jsonschematools.tree.OrgJSONTreeModel;
+import be.ac.umons.jsonschematools.tree.ValueKind;
+
+/**
+ * The model of the trees of {@link HashableJSONObject}s and
+ * {@link HashableJSONArray}s, used by the store to parse schemas.
+ * 
+ * The numbers are stored as {@link org.json.JSONTokener} would: integers are
+ * {@link Integer}s when they fit, and decimal numbers are
+ * {@link BigDecimal}s.
+ * 
+ * @author Gaëtan Staquet
+ */
+final class HashableTreeModel implements JSONTreeModel {
+    static final HashableTreeModel INSTANCE = new HashableTreeModel();
+
+    private static final JSONTreeModel READER = OrgJSONTreeModel.INSTANCE;
+
+    private HashableTreeModel() {
+    }
+
+    @Override
+    public ValueKind getKind(final Object value) {
+        return READER.getKind(value);
+    }
+
+    @Override
+    public int size(final Object value) {
+        return READER.size(value);
+    }
+
+    @Override
+    public Object getMember(final Object object, final String key) {
+        return READER.getMember(object, key);
+    }
+
+    @Override
+    public Iterable<String> getKeys(final Object object) {
+        return READER.getKeys(object);
+    }
+
+    @Override
+    public Object getElement(final Object array, final int index) {
+        return READER.getElement(array, index);
+    }
+
+    @Override
+    public String getString(final Object value) {
+        return READER.getString(value);
+    }
+
+    @Override
+    public Number getNumber(final Object value) {
+        return READER.getNumber(value);
+    }
+
+    @Override
+    public boolean getBoolean(final Object value) {
+        return READER.getBoolean(value);
+    }
+
+    @Override
+    public Object createObject(final String[] keys, final Object[] values, final int size) {
+        final HashableJSONObject object = new HashableJSONObject();
+        for (int i = 0; i < size; i++) {
+            object.put(keys[i], values[i]);
+        }
+        return object;
+    }
+
+    @Override
+    public Object createArray(final Object[] elements, final int size) {
+        final HashableJSONArray array = new HashableJSONArray(size);
+        for (int i = 0; i < size; i++) {
+            array.put(elements[i]);
+        }
+        return array;
+    }
+
+    @Override
+    public Object createString(final String value) {
+        return value;
+    }
+
+    @Override
+    public Object createNumber(final Number value) {
+        if (value instanceof Long && value.longValue() == value.intValue()) {
+            return value.intValue();
+        } else if (value instanceof Double) {
+            final double number = value.doubleValue();
+            if (number == 0 && Double.doubleToRawLongBits(number) != 0) {
+                // -0.0 does not exist as a BigDecimal
+                return value;
+            }
+            return BigDecimal.valueOf(number);
+        }
+        return value;
+    }
+
+    @Override
+    public Object createBoolean(final boolean value) {
+        return value;
+    }
+
+    @Override
+    public Object createNull() {
+        return READER.createNull();
+    }
+}
@@ -18,19 +18,16 @@
 
 package be.ac.umons.jsonschematools;
 
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.function.BiConsumer;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.stream.Collectors;
 
 import org.json.JSONArray;
@@ -51,17 +48,44 @@ import org.json.JSONObject;
  * <li>Automatically follow <code>$ref</code> when encountered.</li>
  * </ul>
  * 
+ * A schema is thread-safe. The underlying document is never modified, and the
+ * values computed on demand (the merged sub-schemas, the forbidden values, and
+ * so on) are published through volatile fields. Two threads may compute the
+ * same value at the same time, but they obtain equal results. A schema and its
+ * store can thus be shared by threads that validate or generate documents.
+ * 
  * @author Gaëtan Staquet
  */
 public final class JSONSchema {
     private final JSONObject schema;
     private final JSONObject properties;
-    private final Set<Type> types = new LinkedHashSet<>();
+    private final int types;
+    private final List<Type> orderedTypes;
     private final JSONSchemaStore store;
     private final int fullSchemaId;
     private final Object constValue;
     private final Object forbiddenValue;
     private final JSONObject additionalProperties;
+    private static final AtomicReferenceFieldUpdater<JSONSchema, SchemaNode> NODE = AtomicReferenceFieldUpdater
+            .newUpdater(JSONSchema.class, SchemaNode.class, "node");
+
+    private volatile SchemaNode node;
+
+    // Memoized derivations. As a schema is never modified, they are computed at
+    // most once (up to concurrent computations of the same value)
+    private volatile JSONSchema cachedAllOf;
+    private volatile List<JSONSchema> cachedAnyOf;
+    private volatile List<JSONSchema> cachedOneOf;
+    private volatile List<JSONSchema> cachedOneOfBranches;
+    private volatile List<JSONSchema> cachedNot;
+    private volatile Set<String> cachedRequiredPropertiesKeys;
+    private volatile Map<String, JSONSchema> cachedRequiredProperties;
+    private volatile Map<String, JSONSchema> cachedNonRequiredProperties;
+    private volatile Set<Object> cachedForbiddenValues;
+    private volatile RecursionAnalysis cachedRecursionAnalysis;
+    private volatile KeyAlphabet cachedKeyAlphabet;
+    private volatile List<JSONSchema> cachedNormalForm;
+    private volatile Boolean cachedSatisfiable;
 
     JSONSchema(final JSONObject object, final JSONSchemaStore store, final int fullSchemaId)
             throws JSONSchemaException {
@@ -69,36 +93,36 @@ public final class JSONSchema {
         this.store = store;
         this.fullSchemaId = fullSchemaId;
 
+        int types = 0;
         boolean atLeastOne = false;
         if (object.has("type")) {
-            addTypes(object.get("type"));
+            types |= typesMask(object.get("type"));
             atLeastOne = true;
         }
         if (object.has("enum")) {
-            types.add(Type.ENUM);
+            types |= Type.ENUM.mask();
             atLeastOne = true;
         }
         if (object.has("const")) {
             constValue = object.get("const");
             atLeastOne = true;
-            types.clear();
-            types.add(getConstType());
+            types = getConstType().mask();
         } else {
             constValue = null;
         }
 
         if (!atLeastOne) {
-            types.addAll(EnumSet.allOf(Type.class));
+            types = Type.ALL;
         }
 
         if (object.has("not")) {
             JSONObject not = object.getJSONObject("not");
             if (not.has("type")) {
-                removeTypes(not.get("type"));
+                types &= ~typesMask(not.get("type"));
             }
 
             if (not.has("enum")) {
-                types.add(Type.ENUM);
+                types |= Type.ENUM.mask();
             }
 
             if (not.has("const")) {
@@ -116,11 +140,11 @@ public final class JSONSchema {
                     && object.getJSONArray("anyOf").getJSONObject(0).has("not")) {
                 JSONObject not = object.getJSONArray("anyOf").getJSONObject(0).getJSONObject("not");
                 if (not.has("type")) {
-                    removeTypes(not.get("type"));
+                    types &= ~typesMask(not.get("type"));
                 }
 
                 if (not.has("enum")) {
-                    types.add(Type.ENUM);
+                    types |= Type.ENUM.mask();
                 }
 
                 if (not.has("const")) {
@@ -132,10 +156,13 @@ public final class JSONSchema {
                 forbiddenValue = null;
             }
         }
+        this.types = types;
+        this.orderedTypes = orderTypes(types, object.has("const") ? null : object.opt("type"));
 
         if (isObject()) {
             if (object.has("properties")) {
-                this.properties = object.getJSONObject("properties");
+                // Copied, as keys are added below
+                this.properties = new HashableJSONObject(object.getJSONObject("properties"));
             } else {
                 this.properties = new HashableJSONObject();
             }
@@ -166,6 +193,37 @@ public final class JSONSchema {
         return schema;
     }
 
+    JSONObject getPropertiesObject() {
+        return properties;
+    }
+
+    JSONObject getAdditionalPropertiesObject() {
+        return additionalProperties;
+    }
+
+    /**
+     * Sets the node of this schema, unless another thread already did.
+     * 
+     * @param node The node
+     * @return The node of this schema
+     */
+    SchemaNode publishNode(final SchemaNode node) {
+        NODE.compareAndSet(this, null, node);
+        return this.node;
+    }
+
+    /**
+     * Returns true if this schema was compiled by its store.
+     * 
+     * The sub-schemas of a compiled schema are constructed once and shared
+     * between calls. See {@link JSONSchemaStore#compile(JSONSchema)}.
+     * 
+     * @return True if this schema is compiled
+     */
+    public boolean isCompiled() {
+        return node != null;
+    }
+
     private Type getConstType() {
         if (constValue instanceof Integer) {
             return Type.INTEGER;
@@ -226,116 +284,96 @@ public final class JSONSchema {
         }
     }
 
-    private void addTypes(Object types) throws JSONSchemaException {
+    private static int typesMask(Object types) throws JSONSchemaException {
         if (types instanceof JSONArray) {
             JSONArray arrayType = (JSONArray) types;
+            int mask = 0;
             for (Object t : arrayType) {
                 if (t.getClass() != String.class) {
                     throw new JSONSchemaException("Elements in an array for key \"type\" must be strings");
                 }
-                addType((String) t);
+                mask |= typeMask((String) t);
             }
+            return mask;
         } else if (types instanceof String) {
-            addType((String) types);
+            return typeMask((String) types);
         } else {
             throw new JSONSchemaException("The value for the key \"type\" must be an array or a string");
         }
     }
 
-    private void addType(String type) {
-        types.add(Type.valueOf(type.toUpperCase()));
+    private static int typeMask(String type) {
+        return Type.valueOf(type.toUpperCase()).mask();
     }
 
-    private void removeTypes(Object types) throws JSONSchemaException {
-        if (types instanceof JSONArray) {
-            JSONArray arrayType = (JSONArray) types;
-            for (Object t : arrayType) {
-                if (t.getClass() != String.class) {
-                    throw new JSONSchemaException("Elements in an array for key \"type\" must be strings");
-                }
-                removeType((String) t);
-            }
-        } else if (types instanceof String) {
-            removeType((String) types);
+    /**
+     * Orders the allowed types as they are given in the schema, followed by the
+     * types that were not explicitly given.
+     * 
+     * @param types     The mask of the allowed types
+     * @param typeValue The value of "type" in the schema, or null
+     * @return An unmodifiable list of the types
+     */
+    private static List<Type> orderTypes(int types, Object typeValue) {
+        final Iterable<?> given;
+        if (typeValue instanceof JSONArray) {
+            given = (JSONArray) typeValue;
+        } else if (typeValue instanceof String) {
+            given = Collections.singletonList(typeValue);
         } else {
-            throw new JSONSchemaException("The value for the key \"type\" must be an array or a string");
-        }
-    }
-
-    private void removeType(String type) {
-        types.remove(Type.valueOf(type.toUpperCase()));
-    }
-
-    private int depth(JSONObject schema) throws JSONSchemaException {
-        if (JSONSchemaStore.isTrueDocument(schema)) {
-            return 0;
-        }
-        if (schema.has("$ref")) {
-            JSONSchema asSchema = new JSONSchema(schema, store, fullSchemaId);
-            return asSchema.handleRef(schema.getString("$ref")).depth();
+            return Type.listOf(types);
         }
-        int depth = 0;
-        for (String key : schema.keySet()) {
-            if (key.equals("properties")) {
-                JSONObject properties = schema.getJSONObject("properties");
-                depth = Math.max(depth, depth(properties) + 1);
-            }
-            else if (key.equals("items")) {
-                Object items = schema.get("items");
-                if (items instanceof JSONObject) {
-                    depth = Math.max(depth, depth((JSONObject) items) + 1);
-                }
-                else if (items instanceof JSONArray) {
-                    for (Object item : (JSONArray) items) {
-                        depth = Math.max(depth, depth((JSONObject) item) + 1);
-                    }
-                }
-            }
-            else if (key.equals("allOf")) {
-                JSONArray allOf = schema.getJSONArray("allOf");
-                for (Object all : (JSONArray) allOf) {
-                    depth = Math.max(depth, depth((JSONObject) all));
-                }
-            }
-            else if (key.equals("anyOf")) {
-                JSONArray anyOf = schema.getJSONArray("anyOf");
-                for (Object all : (JSONArray) anyOf) {
-                    depth = Math.max(depth, depth((JSONObject) all));
-                }
-            }
-            else if (key.equals("oneOf")) {
-                JSONArray oneOf = schema.getJSONArray("oneOf");
-                for (Object all : (JSONArray) oneOf) {
-                    depth = Math.max(depth, depth((JSONObject) all));
-                }
-            }
-            else if (key.equals("not")) {
-                JSONObject not = schema.getJSONObject("not");
-                depth = Math.max(depth, depth(not));
-            }
-            else {
-                Object value = schema.get(key);
-                if (value instanceof JSONObject) {
-                    depth = Math.max(depth, depth((JSONObject)value));
-                }
+        final List<Type> ordered = new ArrayList<>(Integer.bitCount(types));
+        int remaining = types;
+        for (Object t : given) {
+            final int mask = typeMask((String) t);
+            if ((remaining & mask) != 0) {
+                ordered.add(Type.fromMask(mask, 0));
+                remaining &= ~mask;
             }
         }
-
-        return depth;
+        ordered.addAll(Type.listOf(remaining));
+        // Most schemas give the types in the order of the declaration
+        if (ordered.equals(Type.listOf(types))) {
+            return Type.listOf(types);
+        }
+        return Collections.unmodifiableList(ordered);
     }
 
     /**
      * Computes the depth of the schema, i.e., the maximal number of nested objects.
      * 
-     * If the schema is recursive, the depth is infinite and this function does not return.
+     * See {@link #analyzeRecursion()}.
      * @return The depth of the schema
-     * @throws JSONSchemaException
+     * @throws JSONSchemaException If the schema is recursive and its depth is
+     *                             unbounded, or if a reference can not be
+     *                             resolved
      */
     public int depth() throws JSONSchemaException {
-        if (JSONSchemaStore.isTrueSchema(this)) {
-            return 0;
+        final RecursionAnalysis analysis = analyzeRecursion();
+        if (!analysis.isBounded()) {
+            throw new JSONSchemaException(
+                    "The depth of the schema is unbounded, due to the recursive cycles " + analysis.getCycles());
         }
-        return depth(schema);
+        return analysis.getDepth().getAsInt();
+    }
+
+    /**
+     * Analyzes the recursion in this schema, and computes its depth.
+     * 
+     * The analysis always terminates, even on recursive schemas, and is
+     * memoized.
+     * 
+     * @return The analysis
+     * @throws JSONSchemaException If a reference can not be resolved
+     */
+    public RecursionAnalysis analyzeRecursion() throws JSONSchemaException {
+        RecursionAnalysis analysis = cachedRecursionAnalysis;
+        if (analysis == null) {
+            analysis = RecursionAnalysis.analyze(this);
+            cachedRecursionAnalysis = analysis;
+        }
+        return analysis;
     }
 
     /**
@@ -346,7 +384,10 @@ public final class JSONSchema {
      * @throws JSONSchemaException
      */
     public JSONSchema getAdditionalProperties() throws JSONSchemaException {
-        return new JSONSchema(additionalProperties, store, fullSchemaId);
+        if (node != null) {
+            return node.getAdditionalProperties();
+        }
+        return store.intern(additionalProperties, fullSchemaId);
     }
 
     /**
@@ -355,114 +396,64 @@ public final class JSONSchema {
      * If the schema contains a sub-schema (due to <code>properties</code>, for
      * instance), the answer will contain the keys from the sub-schema.
      * 
-     * @return A set containing all the keys defined in this schema.
+     * @return An unmodifiable set containing all the keys defined in this schema.
      * @throws JSONSchemaException
      */
     public Set<String> getAllKeysDefinedInSchema() throws JSONSchemaException {
-        class InQueue {
-            public final String path;
-            public final JSONObject object;
-
-            public InQueue(final String path, final JSONObject object) {
-                this.path = path;
-                this.object = object;
-            }
-        }
-
-        if (!isObject() && !isArray()) {
-            return Collections.emptySet();
-        }
-
-        final Set<String> allKeys = new LinkedHashSet<>();
-        final Set<String> seenPaths = new LinkedHashSet<>(); // Store "#/properties/object/value", and so on
-        final Queue<InQueue> queue = new LinkedList<>();
-        queue.add(new InQueue("#", schema));
-        seenPaths.add("#");
+        return getKeyAlphabet().getKeysDefinedInSchema();
+    }
 
-        final BiConsumer<String, JSONObject> addObjectToQueueIfNotAlreadySeen = (path, prop) -> {
-            if (!seenPaths.contains(path)) {
-                seenPaths.add(path);
-                queue.add(new InQueue(path, prop));
-            }
-        };
-        final BiConsumer<String, JSONObject> addAllPropertiesInQueue = (path, properties) -> {
-            for (final String key : properties.keySet()) {
-                allKeys.add(key);
-                final JSONObject prop = properties.getJSONObject(key);
-                if (prop.has("$ref")) {
-                    queue.add(new InQueue(path + "/" + key, prop));
-                } else {
-                    addObjectToQueueIfNotAlreadySeen.accept(path + "/" + key, prop);
-                }
-            }
-        };
-
-        while (!queue.isEmpty()) {
-            final InQueue current = queue.poll();
-            JSONObject document = current.object;
-            if (document.has("$ref")) {
-                final String ref = document.getString("$ref");
-                if (seenPaths.contains(ref)) {
-                    continue;
-                }
-                document = handleRef(ref).schema;
-                seenPaths.add(ref);
-            }
-            if (document.has("properties")) {
-                addAllPropertiesInQueue.accept(current.path + "/properties", document.getJSONObject("properties"));
-            }
-            if (document.has("additionalProperties")) {
-                final Object additionalProperties = document.get("additionalProperties");
-                if (additionalProperties instanceof JSONObject) {
-                    allKeys.add(AbstractConstants.stringConstant);
-                    queue.add(new InQueue(current.path + "/additionalProperties", (JSONObject) additionalProperties));
-                } else if (additionalProperties instanceof Boolean && (boolean) additionalProperties) {
-                    allKeys.add(AbstractConstants.stringConstant);
-                }
-            }
-            if (document.has("patternProperties")) {
-                addAllPropertiesInQueue.accept(current.path + "/patternProperties",
-                        document.getJSONObject("patternProperties"));
-            }
-            if (document.has("items")) {
-                final Object object = document.get("items");
-                final JSONArray items;
-                if (object instanceof JSONArray) {
-                    items = (JSONArray) object;
-                } else {
-                    items = new HashableJSONArray();
-                    items.put((JSONObject) object);
-                }
-                for (int i = 0; i < items.length(); i++) {
-                    addObjectToQueueIfNotAlreadySeen.accept(current.path + "/items" + i, items.getJSONObject(i));
-                }
-            }
-            for (final String key : Arrays.asList("allOf", "anyOf", "oneOf")) {
-                if (document.has(key)) {
-                    final JSONArray value = document.getJSONArray(key);
-                    final String path = current.path + "/" + key;
-                    for (final Object object : value) {
-                        final JSONObject subSchema = (JSONObject) object;
-                        queue.add(new InQueue(path, subSchema));
-                    }
-                }
-            }
-            if (document.has("not")) {
-                final JSONObject not = document.getJSONObject("not");
-                queue.add(new InQueue(current.path + "/not", not));
-            }
+    /**
+     * Gets the alphabet of the keys that can appear in the documents of this
+     * schema, with a dense integer identifier for each key.
+     * 
+     * The alphabet is computed once.
+     * 
+     * @return The alphabet
+     * @throws JSONSchemaException If a reference can not be resolved
+     */
+    public KeyAlphabet getKeyAlphabet() throws JSONSchemaException {
+        KeyAlphabet alphabet = cachedKeyAlphabet;
+        if (alphabet == null) {
+            alphabet = KeyAlphabet.compute(this);
+            cachedKeyAlphabet = alphabet;
         }
-
-        return allKeys;
+        return alphabet;
     }
 
     /**
      * Gets all the types that are allowed in this schema.
      * 
-     * @return A set containing all allowed types.
+     * @return An unmodifiable list containing all allowed types, in the order
+     *         they are given in the schema.
      */
     public List<Type> getAllowedTypes() {
-        return new ArrayList<>(types);
+        return orderedTypes;
+    }
+
+    /**
+     * Gets all the types that are allowed in this schema, as an unmodifiable
+     * set.
+     * 
+     * @return A set containing all allowed types.
+     */
+    public Set<Type> getAllowedTypesSet() {
+        return Type.setOf(types);
+    }
+
+    /**
+     * Gets all the types that are allowed in this schema, as a mask.
+     * 
+     * See {@link Type#mask()}.
+     * 
+     * @return The mask of the allowed types
+     */
+    public int getAllowedTypesMask() {
+        return types;
+    }
+
+    private boolean allows(final Type type) {
+        return (types & type.mask()) != 0;
     }
 
     /**
@@ -474,6 +465,15 @@ public final class JSONSchema {
      * @return A set with the forbidden values.
      */
     public Set<Object> getForbiddenValues() {
+        Set<Object> forbiddenValues = cachedForbiddenValues;
+        if (forbiddenValues == null) {
+            forbiddenValues = Collections.unmodifiableSet(computeForbiddenValues());
+            cachedForbiddenValues = forbiddenValues;
+        }
+        return forbiddenValues;
+    }
+
+    private Set<Object> computeForbiddenValues() {
         Set<Object> forbiddenValues = new LinkedHashSet<>();
         if (schema.has("anyOf")) {
             JSONArray anyOf = schema.getJSONArray("anyOf");
@@ -545,7 +545,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type ENUM.
      */
     public boolean isEnum() {
-        return getAllowedTypes().contains(Type.ENUM);
+        return allows(Type.ENUM);
     }
 
     /**
@@ -554,7 +554,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type OBJECT.
      */
     public boolean isObject() {
-        return getAllowedTypes().contains(Type.OBJECT);
+        return allows(Type.OBJECT);
     }
 
     /**
@@ -563,7 +563,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type ARRAY.
      */
     public boolean isArray() {
-        return getAllowedTypes().contains(Type.ARRAY);
+        return allows(Type.ARRAY);
     }
 
     /**
@@ -572,7 +572,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type INTEGER.
      */
     public boolean isInteger() {
-        return getAllowedTypes().contains(Type.INTEGER);
+        return allows(Type.INTEGER);
     }
 
     /**
@@ -581,7 +581,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type NUMBER.
      */
     public boolean isNumber() {
-        return getAllowedTypes().contains(Type.NUMBER);
+        return allows(Type.NUMBER);
     }
 
     /**
@@ -590,7 +590,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type BOOLEAN.
      */
     public boolean isBoolean() {
-        return getAllowedTypes().contains(Type.BOOLEAN);
+        return allows(Type.BOOLEAN);
     }
 
     /**
@@ -599,7 +599,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type STRING.
      */
     public boolean isString() {
-        return getAllowedTypes().contains(Type.STRING);
+        return allows(Type.STRING);
     }
 
     /**
@@ -608,7 +608,7 @@ public final class JSONSchema {
      * @return True if this schema allows the type NULL.
      */
     public boolean isNull() {
-        return getAllowedTypes().contains(Type.NULL);
+        return allows(Type.NULL);
     }
 
     private boolean needsFurtherUnfoldingNot(JSONObject not) {
@@ -680,6 +680,80 @@ public final class JSONSchema {
         return false;
     }
 
+    /**
+     * Gets the normal form of this schema: a list of branches such that a value
+     * satisfies this schema if and only if it satisfies one of the branches.
+     * 
+     * No branch needs further unfolding (see {@link #needsFurtherUnfolding()}):
+     * the constraints of <code>allOf</code>, <code>anyOf</code>,
+     * <code>oneOf</code>, and <code>not</code> are merged in each branch once and
+     * for all, instead of each time a value is generated. Branches that are
+     * trivially unsatisfiable are pruned, so the list is empty if this schema can
+     * not be satisfied.
+     * 
+     * The normal form is computed once.
+     * 
+     * @return An unmodifiable list of branches
+     * @throws JSONSchemaException If the normal form has too many branches, or
+     *                             if a sub-schema can not be constructed
+     */
+    public List<JSONSchema> getNormalForm() throws JSONSchemaException {
+        List<JSONSchema> normalForm = cachedNormalForm;
+        if (normalForm == null) {
+            normalForm = NormalForm.compute(this, new HashSet<>());
+            cachedNormalForm = normalForm;
+        }
+        if (node != null) {
+            compileAll(normalForm);
+        }
+        return normalForm;
+    }
+
+    List<JSONSchema> getNormalForm(final Set<JSONSchema> inProgress) throws JSONSchemaException {
+        final List<JSONSchema> normalForm = cachedNormalForm;
+        if (normalForm != null) {
+            return normalForm;
+        }
+        // Not memoized, as the computation may have been cut by a schema that is
+        // already in progress
+        return NormalForm.compute(this, inProgress);
+    }
+
+    /**
+     * Checks whether this schema may be satisfied by some value.
+     * 
+     * The check is cheap and conservative: if this method returns false, no value
+     * satisfies this schema. If it returns true, the schema may still be
+     * unsatisfiable, for instance because of constraints that only conflict
+     * deeper in the schema. The detected contradictions include
+     * <code>minItems</code> greater than <code>maxItems</code>, an empty set of
+     * allowed types, a <code>const</code> value violating the bounds of the
+     * schema, and a required property whose sub-schema is unsatisfiable.
+     * 
+     * The result is computed once.
+     * 
+     * @return False if this schema can not be satisfied, true otherwise
+     * @throws JSONSchemaException If a sub-schema can not be constructed
+     */
+    public boolean isSatisfiable() throws JSONSchemaException {
+        Boolean satisfiable = cachedSatisfiable;
+        if (satisfiable == null) {
+            satisfiable = Satisfiability.check(this, new HashSet<>());
+            cachedSatisfiable = satisfiable;
+        }
+        return satisfiable;
+    }
+
+    boolean isSatisfiable(final Set<JSONSchema> inProgress) throws JSONSchemaException {
+        final Boolean satisfiable = cachedSatisfiable;
+        if (satisfiable != null) {
+            return satisfiable;
+        }
+        // Not memoized, as the check may have been cut by a schema that is already
+        // in progress
+        return Satisfiability.check(this, inProgress);
+    }
+
     /**
      * Gets the keys that are required in this schema's properties.
      * 
@@ -687,6 +761,15 @@ public final class JSONSchema {
      * @throws JSONSchemaException If this schema does not allow the type OBJECT.
      */
     public Set<String> getRequiredPropertiesKeys() throws JSONSchemaException {
+        Set<String> keys = cachedRequiredPropertiesKeys;
+        if (keys == null) {
+            keys = Collections.unmodifiableSet(computeRequiredPropertiesKeys());
+            cachedRequiredPropertiesKeys = keys;
+        }
+        return keys;
+    }
+
+    private Set<String> computeRequiredPropertiesKeys() throws JSONSchemaException {
         if (!isObject()) {
             return Collections.emptySet();
         }
@@ -710,6 +793,15 @@ public final class JSONSchema {
      * @throws JSONSchemaException If this schema does not allow the type OBJECT.
      */
     public Map<String, JSONSchema> getRequiredProperties() throws JSONSchemaException {
+        Map<String, JSONSchema> requiredProperties = cachedRequiredProperties;
+        if (requiredProperties == null) {
+            requiredProperties = Collections.unmodifiableMap(computeRequiredProperties());
+            cachedRequiredProperties = requiredProperties;
+        }
+        return requiredProperties;
+    }
+
+    private Map<String, JSONSchema> computeRequiredProperties() throws JSONSchemaException {
         if (!isObject()) {
             return Collections.emptyMap();
         }
@@ -737,6 +829,15 @@ public final class JSONSchema {
      * @throws JSONSchemaException If this schema does not allow the type OBJECT.
      */
     public Map<String, JSONSchema> getNonRequiredProperties() throws JSONSchemaException {
+        Map<String, JSONSchema> nonRequiredProperties = cachedNonRequiredProperties;
+        if (nonRequiredProperties == null) {
+            nonRequiredProperties = Collections.unmodifiableMap(computeNonRequiredProperties());
+            cachedNonRequiredProperties = nonRequiredProperties;
+        }
+        return nonRequiredProperties;
+    }
+
+    private Map<String, JSONSchema> computeNonRequiredProperties() throws JSONSchemaException {
         if (!isObject()) {
             return Collections.emptyMap();
         }
@@ -778,7 +879,7 @@ public final class JSONSchema {
         }
 
         handleNotInMerge(constraints, keyToValues);
-        return new JSONSchema(constraints, store, fullSchemaId);
+        return store.intern(constraints, fullSchemaId);
     }
 
     /**
@@ -797,7 +898,7 @@ public final class JSONSchema {
             }
             newSchema.put(key, schema.get(key));
         }
-        return new JSONSchema(newSchema, store, fullSchemaId);
+        return store.intern(newSchema, fullSchemaId);
     }
 
     /**
@@ -811,6 +912,18 @@ public final class JSONSchema {
      * @throws JSONSchemaException
      */
     public JSONSchema getAllOf() throws JSONSchemaException {
+        JSONSchema allOf = cachedAllOf;
+        if (allOf == null) {
+            allOf = computeAllOf();
+            cachedAllOf = allOf;
+        }
+        if (node != null) {
+            store.compile(allOf);
+        }
+        return allOf;
+    }
+
+    private JSONSchema computeAllOf() throws JSONSchemaException {
         if (!schema.has("allOf")) {
             return store.trueSchema();
         }
@@ -839,6 +952,15 @@ public final class JSONSchema {
      * @throws JSONSchemaException
      */
     public List<JSONSchema> getAnyOf() throws JSONSchemaException {
+        List<JSONSchema> anyOf = cachedAnyOf;
+        if (anyOf == null) {
+            anyOf = Collections.unmodifiableList(computeAnyOf());
+            cachedAnyOf = anyOf;
+        }
+        return anyOf;
+    }
+
+    List<JSONSchema> computeAnyOf() throws JSONSchemaException {
         if (!schema.has("anyOf")) {
             return Collections.singletonList(store.trueSchema());
         }
@@ -846,7 +968,7 @@ public final class JSONSchema {
         final List<JSONSchema> schemas = new ArrayList<>(anyOf.length());
         for (int i = 0; i < anyOf.length(); i++) {
             final JSONObject subSchema = anyOf.getJSONObject(i);
-            schemas.add(new JSONSchema(subSchema, store, fullSchemaId));
+            schemas.add(store.intern(subSchema, fullSchemaId));
         }
         return schemas;
     }
@@ -865,6 +987,12 @@ public final class JSONSchema {
      * 
      * That is, the function applies the definition of XOR on the elements.
      * 
+     * The combinations are constructed lazily: a combination is only computed
+     * the first time it is retrieved from the list, and the negated elements are
+     * shared between the combinations. Iterating over the list or calling
+     * {@link List#get(int)} is therefore cheap when only a few combinations are
+     * used.
+     * 
      * If there is no <code>oneOf</code> key, returns a singleton list containing
      * the true schema.
      * 
@@ -872,62 +1000,96 @@ public final class JSONSchema {
      * @throws JSONSchemaException
      */
     public List<JSONSchema> getOneOf() throws JSONSchemaException {
-        if (!schema.has("oneOf")) {
-            return Collections.singletonList(store.trueSchema());
+        List<JSONSchema> oneOf = cachedOneOf;
+        if (oneOf == null) {
+            if (schema.has("oneOf")) {
+                // The elements are constructed first, so that an invalid element is
+                // reported here, and not when a combination is requested
+                getOneOfBranches();
+                oneOf = Collections.unmodifiableList(new OneOfCombinations(this, schema.getJSONArray("oneOf")));
+            } else {
+                oneOf = Collections.singletonList(store.trueSchema());
+            }
+            cachedOneOf = oneOf;
         }
-        final JSONArray oneOf = schema.getJSONArray("oneOf");
-        final List<JSONSchema> schemas = new ArrayList<>(oneOf.length());
-        for (int i = 0; i < oneOf.length(); i++) {
-            final JSONObject subSchema = oneOf.getJSONObject(i);
-            schemas.add(new JSONSchema(subSchema, store, fullSchemaId));
-        }
-
-        final List<JSONSchema> combinations = new ArrayList<>(schemas.size());
-        for (int i = 0; i < schemas.size(); i++) {
-            final JSONArray onePossibility = new HashableJSONArray(schemas.size());
-            final JSONSchema positive = schemas.get(i);
-            onePossibility.put(positive.schema);
-            for (int j = 0; j < schemas.size(); j++) {
-                if (i == j) {
-                    continue;
+        return oneOf;
+    }
+
+    /**
+     * Gets a list containing one schema by element in the <code>oneOf</code>
+     * array, without applying the XOR operation.
+     * 
+     * A value satisfies the <code>oneOf</code> if and only if it satisfies
+     * exactly one schema in this list. Contrary to {@link #getOneOf()}, checking
+     * this only requires to evaluate each element once.
+     * 
+     * If there is no <code>oneOf</code> key, a singleton list containing the true
+     * schema is returned.
+     * 
+     * @return A list of schemas, one by element in the <code>oneOf</code> array.
+     * @throws JSONSchemaException If one of the elements is not a valid schema
+     */
+    public List<JSONSchema> getOneOfBranches() throws JSONSchemaException {
+        List<JSONSchema> branches = cachedOneOfBranches;
+        if (branches == null) {
+            if (schema.has("oneOf")) {
+                final JSONArray oneOf = schema.getJSONArray("oneOf");
+                final List<JSONSchema> schemas = new ArrayList<>(oneOf.length());
+                for (int i = 0; i < oneOf.length(); i++) {
+                    final JSONObject branch = oneOf.getJSONObject(i);
+                    if (branch.has("$ref")) {
+                        schemas.add(handleRef(branch.getString("$ref")));
+                    } else {
+                        schemas.add(store.intern(branch, fullSchemaId));
+                    }
                 }
-                final JSONObject notSchema = new HashableJSONObject();
-                notSchema.put("not", schemas.get(j).schema);
-                onePossibility.put(notSchema);
+                if (isCompiled()) {
+                    compileAll(schemas);
+                }
+                branches = Collections.unmodifiableList(schemas);
+            } else {
+                branches = Collections.singletonList(store.trueSchema());
             }
-            final JSONObject allOf = new HashableJSONObject();
-            allOf.put("allOf", onePossibility);
-            final JSONSchema schemaForPossibility = new JSONSchema(allOf, store, fullSchemaId);
-            combinations.add(schemaForPossibility);
+            cachedOneOfBranches = branches;
+        }
+        return branches;
+    }
+
+    private void compileAll(final List<JSONSchema> schemas) throws JSONSchemaException {
+        for (final JSONSchema schema : schemas) {
+            store.compile(schema);
         }
-        return combinations;
     }
 
     private void handleNotInMerge(JSONObject constraints, Map<String, Set<Object>> keyToValues)
             throws JSONSchemaException {
-        if (keyToValues.containsKey("not")) {
-            List<?> valueAfterOperation = (List<?>) MergeKeys.applyOperation("not", keyToValues.get("not"));
-            JSONArray notArray = new HashableJSONArray(valueAfterOperation);
-            if (constraints.has("anyOf")) {
-                JSONObject alreadyAnyOf = new HashableJSONObject();
-                alreadyAnyOf.put("anyOf", constraints.getJSONArray("anyOf"));
-                JSONObject fromNot = new HashableJSONObject();
-                fromNot.put("anyOf", notArray);
-                JSONArray allOf = new HashableJSONArray();
-                allOf.put(alreadyAnyOf);
-                allOf.put(fromNot);
-
-                if (constraints.has("allOf")) {
-                    constraints.append("allOf", alreadyAnyOf);
-                    constraints.append("allOf", fromNot);
-                } else {
-                    constraints.put("allOf", allOf);
+        if (!keyToValues.containsKey("not")) {
+            return;
+        }
+        // Each operand keeps its own negation: merging {"not": A} and {"not": B}
+        // must give (not A) and (not B), and not the negation of A and B
+        for (final Object not : keyToValues.get("not")) {
+            List<?> valueAfterOperation = (List<?>) MergeKeys.applyOperation("not", Collections.singleton(not));
+            if (!constraints.has("anyOf")) {
+                constraints.put("anyOf", new HashableJSONArray(valueAfterOperation));
+                continue;
+            }
+            // (A_1 or ... or A_n) and (B_1 or ... or B_m) is the disjunction of every
+            // A_i and B_j. Keeping a single anyOf avoids an allOf containing multiple
+            // anyOf, whose branches would be mixed when the allOf is merged
+            final JSONArray alreadyAnyOf = constraints.getJSONArray("anyOf");
+            final JSONArray product = new HashableJSONArray(alreadyAnyOf.length() * valueAfterOperation.size());
+            for (int i = 0; i < alreadyAnyOf.length(); i++) {
+                for (final Object fromNot : valueAfterOperation) {
+                    final JSONArray both = new HashableJSONArray(2);
+                    both.put(alreadyAnyOf.get(i));
+                    both.put(fromNot);
+                    final JSONObject conjunction = new HashableJSONObject();
+                    conjunction.put("allOf", both);
+                    product.put(conjunction);
                 }
-
-                constraints.remove("anyOf");
-            } else {
-                constraints.put("anyOf", notArray);
             }
+            constraints.put("anyOf", product);
         }
     }
 
@@ -938,28 +1100,65 @@ public final class JSONSchema {
      * Keys that are defined in both schemas are merged (see the non-API
      * documentation to more information).
      * 
+     * The results are cached by the store (see
+     * {@link JSONSchemaStore#configureMergeCache(int, BoundedCache.Eviction)}).
+     * 
      * @param other The other schema
      * @return A single schema obtained by merging the two schemas
      * @throws JSONSchemaException If it is not possible to merge the schemas.
      */
     public JSONSchema merge(JSONSchema other) throws JSONSchemaException {
-        if (other == null || other.schema.isEmpty()) {
+        return mergeAll(Collections.singletonList(other));
+    }
+
+    /**
+     * Merge this schema with multiple other schemas at once.
+     * 
+     * The values of each key are gathered from all the schemas, and merged by a
+     * single operation (see the non-API documentation to more information).
+     * Only the final schema is constructed, while chaining calls to
+     * {@link #merge(JSONSchema)} constructs every intermediate schema.
+     * 
+     * Schemas that are <code>null</code> or empty are ignored. The results are
+     * cached by the store (see
+     * {@link JSONSchemaStore#configureMergeCache(int, BoundedCache.Eviction)}).
+     * 
+     * @param others The other schemas
+     * @return A single schema obtained by merging this schema and every other
+     *         schema
+     * @throws JSONSchemaException If it is not possible to merge the schemas.
+     */
+    public JSONSchema mergeAll(Collection<JSONSchema> others) throws JSONSchemaException {
+        final List<JSONSchema> operands = new ArrayList<>(others.size() + 1);
+        operands.add(this);
+        for (final JSONSchema other : others) {
+            if (other != null && !other.schema.isEmpty()) {
+                operands.add(other);
+            }
+        }
+        if (operands.size() == 1) {
             return this;
         }
-        Map<String, Set<Object>> keyToValues = new LinkedHashMap<>();
-        for (String key : schema.keySet()) {
-            Object value = schema.get(key);
-            if (!keyToValues.containsKey(key)) {
-                keyToValues.put(key, new LinkedHashSet<>());
-            }
-            keyToValues.get(key).add(value);
+        JSONSchema merged = store.getMerged(operands);
+        if (merged == null) {
+            merged = computeMerge(operands);
+            store.putMerged(operands, merged);
         }
-        for (String key : other.schema.keySet()) {
-            Object value = other.schema.get(key);
-            if (!keyToValues.containsKey(key)) {
-                keyToValues.put(key, new LinkedHashSet<>());
+        return merged;
+    }
+
+    private JSONSchema computeMerge(List<JSONSchema> operands) throws JSONSchemaException {
+        Map<String, Set<Object>> keyToValues = new LinkedHashMap<>();
+        for (JSONSchema operand : operands) {
+            for (String key : operand.schema.keySet()) {
+                Object value = operand.schema.get(key);
+                Set<Object> values = keyToValues.get(key);
+                if (values == null) {
+                    values = new LinkedHashSet<>();
+                    keyToValues.put(key, values);
+                }
+                values.add(value);
             }
-            keyToValues.get(key).add(value);
         }
 
         JSONObject constraints = new HashableJSONObject();
@@ -972,7 +1171,7 @@ public final class JSONSchema {
         }
 
         handleNotInMerge(constraints, keyToValues);
-        return new JSONSchema(constraints, store, fullSchemaId);
+        return store.intern(constraints, fullSchemaId);
     }
 
     /**
@@ -983,6 +1182,9 @@ public final class JSONSchema {
      *                             sub-schema.
      */
     public JSONSchema getRawNot() throws JSONSchemaException {
+        if (node != null) {
+            return node.getRawNot();
+        }
         if (schema.has("not")) {
             return getSubSchema("not");
         } else {
@@ -1007,20 +1209,32 @@ public final class JSONSchema {
      * @throws JSONSchemaException
      */
     public List<JSONSchema> getNot() throws JSONSchemaException {
+        List<JSONSchema> not = cachedNot;
+        if (not == null) {
+            not = Collections.unmodifiableList(computeNot());
+            cachedNot = not;
+        }
+        if (node != null) {
+            compileAll(not);
+        }
+        return not;
+    }
+
+    private List<JSONSchema> computeNot() throws JSONSchemaException {
         if (schema.has("not")) {
             final JSONObject not = schema.getJSONObject("not");
             final JSONSchema actualSchema;
             if (not.has("$ref")) {
                 actualSchema = handleRef(not.getString("$ref"));
             } else {
-                actualSchema = new JSONSchema(not, store, fullSchemaId);
+                actualSchema = store.intern(not, fullSchemaId);
             }
             final List<JSONSchema> schemas = new ArrayList<>(actualSchema.schema.length());
 
             for (final String key : actualSchema.schema.keySet()) {
                 final Object value = actualSchema.schema.get(key);
                 final JSONObject notValue = MergeKeys.applyNot(key, Collections.singleton(value));
-                schemas.add(new JSONSchema(notValue, store, fullSchemaId));
+                schemas.add(store.intern(notValue, fullSchemaId));
             }
             return schemas;
         }
@@ -1028,24 +1242,7 @@ public final class JSONSchema {
     }
 
     private JSONSchema handleRef(String reference) throws JSONException, JSONSchemaException {
-        if (reference.charAt(0) == '#') {
-            // Recursive reference
-            String[] decompositions = reference.split("/");
-            JSONSchema targetSchema = store.get(fullSchemaId);
-            for (int i = 1; i < decompositions.length; i++) {
-                String key = decompositions[i];
-                targetSchema = targetSchema.getSubSchema(key);
-            }
-            return targetSchema;
-        } else {
-            // Reference to an other file
-            try {
-                return store.loadRelative(fullSchemaId, reference);
-            } catch (FileNotFoundException e) {
-                throw new JSONSchemaException("The schema referenced by " + reference
-                        + " can not be found. Check that the file is present in our local machine as this implementation does not download files.");
-            }
-        }
+        return store.resolveReference(this, reference);
     }
 
     /**
@@ -1059,9 +1256,37 @@ public final class JSONSchema {
      *                             sub-schema.
      */
     public JSONSchema getSubSchemaProperties(String key) throws JSONException, JSONSchemaException {
+        if (node != null) {
+            return node.getSubSchemaProperties(key);
+        }
         return getSubSchema(key, properties);
     }
 
+    /**
+     * Gets the schema that the value of the property <code>key</code> must
+     * satisfy.
+     * 
+     * This is the sub-schema of <code>key</code> in the properties if it exists,
+     * and the schema describing the additional properties otherwise. Unlike
+     * {@link #getSubSchemaProperties(String)}, no exception is thrown when the
+     * properties do not contain <code>key</code>.
+     * 
+     * @param key The key
+     * @return The schema for the value of the property
+     * @throws JSONSchemaException If it is not possible to construct the
+     *                             sub-schema.
+     */
+    public JSONSchema getSchemaForProperty(String key) throws JSONSchemaException {
+        if (node != null) {
+            final JSONSchema subSchema = node.getPropertySchema(key);
+            return subSchema == null ? node.getAdditionalProperties() : subSchema;
+        }
+        if (properties != null && properties.has(key)) {
+            return getSubSchema(key, properties);
+        }
+        return getAdditionalProperties();
+    }
+
     /**
      * Gets the sub-schema for the key <code>key</code>.
      * 
@@ -1072,15 +1297,22 @@ public final class JSONSchema {
      *                             sub-schema.
      */
     public JSONSchema getSubSchema(String key) throws JSONException, JSONSchemaException {
+        if (node != null) {
+            return node.getSubSchema(key);
+        }
+        return computeSubSchema(key);
+    }
+
+    JSONSchema computeSubSchema(String key) throws JSONException, JSONSchemaException {
         return getSubSchema(key, schema);
     }
 
     private JSONSchema getSubSchema(String key, JSONObject object) throws JSONException, JSONSchemaException {
-        JSONObject subObject = new HashableJSONObject(object.getJSONObject(key));
+        JSONObject subObject = object.getJSONObject(key);
         if (subObject.has("$ref")) {
             return handleRef(subObject.getString("$ref"));
         } else {
-            return new JSONSchema(subObject, store, fullSchemaId);
+            return store.intern(subObject, fullSchemaId);
         }
     }
 
@@ -1092,6 +1324,9 @@ public final class JSONSchema {
      *                             sub-schemas.
      */
     public List<JSONSchema> getItemsArray() throws JSONSchemaException {
+        if (node != null) {
+            return node.getItemsArray();
+        }
         if (!schema.has("items")) {
             return Collections.singletonList(store.trueSchema());
         }
@@ -1113,7 +1348,7 @@ public final class JSONSchema {
             if (subObject.has("$ref")) {
                 subSchema = handleRef(subObject.getString("$ref"));
             } else {
-                subSchema = new JSONSchema(subObject, store, fullSchemaId);
+                subSchema = store.intern(subObject, fullSchemaId);
             }
             list.add(subSchema);
         }
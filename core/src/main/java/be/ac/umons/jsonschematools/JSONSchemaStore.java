@@ -18,20 +18,48 @@
 
 package be.ac.umons.jsonschematools;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
+
+import be.ac.umons.jsonschematools.tree.JSONTreeModel;
+import be.ac.umons.jsonschematools.tree.JSONTreeParser;
+import be.ac.umons.jsonschematools.tree.JSONTrees;
+import be.ac.umons.jsonschematools.tree.OrgJSONTreeModel;
+import be.ac.umons.jsonschematools.tree.ValueKind;
 
 /**
  * Stores the schemas used so far.
@@ -39,18 +67,39 @@ import org.json.JSONTokener;
  * This implementation does not support downloading schemas from the Internet.
  * Every schema must be present locally.
  * 
+ * A store is thread-safe and can be shared between threads. Reading the
+ * schemas and the caches of the store does not require any lock. If multiple
+ * threads load the same file at the same time, the file is read only once and
+ * every thread obtains the same schema.
+ * 
  * @author Gaëtan Staquet
  */
 public class JSONSchemaStore {
 
     private final static int TRUE_IDENTIFIER = -1;
     private final static int FALSE_IDENTIFIER = -2;
+    private final static int DEFAULT_MERGE_CACHE_SIZE = 4096;
 
     private final boolean ignoreTrueAdditionalProperties;
 
-    private final List<JSONSchema> schemas = new ArrayList<>();
-    private final Map<Path, JSONSchema> pathToSchema = new LinkedHashMap<>();
-    private final Map<Integer, Path> idToPath = new LinkedHashMap<>();
+    private final AtomicInteger nextSchemaId = new AtomicInteger(0);
+    private final ConcurrentMap<Integer, JSONSchema> schemas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, CompletableFuture<JSONSchema>> pathToSchema = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Path> idToPath = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, byte[]> sourceHashes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, ConcurrentMap<String, JSONSchema>> resolvedReferences = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, ConcurrentMap<JSONObject, JSONSchema>> internedSchemas = new ConcurrentHashMap<>();
+    // The thread loading each file, and the file each thread waits for, to detect
+    // threads that wait for each other
+    private final ConcurrentMap<Path, Thread> loadingThreads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Thread, Path> awaitedPaths = new ConcurrentHashMap<>();
+    // A parser reuses buffers and its table of keys, so each thread has its own
+    private final ThreadLocal<JSONTreeParser> parsers = ThreadLocal
+            .withInitial(() -> new JSONTreeParser(HashableTreeModel.INSTANCE));
+    private volatile BoundedCache<MergeKey, JSONSchema> mergeCache = new BoundedCache<>(DEFAULT_MERGE_CACHE_SIZE,
+            BoundedCache.Eviction.LEAST_RECENTLY_USED);
+    private final AtomicReference<JSONSchema> trueSchema = new AtomicReference<>();
+    private final AtomicReference<JSONSchema> falseSchema = new AtomicReference<>();
 
     public JSONSchemaStore() {
         this(false);
@@ -76,18 +125,335 @@ public class JSONSchemaStore {
      * @throws JSONSchemaException
      */
     public JSONSchema load(URI path) throws FileNotFoundException, JSONSchemaException {
+        return load(path, null);
+    }
+
+    private JSONSchema load(final URI path, final Map<Path, Duration> parseTimes)
+            throws FileNotFoundException, JSONSchemaException {
         if (path.getHost() != null) {
             System.err.println(
                     "The implementation does not support downloading JSON schemas. Please make sure all the files are locally present in our machine and the paths are correctly set.");
             return null;
         }
-        Path actualPath = Paths.get(path);
-        if (pathToSchema.containsKey(actualPath)) {
-            return pathToSchema.get(actualPath);
+        final Path actualPath = Paths.get(path);
+        final CompletableFuture<JSONSchema> loading = new CompletableFuture<>();
+        final CompletableFuture<JSONSchema> alreadyLoading = pathToSchema.putIfAbsent(actualPath, loading);
+        if (alreadyLoading != null) {
+            return waitForLoad(alreadyLoading, actualPath);
+        }
+
+        // This thread is responsible for loading the file
+        loadingThreads.put(actualPath, Thread.currentThread());
+        try {
+            final long start = System.nanoTime();
+            final byte[] content = readSource(actualPath);
+            final Object tree = parsers.get().parse(content);
+            if (!(tree instanceof HashableJSONObject)) {
+                throw new JSONException("The schema in " + actualPath + " is not a JSON object");
+            }
+            final HashableJSONObject object = (HashableJSONObject) tree;
+            sourceHashes.put(actualPath, hash(content));
+            final JSONSchema schema = load(object, actualPath);
+            if (parseTimes != null) {
+                parseTimes.put(actualPath, Duration.ofNanos(System.nanoTime() - start));
+            }
+            loading.complete(schema);
+            return schema;
+        } catch (FileNotFoundException | JSONSchemaException | RuntimeException e) {
+            // Other threads may retry later
+            pathToSchema.remove(actualPath, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingThreads.remove(actualPath);
+        }
+    }
+
+    private static byte[] readSource(final Path path) throws FileNotFoundException, JSONSchemaException {
+        try {
+            return Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(path + " (No such file or directory)");
+        } catch (IOException e) {
+            throw new JSONSchemaException("Impossible to read the schema " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] hash(final byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JSONSchema waitForLoad(final CompletableFuture<JSONSchema> loading, final Path path)
+            throws FileNotFoundException, JSONSchemaException {
+        final Thread current = Thread.currentThread();
+        // The wait is registered before looking for a cycle, so that the last thread
+        // of a cycle to start waiting sees the whole cycle
+        awaitedPaths.put(current, path);
+        try {
+            if (!loading.isDone() && waitsForItself(current, path)) {
+                throw new JSONSchemaException("The schema " + path + " depends on itself while it is being loaded");
+            }
+            return loading.join();
+        } catch (CompletionException e) {
+            throw rethrow(e);
+        } finally {
+            awaitedPaths.remove(current);
+        }
+    }
+
+    /**
+     * Follows the threads loading the awaited files, and the files these threads
+     * wait for, to decide whether a thread would wait for itself.
+     */
+    private boolean waitsForItself(final Thread thread, final Path path) {
+        final Set<Thread> visited = new HashSet<>();
+        Path awaited = path;
+        while (awaited != null) {
+            final Thread loader = loadingThreads.get(awaited);
+            if (loader == thread) {
+                return true;
+            } else if (loader == null || !visited.add(loader)) {
+                // The file is loaded, or the threads of another cycle detect it
+                return false;
+            }
+            awaited = awaitedPaths.get(loader);
+        }
+        return false;
+    }
+
+    private static CompletionException rethrow(final CompletionException exception)
+            throws FileNotFoundException, JSONSchemaException {
+        final Throwable cause = exception.getCause();
+        if (cause instanceof FileNotFoundException) {
+            throw (FileNotFoundException) cause;
+        } else if (cause instanceof JSONSchemaException) {
+            throw (JSONSchemaException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return exception;
+    }
+
+    /**
+     * Loads every JSON file in a directory and its sub-directories, and every
+     * schema they reference.
+     * 
+     * See {@link #loadAll(Collection)}.
+     * 
+     * @param directory The directory
+     * @return The loaded schemas, and the time needed to load them
+     * @throws IOException         If the directory can not be traversed, or if
+     *                             a referenced file does not exist
+     * @throws JSONSchemaException If one of the schemas is invalid
+     */
+    public LoadReport loadDirectory(final Path directory) throws IOException, JSONSchemaException {
+        final List<URI> roots;
+        try (Stream<Path> files = Files.walk(directory)) {
+            roots = files.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .sorted()
+                    .map(Path::toUri)
+                    .collect(Collectors.toList());
+        }
+        return loadAll(roots);
+    }
+
+    /**
+     * Loads multiple schemas in parallel, along with every schema they reference.
+     * 
+     * The files are parsed in parallel. Each time a file is parsed, the
+     * references to other files it contains (that is, every <code>$ref</code>
+     * that does not start with <code>#</code>) are followed, until every
+     * reachable schema is loaded. This avoids loading referenced files lazily,
+     * while validating or generating documents.
+     * 
+     * @param roots The paths of the files to load
+     * @return The loaded schemas, and the time needed to load them
+     * @throws FileNotFoundException If one of the files does not exist
+     * @throws JSONSchemaException   If one of the schemas is invalid
+     */
+    public LoadReport loadAll(final Collection<URI> roots) throws FileNotFoundException, JSONSchemaException {
+        final long start = System.nanoTime();
+        final Map<Path, JSONSchema> loaded = new ConcurrentHashMap<>();
+        final Map<Path, Duration> parseTimes = new ConcurrentHashMap<>();
+        final Set<Path> seen = new HashSet<>();
+        List<Path> wave = new ArrayList<>();
+        for (final URI root : roots) {
+            final Path path = Paths.get(root);
+            if (seen.add(path)) {
+                wave.add(path);
+            }
+        }
+
+        final int parallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), wave.size()));
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            while (!wave.isEmpty()) {
+                final List<CompletableFuture<List<Path>>> tasks = new ArrayList<>(wave.size());
+                for (final Path path : wave) {
+                    tasks.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            final JSONSchema schema = load(path.toUri(), parseTimes);
+                            loaded.put(path, schema);
+                            final List<Path> references = new ArrayList<>();
+                            collectReferencedFiles(schema.getSchema(), path, references);
+                            return references;
+                        } catch (FileNotFoundException | JSONSchemaException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executor));
+                }
+
+                final List<Path> nextWave = new ArrayList<>();
+                for (final CompletableFuture<List<Path>> task : tasks) {
+                    try {
+                        for (final Path reference : task.join()) {
+                            if (seen.add(reference)) {
+                                nextWave.add(reference);
+                            }
+                        }
+                    } catch (CompletionException e) {
+                        throw rethrow(e);
+                    }
+                }
+                wave = nextWave;
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final Map<Path, JSONSchema> schemas = new TreeMap<>(loaded);
+        return new LoadReport(schemas, new TreeMap<>(parseTimes), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static void collectReferencedFiles(final Object value, final Path path, final List<Path> references) {
+        if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            for (final String key : object.keySet()) {
+                final Object child = object.opt(key);
+                if (key.equals("$ref") && child instanceof String) {
+                    final String reference = (String) child;
+                    if (!reference.isEmpty() && reference.charAt(0) != '#') {
+                        references.add(relativePath(path, reference));
+                    }
+                } else {
+                    collectReferencedFiles(child, path, references);
+                }
+            }
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            for (int i = 0; i < array.length(); i++) {
+                collectReferencedFiles(array.opt(i), path, references);
+            }
+        }
+    }
+
+    /**
+     * Writes a binary snapshot of every document loaded in this store.
+     * 
+     * The snapshot contains the documents, their paths, the hashes of the files
+     * they were read from, and the references that were resolved so far. It can
+     * be restored by {@link #restoreSnapshot(Path)}, for instance when the
+     * program starts again, to avoid parsing the JSON files.
+     * 
+     * @param file The file to write
+     * @throws IOException If the file can not be written
+     */
+    public void writeSnapshot(final Path file) throws IOException {
+        final List<SchemaSnapshot.Entry> entries = new ArrayList<>();
+        final int numberSchemas = nextSchemaId.get();
+        for (int schemaId = 0; schemaId < numberSchemas; schemaId++) {
+            final JSONSchema schema = schemas.get(schemaId);
+            if (schema == null) {
+                // The document is still being loaded
+                continue;
+            }
+            final Path path = idToPath.get(schemaId);
+            final Map<String, JSONSchema> references = resolvedReferences.get(schemaId);
+            entries.add(new SchemaSnapshot.Entry(path, sourceHashes.get(path), schema.getSchema(),
+                    references == null ? Collections.emptySet() : references.keySet()));
+        }
+        SchemaSnapshot.write(file, entries);
+    }
+
+    /**
+     * Restores the documents stored in a snapshot written by
+     * {@link #writeSnapshot(Path)}.
+     * 
+     * The snapshot is memory-mapped and the documents are reconstructed without
+     * parsing any JSON. Each file a document was read from is hashed again: if
+     * the file changed since the snapshot was written, only this file is read
+     * and parsed again. A file that no longer exists is not restored. Documents
+     * that are already loaded in this store are kept as is.
+     * 
+     * Once the documents are restored, the references that were resolved in the
+     * snapshot are resolved again. A reference that can no longer be resolved
+     * (because a file changed) is skipped, and will fail when it is used.
+     * 
+     * @param file The snapshot
+     * @return The restored schemas, and the time needed to parse the files that
+     *         changed
+     * @throws IOException         If the snapshot can not be read
+     * @throws JSONSchemaException If the snapshot is invalid, or if a schema
+     *                             that changed is invalid
+     */
+    public LoadReport restoreSnapshot(final Path file) throws IOException, JSONSchemaException {
+        final long start = System.nanoTime();
+        final Map<Path, JSONSchema> restored = new TreeMap<>();
+        final Map<Path, Duration> parseTimes = new ConcurrentHashMap<>();
+        final Map<JSONSchema, Collection<String>> references = new LinkedHashMap<>();
+        for (final SchemaSnapshot.Entry entry : SchemaSnapshot.read(file)) {
+            final JSONSchema schema;
+            if (entry.sourceHash == null) {
+                schema = load(new HashableJSONObject(entry.document), entry.path);
+                pathToSchema.put(entry.path, CompletableFuture.completedFuture(schema));
+            } else if (!Files.isRegularFile(entry.path)) {
+                continue;
+            } else if (Arrays.equals(entry.sourceHash, hash(readSource(entry.path)))) {
+                schema = restore(entry);
+            } else {
+                schema = load(entry.path.toUri(), parseTimes);
+            }
+            restored.put(entry.path, schema);
+            references.put(schema, entry.references);
+        }
+
+        for (final Map.Entry<JSONSchema, Collection<String>> entry : references.entrySet()) {
+            for (final String reference : entry.getValue()) {
+                try {
+                    resolveReference(entry.getKey(), reference);
+                } catch (JSONException | JSONSchemaException e) {
+                    // The reference is resolved again when it is used
+                }
+            }
+        }
+        return new LoadReport(restored, new TreeMap<>(parseTimes), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private JSONSchema restore(final SchemaSnapshot.Entry entry) throws FileNotFoundException, JSONSchemaException {
+        final CompletableFuture<JSONSchema> loading = new CompletableFuture<>();
+        final CompletableFuture<JSONSchema> alreadyLoading = pathToSchema.putIfAbsent(entry.path, loading);
+        if (alreadyLoading != null) {
+            return waitForLoad(alreadyLoading, entry.path);
+        }
+        loadingThreads.put(entry.path, Thread.currentThread());
+        try {
+            sourceHashes.put(entry.path, entry.sourceHash);
+            final JSONSchema schema = load((HashableJSONObject) entry.document, entry.path);
+            loading.complete(schema);
+            return schema;
+        } catch (JSONSchemaException | RuntimeException e) {
+            pathToSchema.remove(entry.path, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingThreads.remove(entry.path);
         }
-        FileReader reader = new FileReader(new File(path));
-        JSONObject object = new HashableJSONObject(new JSONTokener(reader));
-        return load(object, actualPath);
     }
 
     /**
@@ -98,24 +464,321 @@ public class JSONSchemaStore {
      */
     public JSONSchema loadFromJSONObject(JSONObject schemaObject) throws JSONSchemaException {
         final Path path = Paths.get("fromSchema");
-        return load(new HashableJSONObject(schemaObject), path);
+        final JSONSchema schema = load(new HashableJSONObject(schemaObject), path);
+        pathToSchema.put(path, CompletableFuture.completedFuture(schema));
+        return schema;
     }
 
-    private JSONSchema load(JSONObject schemaObject, Path path) throws JSONSchemaException {
-        final int schemaId = schemas.size();
-        final JSONSchema schema = new JSONSchema(schemaObject, this, schemaId);
-        schemas.add(schema);
-        pathToSchema.put(path, schema);
+    /**
+     * Loads a JSON schema from a tree of any model.
+     * 
+     * The schemas are represented with <code>org.json</code> values: the tree is
+     * converted once, before being loaded.
+     * 
+     * @param schemaTree The JSON document
+     * @param model      The model of the tree
+     * @return The schema
+     * @throws JSONSchemaException If the tree is not an object
+     */
+    public JSONSchema loadFromTree(Object schemaTree, JSONTreeModel model) throws JSONSchemaException {
+        if (model.getKind(schemaTree) != ValueKind.OBJECT) {
+            throw new JSONSchemaException("A schema must be a JSON object, not " + model.getKind(schemaTree));
+        }
+        return loadFromJSONObject((JSONObject) JSONTrees.convert(schemaTree, model, OrgJSONTreeModel.INSTANCE));
+    }
+
+    private JSONSchema load(HashableJSONObject schemaObject, Path path) throws JSONSchemaException {
+        final int schemaId = nextSchemaId.getAndIncrement();
         idToPath.put(schemaId, path);
+        final JSONSchema schema = new JSONSchema(schemaObject, this, schemaId);
+        schemas.put(schemaId, schema);
+        return schema;
+    }
+
+    /**
+     * Compiles a schema into an immutable graph of sub-schemas.
+     * 
+     * Once compiled, a schema resolves each of its sub-schemas (for
+     * <code>properties</code>, <code>items</code>, <code>anyOf</code>, and so on)
+     * and each <code>$ref</code> only once. Every call to the getters of
+     * {@link JSONSchema} then returns the same shared instance, instead of
+     * constructing a new schema. Sub-schemas obtained by merging (such as
+     * {@link JSONSchema#getAllOf()}) are constructed and compiled the first time
+     * they are requested.
+     * 
+     * The validator and the generators can use a compiled schema as any other
+     * schema.
+     * 
+     * @param schema The schema to compile
+     * @return The same schema, now compiled
+     * @throws JSONSchemaException If one of the sub-schemas can not be
+     *                             constructed
+     */
+    public JSONSchema compile(final JSONSchema schema) throws JSONSchemaException {
+        if (!schema.isCompiled()) {
+            SchemaNode.compile(schema);
+        }
         return schema;
     }
 
+    /**
+     * Replaces the cache storing the results of {@link JSONSchema#merge(JSONSchema)}.
+     * 
+     * By default, the last 4096 merges are kept. A size of zero disables the
+     * cache.
+     * 
+     * @param maximumSize The maximal number of merges to keep
+     * @param eviction    The eviction policy
+     */
+    public void configureMergeCache(final int maximumSize, final BoundedCache.Eviction eviction) {
+        this.mergeCache = new BoundedCache<>(maximumSize, eviction);
+    }
+
+    /**
+     * Gets the cache storing the results of {@link JSONSchema#merge(JSONSchema)}.
+     * 
+     * This can be used to inspect the number of hits and misses.
+     * 
+     * @return The merge cache
+     */
+    public BoundedCache<?, JSONSchema> getMergeCache() {
+        return mergeCache;
+    }
+
+    JSONSchema getMerged(final List<JSONSchema> operands) {
+        return mergeCache.get(new MergeKey(operands));
+    }
+
+    void putMerged(final List<JSONSchema> operands, final JSONSchema merged) {
+        mergeCache.put(new MergeKey(operands), merged);
+    }
+
+    /**
+     * The operands of a merge.
+     * 
+     * The result of a merge only depends on the documents of the operands (in
+     * order) and on the document the first operand belongs to.
+     */
+    private static final class MergeKey {
+        private final JSONObject[] documents;
+        private final int schemaId;
+        private final int hash;
+
+        MergeKey(final List<JSONSchema> operands) {
+            this.documents = new JSONObject[operands.size()];
+            int hash = operands.get(0).getSchemaId();
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = operands.get(i).getSchema();
+                hash = 31 * hash + documents[i].hashCode();
+            }
+            this.schemaId = operands.get(0).getSchemaId();
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MergeKey)) {
+                return false;
+            }
+            final MergeKey other = (MergeKey) obj;
+            return hash == other.hash && schemaId == other.schemaId && Arrays.equals(documents, other.documents);
+        }
+    }
+
+    /**
+     * Gets the shared schema for a sub-schema of the document with the given
+     * identifier.
+     * 
+     * Equal sub-schemas of the same document (see
+     * {@link HashableJSONObject#equals(Object)}) are mapped to the same
+     * {@link JSONSchema} instance. The table is kept per document, as references
+     * are resolved relatively to the document. Sub-schemas shared by multiple
+     * files through a <code>$ref</code> are already loaded only once. The
+     * sub-schema is made read-only.
+     * 
+     * @param document The sub-schema
+     * @param schemaId The identifier of the document containing the sub-schema
+     * @return The shared schema
+     * @throws JSONSchemaException If it is not possible to construct the schema
+     */
+    JSONSchema intern(final JSONObject document, final int schemaId) throws JSONSchemaException {
+        final JSONObject key = (JSONObject) HashableJSONObject.share(document);
+        final ConcurrentMap<JSONObject, JSONSchema> schemas = internedSchemas.computeIfAbsent(schemaId,
+                id -> new ConcurrentHashMap<>());
+        final JSONSchema schema = schemas.get(key);
+        if (schema != null) {
+            return schema;
+        }
+        // The schema is constructed outside of the map, as the constructor may
+        // resolve references (and, thus, intern other schemas)
+        final JSONSchema newSchema = new JSONSchema(key, this, schemaId);
+        final JSONSchema concurrentSchema = schemas.putIfAbsent(key, newSchema);
+        return concurrentSchema == null ? newSchema : concurrentSchema;
+    }
+
+    /**
+     * Resolves a reference from a schema.
+     * 
+     * A reference starting by <code>#</code> is a JSON Pointer (RFC 6901) in the
+     * document the schema belongs to, possibly percent-encoded. Any other
+     * reference is a path to another file, relative to the file of the schema.
+     * 
+     * The result is memoized per document: resolving the same reference again
+     * returns the same shared instance.
+     * 
+     * @param schema    The schema containing the reference
+     * @param reference The reference
+     * @return The referenced schema
+     * @throws JSONException       If the pointer does not designate a value in
+     *                             the document
+     * @throws JSONSchemaException If the reference is invalid or the referenced
+     *                             schema can not be loaded
+     */
+    JSONSchema resolveReference(final JSONSchema schema, final String reference)
+            throws JSONException, JSONSchemaException {
+        final int schemaId = schema.getSchemaId();
+        final ConcurrentMap<String, JSONSchema> references = resolvedReferences.computeIfAbsent(schemaId,
+                id -> new ConcurrentHashMap<>());
+        JSONSchema target = references.get(reference);
+        if (target == null) {
+            if (reference.charAt(0) == '#') {
+                target = resolvePointer(schema, tokenizePointer(reference));
+            } else {
+                try {
+                    target = loadRelative(schemaId, reference);
+                } catch (FileNotFoundException e) {
+                    throw new JSONSchemaException("The schema referenced by " + reference
+                            + " can not be found. Check that the file is present in our local machine as this implementation does not download files.");
+                }
+            }
+            final JSONSchema concurrentTarget = references.putIfAbsent(reference, target);
+            if (concurrentTarget != null) {
+                target = concurrentTarget;
+            }
+        }
+        return target;
+    }
+
+    private JSONSchema resolvePointer(final JSONSchema schema, final List<String> tokens)
+            throws JSONException, JSONSchemaException {
+        JSONSchema document = get(schema.getSchemaId());
+        if (tokens.isEmpty()) {
+            return document;
+        }
+        Object current = document.getSchema();
+        for (final String token : tokens) {
+            if (current instanceof JSONObject) {
+                JSONObject object = (JSONObject) current;
+                if (!object.has(token) && object.has("$ref")) {
+                    // The pointer goes through a reference
+                    document = resolveReference(document, object.getString("$ref"));
+                    object = document.getSchema();
+                }
+                current = object.get(token);
+            } else if (current instanceof JSONArray) {
+                current = ((JSONArray) current).get(arrayIndex(token, tokens));
+            } else {
+                throw new JSONSchemaException(
+                        "The JSON pointer " + tokens + " goes through a value that is neither an object nor an array");
+            }
+        }
+        if (!(current instanceof JSONObject)) {
+            throw new JSONSchemaException("The JSON pointer " + tokens + " does not designate a schema");
+        }
+        final JSONObject target = (JSONObject) current;
+        if (target.has("$ref")) {
+            return resolveReference(document, target.getString("$ref"));
+        }
+        return intern(target, document.getSchemaId());
+    }
+
+    private static int arrayIndex(final String token, final List<String> tokens) throws JSONSchemaException {
+        if (token.isEmpty() || (token.length() > 1 && token.charAt(0) == '0')) {
+            throw new JSONSchemaException("Invalid array index " + token + " in JSON pointer " + tokens);
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                throw new JSONSchemaException("Invalid array index " + token + " in JSON pointer " + tokens);
+            }
+        }
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new JSONSchemaException("Invalid array index " + token + " in JSON pointer " + tokens);
+        }
+    }
+
+    /**
+     * Splits a reference of the form <code>#/a/b</code> into its reference
+     * tokens, after percent-decoding the fragment.
+     * 
+     * The escapes <code>~1</code> and <code>~0</code> are replaced by
+     * <code>/</code> and <code>~</code>, as specified by RFC 6901.
+     * 
+     * @param reference The reference
+     * @return The list of tokens
+     * @throws JSONSchemaException If the reference is not a valid JSON Pointer
+     */
+    static List<String> tokenizePointer(final String reference) throws JSONSchemaException {
+        final String pointer;
+        try {
+            // '+' is not an encoded space in a fragment
+            pointer = URLDecoder.decode(reference.substring(1).replace("+", "%2B"), "UTF-8");
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            throw new JSONSchemaException("Invalid percent-encoding in reference " + reference);
+        }
+        if (pointer.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new JSONSchemaException("Invalid JSON pointer in reference " + reference);
+        }
+        final List<String> tokens = new ArrayList<>();
+        final StringBuilder token = new StringBuilder();
+        for (int i = 1; i < pointer.length(); i++) {
+            final char c = pointer.charAt(i);
+            if (c == '/') {
+                tokens.add(token.toString());
+                token.setLength(0);
+            } else if (c == '~') {
+                final char next = i + 1 < pointer.length() ? pointer.charAt(i + 1) : '\0';
+                if (next == '0') {
+                    token.append('~');
+                } else if (next == '1') {
+                    token.append('/');
+                } else {
+                    throw new JSONSchemaException("Invalid escape sequence in JSON pointer " + reference);
+                }
+                i++;
+            } else {
+                token.append(c);
+            }
+        }
+        tokens.add(token.toString());
+        return tokens;
+    }
+
     public static JSONObject trueDocument() {
         return new HashableJSONObject();
     }
 
     public JSONSchema trueSchema() throws JSONSchemaException {
-        return new JSONSchema(trueDocument(), this, TRUE_IDENTIFIER);
+        final JSONSchema schema = trueSchema.get();
+        if (schema != null) {
+            return schema;
+        }
+        // No lock is taken, as this can be called while loading or compiling. If
+        // multiple threads create the schema, only the first one is kept
+        trueSchema.compareAndSet(null, new JSONSchema(trueDocument(), this, TRUE_IDENTIFIER));
+        return trueSchema.get();
     }
 
     public static JSONObject falseDocument() {
@@ -125,7 +788,14 @@ public class JSONSchemaStore {
     }
 
     public JSONSchema falseSchema() throws JSONSchemaException {
-        return new JSONSchema(falseDocument(), this, FALSE_IDENTIFIER);
+        final JSONSchema schema = falseSchema.get();
+        if (schema != null) {
+            return schema;
+        }
+        // No lock is taken, as this can be called while loading or compiling. If
+        // multiple threads create the schema, only the first one is kept
+        falseSchema.compareAndSet(null, new JSONSchema(falseDocument(), this, FALSE_IDENTIFIER));
+        return falseSchema.get();
     }
 
     public static boolean isTrueDocument(JSONObject document) {
@@ -159,15 +829,21 @@ public class JSONSchemaStore {
         return schemas.get(schemaId);
     }
 
+    Path getPath(int schemaId) {
+        return idToPath.get(schemaId);
+    }
+
     JSONSchema loadRelative(final int schemaId, final String relativePath)
             throws FileNotFoundException, JSONSchemaException {
-        final Path basePath = idToPath.get(schemaId).getParent();
-        final Path pathOfTargetSchema;
+        return load(relativePath(idToPath.get(schemaId), relativePath).toUri());
+    }
+
+    private static Path relativePath(final Path pathOfSchema, final String relativePath) {
+        final Path basePath = pathOfSchema.getParent();
         if (relativePath.charAt(0) == '/') {
-            pathOfTargetSchema = basePath.resolve(relativePath.substring(1) + ".json");
+            return basePath.resolve(relativePath.substring(1) + ".json");
         } else {
-            pathOfTargetSchema = basePath.resolve(relativePath + ".json");
+            return basePath.resolve(relativePath + ".json");
         }
-        return load(pathOfTargetSchema.toUri());
     }
 }
@@ -0,0 +1,265 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The keys that can appear in the documents of a schema, each mapped to a
+ * dense integer identifier.
+ * 
+ * The abstract constants {@link AbstractConstants#stringConstant},
+ * {@link AbstractConstants#integerConstant},
+ * {@link AbstractConstants#numberConstant}, and
+ * {@link AbstractConstants#enumConstant} always receive the identifiers 0 to 3,
+ * in this order. The keys defined in the schema receive the next identifiers,
+ * in the order they are discovered.
+ * 
+ * For each key, the alphabet also records the paths of the sub-schemas (such as
+ * <code>#/properties/object</code>) in which the key can appear.
+ * 
+ * See {@link JSONSchema#getKeyAlphabet()}.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class KeyAlphabet {
+    private final List<String> symbols;
+    private final Map<String, Integer> identifiers;
+    private final Set<String> keysDefinedInSchema;
+    private final Map<String, Set<String>> paths;
+
+    private KeyAlphabet(final Set<String> keysDefinedInSchema, final Map<String, Set<String>> paths) {
+        final List<String> symbols = new ArrayList<>(Arrays.asList(AbstractConstants.stringConstant,
+                AbstractConstants.integerConstant, AbstractConstants.numberConstant, AbstractConstants.enumConstant));
+        final Map<String, Integer> identifiers = new HashMap<>();
+        for (int i = 0; i < symbols.size(); i++) {
+            identifiers.put(symbols.get(i), i);
+        }
+        for (final String key : keysDefinedInSchema) {
+            if (!identifiers.containsKey(key)) {
+                identifiers.put(key, symbols.size());
+                symbols.add(key);
+            }
+        }
+        final Map<String, Set<String>> unmodifiablePaths = new HashMap<>();
+        for (final Map.Entry<String, Set<String>> entry : paths.entrySet()) {
+            unmodifiablePaths.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+        }
+        this.symbols = Collections.unmodifiableList(symbols);
+        this.identifiers = identifiers;
+        this.keysDefinedInSchema = Collections.unmodifiableSet(keysDefinedInSchema);
+        this.paths = unmodifiablePaths;
+    }
+
+    /**
+     * Gets the number of symbols in the alphabet, including the abstract
+     * constants.
+     * 
+     * @return The size of the alphabet
+     */
+    public int size() {
+        return symbols.size();
+    }
+
+    /**
+     * Gets the identifier of a key.
+     * 
+     * @param key The key
+     * @return The identifier, or -1 if the key is not in the alphabet
+     */
+    public int getId(final String key) {
+        final Integer id = identifiers.get(key);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the key with the given identifier.
+     * 
+     * @param id The identifier
+     * @return The key
+     * @throws IndexOutOfBoundsException If the identifier is not in the alphabet
+     */
+    public String getKey(final int id) {
+        return symbols.get(id);
+    }
+
+    /**
+     * Gets every symbol of the alphabet, ordered by identifier.
+     * 
+     * @return An unmodifiable list of the symbols
+     */
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Gets the keys defined in the schema, without the abstract constants that
+     * are not used as keys.
+     * 
+     * See {@link JSONSchema#getAllKeysDefinedInSchema()}.
+     * 
+     * @return An unmodifiable set of the keys
+     */
+    public Set<String> getKeysDefinedInSchema() {
+        return keysDefinedInSchema;
+    }
+
+    /**
+     * Gets the paths of the sub-schemas in which a key can appear.
+     * 
+     * @param key The key
+     * @return An unmodifiable set of paths, empty if the key is not defined in
+     *         the schema
+     */
+    public Set<String> getPaths(final String key) {
+        final Set<String> keyPaths = paths.get(key);
+        return keyPaths == null ? Collections.emptySet() : keyPaths;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyAlphabet" + symbols;
+    }
+
+    /**
+     * Computes the alphabet of a schema.
+     * 
+     * The sub-schemas are explored in a breadth-first manner, following the
+     * references. Each sub-schema is visited at most once.
+     * 
+     * @param root The schema
+     * @return The alphabet
+     * @throws JSONSchemaException If a reference can not be resolved
+     */
+    static KeyAlphabet compute(final JSONSchema root) throws JSONSchemaException {
+        final Set<String> allKeys = new LinkedHashSet<>();
+        final Map<String, Set<String>> paths = new LinkedHashMap<>();
+        if (!root.isObject() && !root.isArray()) {
+            return new KeyAlphabet(allKeys, paths);
+        }
+
+        final Set<String> seenPaths = new HashSet<>(); // Store "#/properties/object/value", and so on
+        final Queue<String> queuedPaths = new ArrayDeque<>();
+        final Queue<JSONObject> queuedObjects = new ArrayDeque<>();
+        queuedPaths.add("#");
+        queuedObjects.add(root.getSchema());
+        seenPaths.add("#");
+
+        while (!queuedObjects.isEmpty()) {
+            final String path = queuedPaths.poll();
+            JSONObject document = queuedObjects.poll();
+            if (document.has("$ref")) {
+                final String ref = document.getString("$ref");
+                if (!seenPaths.add(ref)) {
+                    continue;
+                }
+                document = root.getStore().resolveReference(root, ref).getSchema();
+            }
+            if (document.has("properties")) {
+                addProperties(path, path + "/properties", document.getJSONObject("properties"), allKeys, paths,
+                        seenPaths, queuedPaths, queuedObjects);
+            }
+            if (document.has("additionalProperties")) {
+                final Object additionalProperties = document.get("additionalProperties");
+                if (additionalProperties instanceof JSONObject) {
+                    addKey(AbstractConstants.stringConstant, path, allKeys, paths);
+                    queuedPaths.add(path + "/additionalProperties");
+                    queuedObjects.add((JSONObject) additionalProperties);
+                } else if (additionalProperties instanceof Boolean && (boolean) additionalProperties) {
+                    addKey(AbstractConstants.stringConstant, path, allKeys, paths);
+                }
+            }
+            if (document.has("patternProperties")) {
+                addProperties(path, path + "/patternProperties", document.getJSONObject("patternProperties"),
+                        allKeys, paths, seenPaths, queuedPaths, queuedObjects);
+            }
+            if (document.has("items")) {
+                final Object items = document.get("items");
+                if (items instanceof JSONArray) {
+                    final JSONArray array = (JSONArray) items;
+                    for (int i = 0; i < array.length(); i++) {
+                        addIfNotSeen(path + "/items/" + i, array.getJSONObject(i), seenPaths, queuedPaths,
+                                queuedObjects);
+                    }
+                } else {
+                    addIfNotSeen(path + "/items", (JSONObject) items, seenPaths, queuedPaths, queuedObjects);
+                }
+            }
+            for (final String key : Arrays.asList("allOf", "anyOf", "oneOf")) {
+                if (document.has(key)) {
+                    final JSONArray value = document.getJSONArray(key);
+                    for (int i = 0; i < value.length(); i++) {
+                        queuedPaths.add(path + "/" + key + "/" + i);
+                        queuedObjects.add((JSONObject) value.get(i));
+                    }
+                }
+            }
+            if (document.has("not")) {
+                queuedPaths.add(path + "/not");
+                queuedObjects.add(document.getJSONObject("not"));
+            }
+        }
+
+        return new KeyAlphabet(allKeys, paths);
+    }
+
+    private static void addKey(final String key, final String path, final Set<String> allKeys,
+            final Map<String, Set<String>> paths) {
+        allKeys.add(key);
+        paths.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(path);
+    }
+
+    private static void addProperties(final String path, final String propertiesPath, final JSONObject properties,
+            final Set<String> allKeys, final Map<String, Set<String>> paths, final Set<String> seenPaths,
+            final Queue<String> queuedPaths, final Queue<JSONObject> queuedObjects) {
+        for (final String key : properties.keySet()) {
+            addKey(key, path, allKeys, paths);
+            final JSONObject property = properties.getJSONObject(key);
+            final String propertyPath = propertiesPath + "/" + key;
+            if (property.has("$ref")) {
+                queuedPaths.add(propertyPath);
+                queuedObjects.add(property);
+            } else {
+                addIfNotSeen(propertyPath, property, seenPaths, queuedPaths, queuedObjects);
+            }
+        }
+    }
+
+    private static void addIfNotSeen(final String path, final JSONObject object, final Set<String> seenPaths,
+            final Queue<String> queuedPaths, final Queue<JSONObject> queuedObjects) {
+        if (seenPaths.add(path)) {
+            queuedPaths.add(path);
+            queuedObjects.add(object);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of loading multiple schemas at once.
+ * 
+ * See {@link JSONSchemaStore#loadAll(java.util.Collection)} and
+ * {@link JSONSchemaStore#loadDirectory(Path)}.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class LoadReport {
+    private final Map<Path, JSONSchema> schemas;
+    private final Map<Path, Duration> parseTimes;
+    private final Duration totalTime;
+
+    LoadReport(final Map<Path, JSONSchema> schemas, final Map<Path, Duration> parseTimes,
+            final Duration totalTime) {
+        this.schemas = Collections.unmodifiableMap(schemas);
+        this.parseTimes = Collections.unmodifiableMap(parseTimes);
+        this.totalTime = totalTime;
+    }
+
+    /**
+     * Gets the schemas that were loaded, including the schemas that were only
+     * reached through a <code>$ref</code>.
+     * 
+     * @return A map from the path of each file to its schema
+     */
+    public Map<Path, JSONSchema> getSchemas() {
+        return schemas;
+    }
+
+    /**
+     * Gets the time spent reading and parsing each file.
+     * 
+     * Files that were already loaded in the store before the call are not read
+     * again and do not appear in this map.
+     * 
+     * @return A map from the path of each file to the time spent on it
+     */
+    public Map<Path, Duration> getParseTimes() {
+        return parseTimes;
+    }
+
+    /**
+     * Gets the wall-clock time of the whole loading.
+     * 
+     * @return The total time
+     */
+    public Duration getTotalTime() {
+        return totalTime;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadReport[schemas=" + schemas.size() + ", parsed=" + parseTimes.size() + ", totalTime=" + totalTime
+                + "]";
+    }
+}
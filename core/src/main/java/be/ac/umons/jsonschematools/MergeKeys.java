@@ -18,6 +18,8 @@
 
 package be.ac.umons.jsonschematools;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -53,10 +55,15 @@ class MergeKeys {
 
     private static final Map<String, Operation> keyToOperation = new LinkedHashMap<>();
 
-    private static final Set<String> minKeys = new LinkedHashSet<>();
-    private static final Set<String> maxKeys = new LinkedHashSet<>();
-    private static final Map<String, String> minToMax = new LinkedHashMap<>();
-    private static final Map<String, String> maxToMin = new LinkedHashMap<>();
+    // The upper bounds are merged by keeping the minimum, and the lower bounds by
+    // keeping the maximum
+    private static final Set<String> upperBoundKeys = new LinkedHashSet<>();
+    private static final Set<String> lowerBoundKeys = new LinkedHashSet<>();
+    private static final Map<String, String> lowerToUpper = new LinkedHashMap<>();
+    private static final Map<String, String> upperToLower = new LinkedHashMap<>();
+    // The bound that is satisfied exactly when a numeric bound is not, with the
+    // same value
+    private static final Map<String, String> negatedNumericBound = new LinkedHashMap<>();
 
     static {
         String[] mini = { "minItems", "minProperties", "minimum", "exclusiveMinimum", "minLength", "minContains" };
@@ -71,16 +78,20 @@ class MergeKeys {
         String[] notKeys = { "not" };
 
         for (int i = 0; i < maxi.length; i++) {
-            minToMax.put(mini[i], maxi[i]);
-            maxToMin.put(maxi[i], mini[i]);
-            minKeys.add(maxi[i]);
-            maxKeys.add(mini[i]);
+            lowerToUpper.put(mini[i], maxi[i]);
+            upperToLower.put(maxi[i], mini[i]);
+            upperBoundKeys.add(maxi[i]);
+            lowerBoundKeys.add(mini[i]);
         }
+        negatedNumericBound.put("maximum", "exclusiveMinimum");
+        negatedNumericBound.put("exclusiveMaximum", "minimum");
+        negatedNumericBound.put("minimum", "exclusiveMaximum");
+        negatedNumericBound.put("exclusiveMinimum", "maximum");
 
-        for (String key : minKeys) {
+        for (String key : upperBoundKeys) {
             keyToOperation.put(key, Operation.MINIMUM);
         }
-        for (String key : maxKeys) {
+        for (String key : lowerBoundKeys) {
             keyToOperation.put(key, Operation.MAXIMUM);
         }
         for (String key : productKeys) {
@@ -118,51 +129,221 @@ class MergeKeys {
         return keyToOperation.get(key);
     }
 
-    private static int getMinimum(Set<Object> values) {
-        return values.stream().mapToInt(v -> (int) v).min().getAsInt();
+    // The kinds of numbers, from the most specific to the most general
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int BIG = 3;
+
+    /**
+     * Gets the most specific kind that can represent all the numbers.
+     * 
+     * @param values The numbers
+     * @return The kind
+     * @throws ClassCastException If one of the values is not a number
+     */
+    private static int getNumberKind(Set<Object> values) {
+        int kind = INT;
+        for (Object value : values) {
+            final Number number = (Number) value;
+            if (number instanceof Integer || number instanceof Short || number instanceof Byte) {
+                continue;
+            } else if (number instanceof Long) {
+                kind = Math.max(kind, LONG);
+            } else if (number instanceof BigInteger || number instanceof BigDecimal) {
+                kind = BIG;
+            } else {
+                kind = Math.max(kind, DOUBLE);
+            }
+        }
+        return kind;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        } else if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        } else if (number instanceof Double || number instanceof Float) {
+            return BigDecimal.valueOf(number.doubleValue());
+        }
+        return BigDecimal.valueOf(number.longValue());
     }
 
-    private static int getMaximum(Set<Object> values) {
-        return values.stream().mapToInt(v -> (int) v).max().getAsInt();
+    private static Number getMinimum(Set<Object> values) {
+        return getBound(values, true);
     }
 
-    private static int getProduct(Set<Object> values) {
-        return values.stream().mapToInt(v -> (int) v).reduce((a, b) -> a * b).getAsInt();
+    private static Number getMaximum(Set<Object> values) {
+        return getBound(values, false);
+    }
+
+    /**
+     * Selects the smallest or the largest number.
+     * 
+     * Integers are compared as ints or longs, and the other numbers as doubles
+     * (or exactly, if one of them is a BigInteger or a BigDecimal). The selected
+     * value is returned as is.
+     * 
+     * @param values  The numbers
+     * @param minimum If true, selects the smallest number. Otherwise, selects the
+     *                largest.
+     * @return The selected number
+     */
+    private static Number getBound(Set<Object> values, boolean minimum) {
+        final int kind = getNumberKind(values);
+        final Iterator<Object> iterator = values.iterator();
+        Number bound = (Number) iterator.next();
+        switch (kind) {
+            case INT: {
+                int best = bound.intValue();
+                while (iterator.hasNext()) {
+                    final int value = ((Number) iterator.next()).intValue();
+                    if (minimum ? value < best : value > best) {
+                        best = value;
+                    }
+                }
+                return best;
+            }
+            case LONG: {
+                long best = bound.longValue();
+                while (iterator.hasNext()) {
+                    final Number value = (Number) iterator.next();
+                    if (minimum ? value.longValue() < best : value.longValue() > best) {
+                        best = value.longValue();
+                        bound = value;
+                    }
+                }
+                return bound;
+            }
+            case DOUBLE: {
+                double best = bound.doubleValue();
+                while (iterator.hasNext()) {
+                    final Number value = (Number) iterator.next();
+                    if (minimum ? value.doubleValue() < best : value.doubleValue() > best) {
+                        best = value.doubleValue();
+                        bound = value;
+                    }
+                }
+                return bound;
+            }
+            default: {
+                BigDecimal best = toBigDecimal(bound);
+                while (iterator.hasNext()) {
+                    final Number value = (Number) iterator.next();
+                    final int comparison = toBigDecimal(value).compareTo(best);
+                    if (minimum ? comparison < 0 : comparison > 0) {
+                        best = toBigDecimal(value);
+                        bound = value;
+                    }
+                }
+                return bound;
+            }
+        }
+    }
+
+    private static Number getProduct(Set<Object> values) {
+        final int kind = getNumberKind(values);
+        final Iterator<Object> iterator = values.iterator();
+        switch (kind) {
+            case INT: {
+                int product = ((Number) iterator.next()).intValue();
+                while (iterator.hasNext()) {
+                    product *= ((Number) iterator.next()).intValue();
+                }
+                return product;
+            }
+            case LONG: {
+                long product = ((Number) iterator.next()).longValue();
+                while (iterator.hasNext()) {
+                    product *= ((Number) iterator.next()).longValue();
+                }
+                return product;
+            }
+            case DOUBLE: {
+                double product = ((Number) iterator.next()).doubleValue();
+                while (iterator.hasNext()) {
+                    product *= ((Number) iterator.next()).doubleValue();
+                }
+                return product;
+            }
+            default: {
+                BigDecimal product = toBigDecimal((Number) iterator.next());
+                while (iterator.hasNext()) {
+                    product = product.multiply(toBigDecimal((Number) iterator.next()));
+                }
+                return product;
+            }
+        }
+    }
+
+    /**
+     * Adds a small integer to a number, keeping the kind of the number.
+     * 
+     * @param number The number
+     * @param delta  The integer to add
+     * @return The sum
+     */
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short
+                || number instanceof Byte || number instanceof BigInteger;
+    }
+
+    private static Number add(Number number, int delta) {
+        if (number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return number.intValue() + delta;
+        } else if (number instanceof Long) {
+            return number.longValue() + delta;
+        } else if (number instanceof BigInteger) {
+            return ((BigInteger) number).add(BigInteger.valueOf(delta));
+        } else if (number instanceof BigDecimal) {
+            return ((BigDecimal) number).add(BigDecimal.valueOf(delta));
+        }
+        return number.doubleValue() + delta;
     }
 
     private static boolean getAnd(Set<Object> values) {
-        return values.stream().map(v -> (boolean) v).reduce((a, b) -> a & b).get();
+        for (Object value : values) {
+            if (!(boolean) value) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private static JSONArray getConcatenation(Set<Object> values) {
-        Set<Object> union = new LinkedHashSet<>();
-        Iterator<Object> iterator = values.iterator();
-        JSONArray value = (JSONArray) iterator.next();
-        union.addAll(value.toList());
-        while (iterator.hasNext()) {
-            value = (JSONArray) iterator.next();
-            union.addAll(value.toList());
+        final Set<Object> union = new LinkedHashSet<>();
+        for (Object value : values) {
+            final JSONArray array = (JSONArray) value;
+            for (int i = 0; i < array.length(); i++) {
+                union.add(HashableJSONObject.share(array.opt(i)));
+            }
         }
         return new HashableJSONArray(union);
     }
 
-    private static JSONArray getIntersection(Set<Object> values) {
-        Set<Object> intersection = new LinkedHashSet<>();
-        Iterator<Object> iterator = values.iterator();
-        Object nextValue = iterator.next();
-        if (nextValue instanceof String) {
-            intersection.addAll(Collections.singleton(nextValue));
-        } else if (nextValue instanceof JSONArray) {
-            JSONArray value = (JSONArray) nextValue;
-            intersection.addAll(value.toList());
+    private static Set<Object> getElements(Object value) {
+        if (value instanceof String) {
+            return Collections.singleton(value);
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            final Set<Object> elements = new LinkedHashSet<>();
+            for (int i = 0; i < array.length(); i++) {
+                elements.add(HashableJSONObject.share(array.opt(i)));
+            }
+            return elements;
         }
-        while (iterator.hasNext()) {
-            nextValue = iterator.next();
-            if (nextValue instanceof String) {
-                intersection.retainAll(Collections.singleton(nextValue));
-            } else if (nextValue instanceof JSONArray) {
-                JSONArray value = (JSONArray) nextValue;
-                intersection.retainAll(value.toList());
+        return null;
+    }
+
+    private static JSONArray getIntersection(Set<Object> values) {
+        final Iterator<Object> iterator = values.iterator();
+        final Set<Object> first = getElements(iterator.next());
+        final Set<Object> intersection = first == null ? new LinkedHashSet<>() : new LinkedHashSet<>(first);
+        while (iterator.hasNext() && !intersection.isEmpty()) {
+            final Set<Object> elements = getElements(iterator.next());
+            if (elements != null) {
+                intersection.retainAll(elements);
             }
         }
         return new HashableJSONArray(intersection);
@@ -222,8 +403,8 @@ class MergeKeys {
         set.add("const");
         set.add("anyOf");
         set.add("allOf");
-        set.addAll(minKeys);
-        set.addAll(maxKeys);
+        set.addAll(upperBoundKeys);
+        set.addAll(lowerBoundKeys);
         return set;
     }
 
@@ -297,17 +478,18 @@ class MergeKeys {
             JSONObject notConst = new HashableJSONObject();
             notConst.put("not", constObject);
             return notConst;
-        } else if (minKeys.contains(key)) {
-            final String maxKey = maxToMin.get(key);
-            int value = (int) applyOperation(key, values);
-            final JSONObject schema = new HashableJSONObject();
-            schema.put(maxKey, value + 1);
-            return schema;
-        } else if (maxKeys.contains(key)) {
-            final String minKey = minToMax.get(key);
-            int value = (int) applyOperation(key, values);
+        } else if (upperBoundKeys.contains(key) || lowerBoundKeys.contains(key)) {
+            final Number value = (Number) applyOperation(key, values);
             final JSONObject schema = new HashableJSONObject();
-            schema.put(minKey, value - 1);
+            if (!isIntegral(value) && negatedNumericBound.containsKey(key)) {
+                // Moving a fractional bound by one would also exclude the values in
+                // between: the value is kept, and only the strictness is swapped
+                schema.put(negatedNumericBound.get(key), value);
+            } else if (upperBoundKeys.contains(key)) {
+                schema.put(upperToLower.get(key), add(value, 1));
+            } else {
+                schema.put(lowerToUpper.get(key), add(value, -1));
+            }
             return schema;
         }
         return null;
@@ -0,0 +1,112 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites a schema into a disjunction of branches that do not need to be
+ * unfolded.
+ * 
+ * A schema that needs further unfolding (see
+ * {@link JSONSchema#needsFurtherUnfolding()}) is replaced by the merges of its
+ * base constraints with <code>allOf</code> and with every combination of one
+ * element of <code>anyOf</code>, one combination of <code>oneOf</code>, and
+ * one element of <code>not</code>. Each merge is normalized in turn, until a
+ * fixed point is reached. This is the same process as the one the generators
+ * apply each time they produce a value, done once.
+ * 
+ * Branches that are trivially unsatisfiable (the false schema, a schema that
+ * does not allow any type, a combination whose constraints can not be merged,
+ * or a merge that is not satisfiable according to
+ * {@link JSONSchema#isSatisfiable()}) are pruned.
+ * 
+ * @author Gaëtan Staquet
+ */
+final class NormalForm {
+    /**
+     * The maximal number of branches of a normal form.
+     */
+    static final int MAXIMUM_BRANCHES = 4096;
+
+    private NormalForm() {
+    }
+
+    /**
+     * Computes the branches of a schema.
+     * 
+     * @param schema     The schema
+     * @param inProgress The schemas whose normal forms are being computed, to
+     *                   stop on schemas that unfold into themselves
+     * @return The branches, without duplicates
+     * @throws JSONSchemaException If the normal form has too many branches, or
+     *                             if a sub-schema can not be constructed
+     */
+    static List<JSONSchema> compute(final JSONSchema schema, final Set<JSONSchema> inProgress)
+            throws JSONSchemaException {
+        if (JSONSchemaStore.isFalseSchema(schema) || schema.getAllowedTypesMask() == 0) {
+            return Collections.emptyList();
+        }
+        if (!schema.needsFurtherUnfolding() || !inProgress.add(schema)) {
+            return Collections.singletonList(schema);
+        }
+
+        try {
+            final JSONSchema base = schema.dropAllOfAnyOfOneOfAndNot();
+            final JSONSchema allOf = schema.getAllOf();
+            if (JSONSchemaStore.isFalseSchema(allOf)) {
+                return Collections.emptyList();
+            }
+            final Set<JSONSchema> branches = new LinkedHashSet<>();
+            for (final JSONSchema anyOf : schema.getAnyOf()) {
+                for (final JSONSchema oneOf : schema.getOneOf()) {
+                    for (final JSONSchema not : schema.getNot()) {
+                        if (JSONSchemaStore.isFalseSchema(anyOf) || JSONSchemaStore.isFalseSchema(oneOf)
+                                || JSONSchemaStore.isFalseSchema(not)) {
+                            continue;
+                        }
+                        final JSONSchema merged;
+                        try {
+                            merged = base.mergeAll(Arrays.asList(allOf, anyOf, oneOf, not));
+                        } catch (JSONSchemaException e) {
+                            // The constraints are incompatible
+                            continue;
+                        }
+                        if (!merged.isSatisfiable()) {
+                            continue;
+                        }
+                        branches.addAll(merged.getNormalForm(inProgress));
+                        if (branches.size() > MAXIMUM_BRANCHES) {
+                            throw new JSONSchemaException("The normal form of the schema " + schema
+                                    + " has more than " + MAXIMUM_BRANCHES + " branches");
+                        }
+                    }
+                }
+            }
+            return Collections.unmodifiableList(new ArrayList<>(branches));
+        } finally {
+            inProgress.remove(schema);
+        }
+    }
+}
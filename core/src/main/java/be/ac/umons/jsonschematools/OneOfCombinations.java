@@ -0,0 +1,111 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The XOR combinations of the elements of a <code>oneOf</code> array, computed
+ * on demand.
+ * 
+ * The i-th combination is the schema
+ * <code>{"allOf": [S_i, {"not": S_0}, ..., {"not": S_n}]}</code> (without
+ * <code>{"not": S_i}</code>). A combination is only constructed the first time
+ * it is requested, and the negated sub-schemas are shared between all the
+ * combinations.
+ * 
+ * The elements of <code>oneOf</code> are constructed beforehand, by the
+ * schema. Any invalid element is therefore reported when the list is created,
+ * and not when a combination is requested.
+ * 
+ * @author Gaëtan Staquet
+ */
+final class OneOfCombinations extends AbstractList<JSONSchema> implements RandomAccess {
+    private final JSONSchema owner;
+    private final JSONArray branches;
+    private final AtomicReferenceArray<JSONObject> negations;
+    private final AtomicReferenceArray<JSONSchema> combinations;
+
+    OneOfCombinations(final JSONSchema owner, final JSONArray branches) {
+        this.owner = owner;
+        this.branches = branches;
+        this.negations = new AtomicReferenceArray<>(branches.length());
+        this.combinations = new AtomicReferenceArray<>(branches.length());
+    }
+
+    @Override
+    public int size() {
+        return branches.length();
+    }
+
+    /**
+     * Gets the combination where the element at the given index is the only one
+     * that must be satisfied.
+     * 
+     * @param index The index of the element in <code>oneOf</code>
+     * @return The combination
+     */
+    @Override
+    public JSONSchema get(final int index) {
+        try {
+            return combination(index);
+        } catch (JSONSchemaException e) {
+            // A combination only contains the key "allOf", and its elements were
+            // already constructed (and compiled, if needed) by the owner
+            throw new AssertionError("Impossible to construct the combination " + index + " of " + branches, e);
+        }
+    }
+
+    private JSONSchema combination(final int index) throws JSONSchemaException {
+        JSONSchema combination = combinations.get(index);
+        if (combination == null) {
+            final JSONArray allOf = new HashableJSONArray(size());
+            allOf.put(branches.get(index));
+            for (int i = 0; i < size(); i++) {
+                if (i != index) {
+                    allOf.put(negation(i));
+                }
+            }
+            final JSONObject document = new HashableJSONObject();
+            document.put("allOf", allOf);
+            combinations.compareAndSet(index, null, owner.getStore().intern(document, owner.getSchemaId()));
+            combination = combinations.get(index);
+        }
+        if (owner.isCompiled()) {
+            owner.getStore().compile(combination);
+        }
+        return combination;
+    }
+
+    private JSONObject negation(final int index) {
+        JSONObject negation = negations.get(index);
+        if (negation == null) {
+            final HashableJSONObject not = new HashableJSONObject();
+            not.put("not", branches.get(index));
+            negations.compareAndSet(index, null, not);
+            negation = negations.get(index);
+        }
+        return negation;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The result of the analysis of the recursion in a schema.
+ * 
+ * The analysis considers the graph whose vertices are the JSON objects of the
+ * schema, and whose edges go from an object to its sub-objects and from a
+ * <code>$ref</code> to the referenced schema. An edge through
+ * <code>properties</code> or <code>items</code> adds one level of nesting in
+ * the documents, while the other edges do not.
+ * 
+ * The strongly connected components of the graph are computed by Tarjan's
+ * algorithm, and the depth of each vertex is computed once, when its component
+ * is complete. A component containing a cycle that goes through
+ * <code>properties</code> or <code>items</code> makes the depth unbounded. A
+ * cycle that does not add any nesting (for instance, two definitions referring
+ * to each other by <code>allOf</code>) does not. The analysis is linear in the
+ * size of the schema, including the referenced schemas.
+ * 
+ * See {@link JSONSchema#analyzeRecursion()}.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class RecursionAnalysis {
+    private final OptionalInt depth;
+    private final List<List<String>> cycles;
+
+    private RecursionAnalysis(final OptionalInt depth, final List<List<String>> cycles) {
+        this.depth = depth;
+        this.cycles = Collections.unmodifiableList(cycles);
+    }
+
+    /**
+     * Returns true if the depth of the schema is finite.
+     * 
+     * @return True if the schema is not recursive, or if its recursion does not
+     *         add any nesting
+     */
+    public boolean isBounded() {
+        return depth.isPresent();
+    }
+
+    /**
+     * Gets the depth of the schema, i.e., the maximal number of nested objects
+     * and arrays.
+     * 
+     * @return The depth, or an empty value if it is unbounded
+     */
+    public OptionalInt getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the recursive cycles making the depth unbounded.
+     * 
+     * Each cycle is given as the list of the locations of the objects forming
+     * it. A location is the path of the file, followed by a JSON pointer.
+     * 
+     * @return The list of cycles, empty if the depth is bounded
+     */
+    public List<List<String>> getCycles() {
+        return cycles;
+    }
+
+    @Override
+    public String toString() {
+        if (isBounded()) {
+            return "RecursionAnalysis[depth=" + depth.getAsInt() + "]";
+        }
+        return "RecursionAnalysis[unbounded, cycles=" + cycles + "]";
+    }
+
+    /**
+     * Analyzes a schema.
+     * 
+     * @param schema The schema
+     * @return The analysis
+     * @throws JSONSchemaException If a reference can not be resolved
+     */
+    static RecursionAnalysis analyze(final JSONSchema schema) throws JSONSchemaException {
+        return new Analyzer(schema.getStore()).run(schema);
+    }
+
+    /**
+     * A JSON object of a document.
+     * 
+     * Objects are identified by their instance, as the documents are shared
+     * and read-only, and by the document they belong to, as references are
+     * resolved relatively to the document.
+     */
+    private static final class Vertex {
+        private final JSONObject object;
+        private final JSONSchema context;
+        private final String location;
+        private final List<Vertex> successors = new ArrayList<>();
+        private final List<Boolean> nesting = new ArrayList<>();
+        private int index = -1;
+        private int lowLink;
+        private boolean onStack;
+        private int component = -1;
+        private int depth;
+        private boolean unbounded;
+
+        private Vertex(final JSONObject object, final JSONSchema context, final String location) {
+            this.object = object;
+            this.context = context;
+            this.location = location;
+        }
+    }
+
+    private static final class VertexKey {
+        private final JSONObject object;
+        private final int schemaId;
+
+        private VertexKey(final JSONObject object, final int schemaId) {
+            this.object = object;
+            this.schemaId = schemaId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(object) + schemaId;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof VertexKey)) {
+                return false;
+            }
+            final VertexKey other = (VertexKey) obj;
+            return object == other.object && schemaId == other.schemaId;
+        }
+    }
+
+    private static final class Analyzer {
+        private final JSONSchemaStore store;
+        private final Map<VertexKey, Vertex> vertices = new HashMap<>();
+        private final Deque<Vertex> stack = new ArrayDeque<>();
+        private final List<List<String>> cycles = new ArrayList<>();
+        private int nextIndex = 0;
+        private int nextComponent = 0;
+
+        private Analyzer(final JSONSchemaStore store) {
+            this.store = store;
+        }
+
+        private RecursionAnalysis run(final JSONSchema schema) throws JSONSchemaException {
+            final Vertex root = vertex(schema.getSchema(), schema, documentLocation(schema) + "#");
+            // Iterative version of Tarjan's algorithm, to support deep schemas
+            final Deque<Vertex> callStack = new ArrayDeque<>();
+            final Deque<Integer> nextSuccessor = new ArrayDeque<>();
+            visit(root);
+            callStack.push(root);
+            nextSuccessor.push(0);
+            while (!callStack.isEmpty()) {
+                final Vertex current = callStack.peek();
+                final int i = nextSuccessor.pop();
+                if (i < current.successors.size()) {
+                    nextSuccessor.push(i + 1);
+                    final Vertex successor = current.successors.get(i);
+                    if (successor.index == -1) {
+                        visit(successor);
+                        callStack.push(successor);
+                        nextSuccessor.push(0);
+                    } else if (successor.onStack) {
+                        current.lowLink = Math.min(current.lowLink, successor.index);
+                    }
+                } else {
+                    callStack.pop();
+                    if (current.lowLink == current.index) {
+                        closeComponent(current);
+                    }
+                    if (!callStack.isEmpty()) {
+                        final Vertex parent = callStack.peek();
+                        parent.lowLink = Math.min(parent.lowLink, current.lowLink);
+                    }
+                }
+            }
+
+            if (root.unbounded) {
+                return new RecursionAnalysis(OptionalInt.empty(), cycles);
+            }
+            return new RecursionAnalysis(OptionalInt.of(root.depth), Collections.emptyList());
+        }
+
+        private void visit(final Vertex vertex) throws JSONSchemaException {
+            vertex.index = nextIndex;
+            vertex.lowLink = nextIndex;
+            nextIndex++;
+            stack.push(vertex);
+            vertex.onStack = true;
+            computeSuccessors(vertex);
+        }
+
+        private void closeComponent(final Vertex root) {
+            final int component = nextComponent++;
+            final List<Vertex> members = new ArrayList<>();
+            Vertex member;
+            do {
+                member = stack.pop();
+                member.onStack = false;
+                member.component = component;
+                members.add(member);
+            } while (member != root);
+
+            // Every successor outside of the component is already complete
+            boolean cyclic = members.size() > 1;
+            boolean nestingCycle = false;
+            boolean unbounded = false;
+            int depth = 0;
+            for (final Vertex vertex : members) {
+                for (int i = 0; i < vertex.successors.size(); i++) {
+                    final Vertex successor = vertex.successors.get(i);
+                    final int weight = vertex.nesting.get(i) ? 1 : 0;
+                    if (successor.component == component) {
+                        cyclic = true;
+                        nestingCycle |= weight == 1;
+                    } else {
+                        unbounded |= successor.unbounded;
+                        depth = Math.max(depth, successor.depth + weight);
+                    }
+                }
+            }
+
+            if (cyclic && nestingCycle) {
+                unbounded = true;
+                final List<String> cycle = new ArrayList<>(members.size());
+                for (int i = members.size() - 1; i >= 0; i--) {
+                    cycle.add(members.get(i).location);
+                }
+                cycles.add(Collections.unmodifiableList(cycle));
+            }
+            for (final Vertex vertex : members) {
+                vertex.unbounded = unbounded;
+                vertex.depth = depth;
+            }
+        }
+
+        private Vertex vertex(final JSONObject object, final JSONSchema context, final String location) {
+            final VertexKey key = new VertexKey(object, context.getSchemaId());
+            Vertex vertex = vertices.get(key);
+            if (vertex == null) {
+                vertex = new Vertex(object, context, location);
+                vertices.put(key, vertex);
+            }
+            return vertex;
+        }
+
+        private void addSuccessor(final Vertex vertex, final JSONObject object, final JSONSchema context,
+                final String location, final boolean nesting) {
+            vertex.successors.add(vertex(object, context, location));
+            vertex.nesting.add(nesting);
+        }
+
+        private void computeSuccessors(final Vertex vertex) throws JSONException, JSONSchemaException {
+            final JSONObject object = vertex.object;
+            final JSONSchema context = vertex.context;
+            final String location = vertex.location;
+            if (JSONSchemaStore.isTrueDocument(object)) {
+                return;
+            }
+            if (object.has("$ref")) {
+                final String reference = object.getString("$ref");
+                final JSONSchema target = store.resolveReference(context, reference);
+                final String targetLocation;
+                if (reference.charAt(0) == '#') {
+                    targetLocation = documentLocation(context) + reference;
+                } else {
+                    targetLocation = documentLocation(target) + "#";
+                }
+                addSuccessor(vertex, target.getSchema(), target, targetLocation, false);
+                return;
+            }
+            for (final String key : object.keySet()) {
+                final String keyLocation = location + "/" + key.replace("~", "~0").replace("/", "~1");
+                if (key.equals("properties")) {
+                    addSuccessor(vertex, object.getJSONObject(key), context, keyLocation, true);
+                } else if (key.equals("items")) {
+                    final Object items = object.get(key);
+                    if (items instanceof JSONObject) {
+                        addSuccessor(vertex, (JSONObject) items, context, keyLocation, true);
+                    } else if (items instanceof JSONArray) {
+                        final JSONArray array = (JSONArray) items;
+                        for (int i = 0; i < array.length(); i++) {
+                            addSuccessor(vertex, array.getJSONObject(i), context, keyLocation + "/" + i, true);
+                        }
+                    }
+                } else if (key.equals("allOf") || key.equals("anyOf") || key.equals("oneOf")) {
+                    final JSONArray array = object.getJSONArray(key);
+                    for (int i = 0; i < array.length(); i++) {
+                        addSuccessor(vertex, array.getJSONObject(i), context, keyLocation + "/" + i, false);
+                    }
+                } else if (key.equals("not")) {
+                    addSuccessor(vertex, object.getJSONObject(key), context, keyLocation, false);
+                } else {
+                    final Object value = object.get(key);
+                    if (value instanceof JSONObject) {
+                        addSuccessor(vertex, (JSONObject) value, context, keyLocation, false);
+                    }
+                }
+            }
+        }
+
+        private String documentLocation(final JSONSchema schema) {
+            final Path path = store.getPath(schema.getSchemaId());
+            return path == null ? "" : path.toString();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A cheap and conservative check of whether a schema can be satisfied.
+ * 
+ * The check only detects contradictions that can be seen locally, such as
+ * <code>minItems</code> greater than <code>maxItems</code>, an empty set of
+ * allowed types, a <code>const</code> value outside of the bounds, or a
+ * required property whose sub-schema is unsatisfiable. When it can not decide,
+ * it assumes the schema is satisfiable. In particular, recursive references
+ * are assumed to be satisfiable.
+ * 
+ * See {@link JSONSchema#isSatisfiable()}.
+ * 
+ * @author Gaëtan Staquet
+ */
+final class Satisfiability {
+    private Satisfiability() {
+    }
+
+    /**
+     * Checks whether a schema may be satisfied.
+     * 
+     * @param schema     The schema
+     * @param inProgress The schemas being checked, to stop on recursive schemas
+     * @return False if the schema can not be satisfied, true if it may be
+     * @throws JSONSchemaException If a sub-schema can not be constructed
+     */
+    static boolean check(final JSONSchema schema, final Set<JSONSchema> inProgress) throws JSONSchemaException {
+        if (JSONSchemaStore.isFalseSchema(schema)) {
+            return false;
+        }
+        if (JSONSchemaStore.isTrueSchema(schema)) {
+            return true;
+        }
+        if (schema.getAllowedTypesMask() == 0) {
+            return false;
+        }
+        if (!inProgress.add(schema)) {
+            return true;
+        }
+        try {
+            return checkCombinators(schema, inProgress) && checkTypes(schema, inProgress);
+        } catch (JSONException e) {
+            // The schema does not have the expected structure, we do not decide
+            return true;
+        } finally {
+            inProgress.remove(schema);
+        }
+    }
+
+    private static boolean checkCombinators(final JSONSchema schema, final Set<JSONSchema> inProgress)
+            throws JSONSchemaException {
+        final JSONObject document = schema.getSchema();
+        if (document.has("not") && JSONSchemaStore.isTrueDocument(document.getJSONObject("not"))) {
+            return false;
+        }
+        final Object constValue = schema.getConstValue();
+        if (constValue != null) {
+            for (final Object forbidden : schema.getForbiddenValues()) {
+                if (similar(constValue, forbidden)) {
+                    return false;
+                }
+            }
+        }
+        if (document.has("enum") && document.getJSONArray("enum").length() == 0) {
+            return false;
+        }
+
+        if (document.has("allOf")) {
+            final JSONSchema allOf;
+            try {
+                allOf = schema.getAllOf();
+            } catch (JSONSchemaException e) {
+                // The constraints can not be merged, we do not decide
+                return true;
+            }
+            if (!allOf.isSatisfiable(inProgress)) {
+                return false;
+            }
+        }
+        if (document.has("anyOf") && !atLeastOneSatisfiable(schema, document.getJSONArray("anyOf"), inProgress)) {
+            return false;
+        }
+        if (document.has("oneOf") && !atLeastOneSatisfiable(schema, document.getJSONArray("oneOf"), inProgress)) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean atLeastOneSatisfiable(final JSONSchema schema, final JSONArray array,
+            final Set<JSONSchema> inProgress) throws JSONSchemaException {
+        for (int i = 0; i < array.length(); i++) {
+            if (subSchema(schema, array.getJSONObject(i)).isSatisfiable(inProgress)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static JSONSchema subSchema(final JSONSchema schema, final JSONObject object) throws JSONSchemaException {
+        if (object.has("$ref")) {
+            return schema.getStore().resolveReference(schema, object.getString("$ref"));
+        }
+        return schema.getStore().intern(object, schema.getSchemaId());
+    }
+
+    private static boolean checkTypes(final JSONSchema schema, final Set<JSONSchema> inProgress)
+            throws JSONSchemaException {
+        for (final Type type : schema.getAllowedTypes()) {
+            final boolean satisfiable;
+            switch (type) {
+                case ARRAY:
+                    satisfiable = checkArray(schema);
+                    break;
+                case OBJECT:
+                    satisfiable = checkObject(schema, inProgress);
+                    break;
+                case STRING:
+                    satisfiable = checkString(schema);
+                    break;
+                case INTEGER:
+                    satisfiable = checkNumber(schema, true);
+                    break;
+                case NUMBER:
+                    satisfiable = checkNumber(schema, false);
+                    break;
+                default:
+                    satisfiable = true;
+                    break;
+            }
+            if (satisfiable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean checkArray(final JSONSchema schema) {
+        final JSONObject document = schema.getSchema();
+        final long minItems = document.optLong("minItems", 0);
+        final long maxItems = document.optLong("maxItems", Long.MAX_VALUE);
+        if (minItems > maxItems) {
+            return false;
+        }
+        final Object items = document.opt("items");
+        if (minItems > 0 && items instanceof JSONObject && JSONSchemaStore.isFalseDocument((JSONObject) items)) {
+            return false;
+        }
+        final Object constValue = schema.getConstValue();
+        if (constValue instanceof JSONArray) {
+            final int length = ((JSONArray) constValue).length();
+            return minItems <= length && length <= maxItems;
+        }
+        return true;
+    }
+
+    private static boolean checkObject(final JSONSchema schema, final Set<JSONSchema> inProgress)
+            throws JSONSchemaException {
+        final JSONObject document = schema.getSchema();
+        final long minProperties = document.optLong("minProperties", 0);
+        final long maxProperties = document.optLong("maxProperties", Long.MAX_VALUE);
+        if (minProperties > maxProperties) {
+            return false;
+        }
+        if (!document.has("required")) {
+            return true;
+        }
+        final JSONArray required = document.getJSONArray("required");
+        if (required.length() > maxProperties && required.toList().stream().distinct().count() > maxProperties) {
+            return false;
+        }
+        final JSONObject properties = document.optJSONObject("properties");
+        final Object additionalProperties = document.opt("additionalProperties");
+        final boolean noAdditionalProperties = !document.has("patternProperties")
+                && (Boolean.FALSE.equals(additionalProperties) || (additionalProperties instanceof JSONObject
+                        && JSONSchemaStore.isFalseDocument((JSONObject) additionalProperties)));
+        for (int i = 0; i < required.length(); i++) {
+            final String key = required.getString(i);
+            if (properties != null && properties.has(key)) {
+                if (!subSchema(schema, properties.getJSONObject(key)).isSatisfiable(inProgress)) {
+                    return false;
+                }
+            } else if (noAdditionalProperties) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean checkString(final JSONSchema schema) {
+        final JSONObject document = schema.getSchema();
+        final long minLength = document.optLong("minLength", 0);
+        final long maxLength = document.optLong("maxLength", Long.MAX_VALUE);
+        if (minLength > maxLength) {
+            return false;
+        }
+        final Object constValue = schema.getConstValue();
+        if (constValue instanceof String) {
+            final int length = ((String) constValue).codePointCount(0, ((String) constValue).length());
+            return minLength <= length && length <= maxLength;
+        }
+        return true;
+    }
+
+    private static boolean checkNumber(final JSONSchema schema, final boolean integer) {
+        final JSONObject document = schema.getSchema();
+        double lower = Double.NEGATIVE_INFINITY;
+        double upper = Double.POSITIVE_INFINITY;
+        boolean lowerExclusive = false;
+        boolean upperExclusive = false;
+
+        final Object minimum = document.opt("minimum");
+        final Object exclusiveMinimum = document.opt("exclusiveMinimum");
+        if (minimum instanceof Number) {
+            lower = ((Number) minimum).doubleValue();
+            // Before draft 6, exclusiveMinimum is a boolean modifying minimum
+            lowerExclusive = Boolean.TRUE.equals(exclusiveMinimum);
+        }
+        if (exclusiveMinimum instanceof Number && ((Number) exclusiveMinimum).doubleValue() >= lower) {
+            lower = ((Number) exclusiveMinimum).doubleValue();
+            lowerExclusive = true;
+        }
+        final Object maximum = document.opt("maximum");
+        final Object exclusiveMaximum = document.opt("exclusiveMaximum");
+        if (maximum instanceof Number) {
+            upper = ((Number) maximum).doubleValue();
+            upperExclusive = Boolean.TRUE.equals(exclusiveMaximum);
+        }
+        if (exclusiveMaximum instanceof Number && ((Number) exclusiveMaximum).doubleValue() <= upper) {
+            upper = ((Number) exclusiveMaximum).doubleValue();
+            upperExclusive = true;
+        }
+
+        final Object constValue = schema.getConstValue();
+        if (constValue instanceof Number) {
+            final double value = ((Number) constValue).doubleValue();
+            return (lowerExclusive ? lower < value : lower <= value) && (upperExclusive ? value < upper : value <= upper);
+        }
+        if (integer) {
+            final double smallest = lowerExclusive ? Math.floor(lower) + 1 : Math.ceil(lower);
+            final double largest = upperExclusive ? Math.ceil(upper) - 1 : Math.floor(upper);
+            return smallest <= largest;
+        }
+        if (lowerExclusive || upperExclusive) {
+            return lower < upper;
+        }
+        return lower <= upper;
+    }
+
+    private static boolean similar(final Object value, final Object other) {
+        if (value instanceof JSONObject) {
+            return ((JSONObject) value).similar(other);
+        } else if (value instanceof JSONArray) {
+            return ((JSONArray) value).similar(other);
+        } else if (value instanceof Number && other instanceof Number) {
+            return ((Number) value).doubleValue() == ((Number) other).doubleValue();
+        }
+        return value.equals(other);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The compiled form of a {@link JSONSchema}.
+ *
+ * A node holds the sub-schemas of its schema, with every <code>$ref</code>
+ * already resolved to a shared instance. The sub-schemas reachable through
+ * <code>properties</code>, <code>additionalProperties</code>,
+ * <code>items</code>, and <code>not</code> are computed once, when the
+ * schema is compiled, while the branches of <code>anyOf</code> are memoized by
+ * the schema itself. Compiling a schema also compiles these branches. The
+ * schemas that are obtained by merging (<code>allOf</code>, the combinations of
+ * <code>oneOf</code>, and the propagation of <code>not</code>) are memoized by
+ * the schema itself, and compiled the first time they are requested.
+ *
+ * @author Gaëtan Staquet
+ */
+final class SchemaNode {
+    private final JSONSchema schema;
+    private final Map<String, JSONSchema> properties;
+    private final JSONSchema additionalProperties;
+    private final List<JSONSchema> items;
+    private final JSONSchema rawNot;
+    private final Map<String, JSONSchema> subSchemas = new ConcurrentHashMap<>();
+
+    private SchemaNode(final JSONSchema schema) throws JSONSchemaException {
+        this.schema = schema;
+        if (schema.isObject()) {
+            final JSONObject propertiesObject = schema.getPropertiesObject();
+            final Map<String, JSONSchema> properties = new LinkedHashMap<>();
+            for (final String key : propertiesObject.keySet()) {
+                properties.put(key, child(propertiesObject.getJSONObject(key)));
+            }
+            this.properties = Collections.unmodifiableMap(properties);
+        } else {
+            this.properties = Collections.emptyMap();
+        }
+        this.additionalProperties = child(schema.getAdditionalPropertiesObject());
+        this.items = Collections.unmodifiableList(items());
+        if (schema.getSchema().has("not")) {
+            this.rawNot = child(schema.getSchema().getJSONObject("not"));
+        } else {
+            this.rawNot = schema.getStore().falseSchema();
+        }
+    }
+
+    /**
+     * Compiles the schema and every schema that can be reached from it without
+     * merging.
+     *
+     * Schemas that are already compiled are not visited again. This ensures the
+     * process stops on recursive schemas, as references are resolved to shared
+     * instances by the store.
+     *
+     * @param root The schema to compile
+     * @throws JSONSchemaException If one of the sub-schemas can not be
+     *                             constructed
+     */
+    static void compile(final JSONSchema root) throws JSONSchemaException {
+        final Queue<JSONSchema> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            final JSONSchema current = queue.poll();
+            if (current.isCompiled()) {
+                continue;
+            }
+            // The node is built without holding any lock, as building it may resolve
+            // references (and thus load documents). If another thread compiled the
+            // schema in the meantime, its node is kept, and we still visit its
+            // children to make sure the whole graph is compiled when we return
+            final SchemaNode node = current.publishNode(new SchemaNode(current));
+            queue.addAll(node.properties.values());
+            queue.add(node.additionalProperties);
+            queue.addAll(node.items);
+            queue.addAll(current.getAnyOf());
+            queue.add(node.rawNot);
+        }
+    }
+
+    private List<JSONSchema> items() throws JSONSchemaException {
+        final JSONObject object = schema.getSchema();
+        if (!object.has("items")) {
+            return Collections.singletonList(schema.getStore().trueSchema());
+        }
+        final Object items = object.get("items");
+        final List<JSONSchema> list = new ArrayList<>();
+        if (items instanceof JSONArray) {
+            final JSONArray array = (JSONArray) items;
+            for (int i = 0; i < array.length(); i++) {
+                list.add(child(array.getJSONObject(i)));
+            }
+        } else if (items instanceof JSONObject) {
+            list.add(child((JSONObject) items));
+        } else {
+            throw new JSONSchemaException("Invalid type for \"items\" in schema " + schema);
+        }
+        if (list.isEmpty()) {
+            return Collections.singletonList(schema.getStore().trueSchema());
+        }
+        return list;
+    }
+
+    private JSONSchema child(final JSONObject object) throws JSONSchemaException {
+        if (JSONSchemaStore.isTrueDocument(object)) {
+            return schema.getStore().trueSchema();
+        } else if (JSONSchemaStore.isFalseDocument(object)) {
+            return schema.getStore().falseSchema();
+        } else if (object.has("$ref")) {
+            return schema.getStore().resolveReference(schema, object.getString("$ref"));
+        }
+        return schema.getStore().intern(object, schema.getSchemaId());
+    }
+
+    JSONSchema getSubSchemaProperties(final String key) throws JSONException {
+        final JSONSchema subSchema = properties.get(key);
+        if (subSchema == null) {
+            throw new JSONException("JSONObject[" + JSONObject.quote(key) + "] not found.");
+        }
+        return subSchema;
+    }
+
+    JSONSchema getPropertySchema(final String key) {
+        return properties.get(key);
+    }
+
+    JSONSchema getSubSchema(final String key) throws JSONException, JSONSchemaException {
+        JSONSchema subSchema = subSchemas.get(key);
+        if (subSchema == null) {
+            subSchema = schema.getStore().compile(schema.computeSubSchema(key));
+            subSchemas.putIfAbsent(key, subSchema);
+        }
+        return subSchema;
+    }
+
+    JSONSchema getAdditionalProperties() {
+        return additionalProperties;
+    }
+
+    List<JSONSchema> getItemsArray() {
+        return items;
+    }
+
+    JSONSchema getRawNot() {
+        return rawNot;
+    }
+}
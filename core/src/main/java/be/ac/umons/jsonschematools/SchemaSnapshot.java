@@ -0,0 +1,282 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Reads and writes binary snapshots of the documents loaded in a
+ * {@link JSONSchemaStore}.
+ * 
+ * A snapshot starts with a header (a magic number and a version), followed by
+ * a table of all the strings (keys and string values) used in the documents.
+ * Then, for each document, the snapshot contains its path, the SHA-256 hash of
+ * the file it was read from (if any), its content, and the references that
+ * were resolved from it. The content is a tree of tagged values, in which
+ * strings are indices in the table.
+ * 
+ * Snapshots are read through a memory-mapped buffer, and the documents are
+ * reconstructed without parsing any JSON.
+ * 
+ * @author Gaëtan Staquet
+ */
+final class SchemaSnapshot {
+    private static final int MAGIC = 0x4A535353; // "JSSS"
+    private static final int VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte BIG_INTEGER = 6;
+    private static final byte BIG_DECIMAL = 7;
+    private static final byte STRING = 8;
+    private static final byte OBJECT = 9;
+    private static final byte ARRAY = 10;
+
+    /**
+     * A document stored in a snapshot.
+     */
+    static final class Entry {
+        final Path path;
+        final byte[] sourceHash;
+        final JSONObject document;
+        final Collection<String> references;
+
+        /**
+         * @param path       The path of the document
+         * @param sourceHash The hash of the file the document was read from, or
+         *                   null if the document was not read from a file
+         * @param document   The document
+         * @param references The references resolved from the document
+         */
+        Entry(final Path path, final byte[] sourceHash, final JSONObject document,
+                final Collection<String> references) {
+            this.path = path;
+            this.sourceHash = sourceHash;
+            this.document = document;
+            this.references = references;
+        }
+    }
+
+    private SchemaSnapshot() {
+    }
+
+    static void write(final Path file, final List<Entry> entries) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeInt(entries.size());
+        for (final Entry entry : entries) {
+            body.writeInt(stringIndex(strings, entry.path.toString()));
+            if (entry.sourceHash == null) {
+                body.writeByte(0);
+            } else {
+                body.writeByte(entry.sourceHash.length);
+                body.write(entry.sourceHash);
+            }
+            writeValue(body, strings, entry.document);
+            body.writeInt(entry.references.size());
+            for (final String reference : entry.references) {
+                body.writeInt(stringIndex(strings, reference));
+            }
+        }
+        body.flush();
+
+        try (OutputStream stream = Files.newOutputStream(file);
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(strings.size());
+            for (final String string : strings.keySet()) {
+                final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+            bodyBytes.writeTo(output);
+        }
+    }
+
+    private static int stringIndex(final Map<String, Integer> strings, final String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeValue(final DataOutputStream output, final Map<String, Integer> strings,
+            final Object value) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            output.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            output.writeByte(INTEGER);
+            output.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof BigInteger) {
+            output.writeByte(BIG_INTEGER);
+            output.writeInt(stringIndex(strings, value.toString()));
+        } else if (value instanceof BigDecimal) {
+            output.writeByte(BIG_DECIMAL);
+            output.writeInt(stringIndex(strings, value.toString()));
+        } else if (value instanceof Number) {
+            output.writeByte(DOUBLE);
+            output.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            output.writeByte(OBJECT);
+            output.writeInt(object.length());
+            for (final String key : object.keySet()) {
+                output.writeInt(stringIndex(strings, key));
+                writeValue(output, strings, object.opt(key));
+            }
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            output.writeByte(ARRAY);
+            output.writeInt(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(output, strings, array.opt(i));
+            }
+        } else {
+            output.writeByte(STRING);
+            output.writeInt(stringIndex(strings, value.toString()));
+        }
+    }
+
+    static List<Entry> read(final Path file) throws IOException, JSONSchemaException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new JSONSchemaException("The file " + file + " is not a snapshot of schemas");
+            }
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new JSONSchemaException("Unsupported version " + version + " for the snapshot " + file);
+            }
+            final String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                final byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            final int numberEntries = buffer.getInt();
+            final List<Entry> entries = new ArrayList<>(numberEntries);
+            for (int i = 0; i < numberEntries; i++) {
+                final Path path = Paths.get(strings[buffer.getInt()]);
+                final int hashLength = buffer.get();
+                final byte[] sourceHash;
+                if (hashLength == 0) {
+                    sourceHash = null;
+                } else {
+                    sourceHash = new byte[hashLength];
+                    buffer.get(sourceHash);
+                }
+                final Object document = readValue(buffer, strings);
+                if (!(document instanceof JSONObject)) {
+                    throw new JSONSchemaException("The snapshot " + file + " contains a document that is not an object");
+                }
+                final int numberReferences = buffer.getInt();
+                final List<String> references = new ArrayList<>(numberReferences);
+                for (int j = 0; j < numberReferences; j++) {
+                    references.add(strings[buffer.getInt()]);
+                }
+                entries.add(new Entry(path, sourceHash, (JSONObject) document, references));
+            }
+            return entries;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new JSONSchemaException("The snapshot " + file + " is corrupted");
+        }
+    }
+
+    private static Object readValue(final ByteBuffer buffer, final String[] strings) throws JSONSchemaException {
+        final byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return JSONObject.NULL;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INTEGER:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case BIG_INTEGER:
+                return new BigInteger(strings[buffer.getInt()]);
+            case BIG_DECIMAL:
+                return new BigDecimal(strings[buffer.getInt()]);
+            case STRING:
+                return strings[buffer.getInt()];
+            case OBJECT: {
+                final int length = buffer.getInt();
+                final HashableJSONObject object = new HashableJSONObject();
+                for (int i = 0; i < length; i++) {
+                    final String key = strings[buffer.getInt()];
+                    object.put(key, readValue(buffer, strings));
+                }
+                return object;
+            }
+            case ARRAY: {
+                final int length = buffer.getInt();
+                final HashableJSONArray array = new HashableJSONArray(length);
+                for (int i = 0; i < length; i++) {
+                    array.put(readValue(buffer, strings));
+                }
+                return array;
+            }
+            default:
+                throw new JSONSchemaException("Unknown tag " + tag + " in snapshot");
+        }
+    }
+}
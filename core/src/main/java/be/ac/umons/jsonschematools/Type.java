@@ -18,9 +18,18 @@
 
 package be.ac.umons.jsonschematools;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * The different types a value can take.
  * 
+ * A set of types can be represented as a bitmask, in which the type
+ * <code>t</code> is present if and only if the bit {@link #mask()} is set.
+ * 
  * @author Gaëtan Staquet
  */
 public enum Type {
@@ -31,5 +40,74 @@ public enum Type {
     NUMBER,
     BOOLEAN,
     ENUM,
-    NULL
+    NULL;
+
+    private static final Type[] VALUES = values();
+
+    /**
+     * The mask containing every type.
+     */
+    public static final int ALL = (1 << VALUES.length) - 1;
+
+    // The unmodifiable list and set for each mask, shared by every schema
+    private static final List<List<Type>> LISTS = new ArrayList<>(ALL + 1);
+    private static final List<Set<Type>> SETS = new ArrayList<>(ALL + 1);
+
+    static {
+        for (int mask = 0; mask <= ALL; mask++) {
+            final List<Type> list = new ArrayList<>(Integer.bitCount(mask));
+            final Set<Type> set = EnumSet.noneOf(Type.class);
+            for (final Type type : VALUES) {
+                if ((mask & type.mask()) != 0) {
+                    list.add(type);
+                    set.add(type);
+                }
+            }
+            LISTS.add(Collections.unmodifiableList(list));
+            SETS.add(Collections.unmodifiableSet(set));
+        }
+    }
+
+    /**
+     * Gets the bit representing this type in a mask.
+     * 
+     * @return The bit of the type
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Gets the type at the given position in a mask, following the order in
+     * which the types are declared.
+     * 
+     * @param mask  The mask
+     * @param index The position of the type, between 0 (inclusive) and the
+     *              number of bits set in the mask (exclusive)
+     * @return The type
+     * @throws IndexOutOfBoundsException If the index is out of bounds
+     */
+    public static Type fromMask(final int mask, final int index) {
+        return LISTS.get(mask & ALL).get(index);
+    }
+
+    /**
+     * Gets the types in a mask, as an unmodifiable list.
+     * 
+     * @param mask The mask
+     * @return The list of types, in the order in which they are declared
+     */
+    public static List<Type> listOf(final int mask) {
+        return LISTS.get(mask & ALL);
+    }
+
+    /**
+     * Gets the types in a mask, as an unmodifiable set.
+     * 
+     * @param mask The mask
+     * @return The set of types
+     */
+    public static Set<Type> setOf(final int mask) {
+        return SETS.get(mask & ALL);
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import java.util.Arrays;
+
+/**
+ * An immutable JSON array of the {@link CompactTreeModel}.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class CompactArray {
+    static final CompactArray EMPTY = new CompactArray(new Object[0]);
+
+    private final Object[] elements;
+    private int hash;
+
+    private CompactArray(final Object[] elements) {
+        this.elements = elements;
+    }
+
+    static CompactArray of(final Object[] elements, final int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new CompactArray(Arrays.copyOf(elements, size));
+    }
+
+    public int size() {
+        return elements.length;
+    }
+
+    public Object get(final int index) {
+        return elements[index];
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompactArray)) {
+            return false;
+        }
+        return JSONTrees.similar(CompactTreeModel.INSTANCE, this, obj);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = JSONTrees.structuralHashCode(CompactTreeModel.INSTANCE, this);
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return JSONTrees.toString(CompactTreeModel.INSTANCE, this);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable JSON object of the {@link CompactTreeModel}.
+ * 
+ * The members are stored in two arrays, sorted by key. A lookup is a binary
+ * search and does not allocate.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class CompactObject {
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    static final CompactObject EMPTY = new CompactObject(new String[0], new Object[0]);
+
+    private final String[] keys;
+    private final Object[] values;
+    private int hash;
+
+    private CompactObject(final String[] keys, final Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Creates an object from members given in any order.
+     * 
+     * If a key appears multiple times, the last value is kept.
+     * 
+     * @param keys   The keys
+     * @param values The values
+     * @param size   The number of members to read from the arrays
+     * @return The object
+     */
+    static CompactObject of(final String[] keys, final Object[] values, final int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        final int[] order = sortedOrder(keys, size);
+        int distinct = 0;
+        final String[] sortedKeys = new String[size];
+        final Object[] sortedValues = new Object[size];
+        for (int i = 0; i < size; i++) {
+            final int index = order[i];
+            if (distinct > 0 && sortedKeys[distinct - 1].equals(keys[index])) {
+                // The order is stable, so the last occurrence of a key comes last
+                sortedValues[distinct - 1] = values[index];
+            } else {
+                sortedKeys[distinct] = keys[index];
+                sortedValues[distinct] = values[index];
+                distinct++;
+            }
+        }
+        if (distinct != size) {
+            return new CompactObject(Arrays.copyOf(sortedKeys, distinct), Arrays.copyOf(sortedValues, distinct));
+        }
+        return new CompactObject(sortedKeys, sortedValues);
+    }
+
+    private static int[] sortedOrder(final String[] keys, final int size) {
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        if (size > INSERTION_SORT_THRESHOLD) {
+            final Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = i;
+            }
+            // A stable sort
+            Arrays.sort(boxed, (i, j) -> keys[i].compareTo(keys[j]));
+            for (int i = 0; i < size; i++) {
+                order[i] = boxed[i];
+            }
+            return order;
+        }
+        // Insertion sort, which is stable and fast for the usual small objects
+        for (int i = 1; i < size; i++) {
+            final int current = order[i];
+            int j = i - 1;
+            while (j >= 0 && keys[order[j]].compareTo(keys[current]) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+        return order;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String getKey(final int index) {
+        return keys[index];
+    }
+
+    public Object getValue(final int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets the position of a key in this object.
+     * 
+     * @param key The key
+     * @return The index of the key, or a negative value if this object does not
+     *         have the key
+     */
+    public int indexOf(final String key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    /**
+     * Gets the value associated with a key.
+     * 
+     * @param key The key
+     * @return The value, or <code>null</code> if this object does not have the key
+     */
+    public Object get(final String key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    /**
+     * Gets the keys of this object, in increasing order.
+     * 
+     * @return An unmodifiable view of the keys
+     */
+    public List<String> keys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompactObject)) {
+            return false;
+        }
+        return JSONTrees.similar(CompactTreeModel.INSTANCE, this, obj);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = JSONTrees.structuralHashCode(CompactTreeModel.INSTANCE, this);
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return JSONTrees.toString(CompactTreeModel.INSTANCE, this);
+    }
+}
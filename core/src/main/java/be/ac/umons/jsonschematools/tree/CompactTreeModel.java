@@ -0,0 +1,168 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import java.math.BigInteger;
+
+/**
+ * The model of compact and immutable JSON trees.
+ * 
+ * Objects are {@link CompactObject}s, whose members are sorted by key, arrays
+ * are {@link CompactArray}s, and the <code>null</code> value is
+ * {@link #NULL}. Strings and booleans are represented by {@link String} and
+ * {@link Boolean}. Integers are {@link Long}s, or {@link BigInteger}s when they
+ * do not fit in a <code>long</code>, and the other numbers keep their
+ * representation ({@link Double} or {@link java.math.BigDecimal}, usually).
+ * 
+ * As the trees are immutable, they can be shared freely between threads and
+ * between documents.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class CompactTreeModel implements JSONTreeModel {
+    public static final CompactTreeModel INSTANCE = new CompactTreeModel();
+
+    /**
+     * The JSON <code>null</code> value.
+     */
+    public static final Object NULL = new Object() {
+        @Override
+        public String toString() {
+            return "null";
+        }
+    };
+
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private CompactTreeModel() {
+    }
+
+    /**
+     * Converts a tree of another model into a compact tree.
+     * 
+     * @param value The tree
+     * @param model The model of the tree
+     * @return The compact tree
+     */
+    public static Object of(final Object value, final JSONTreeModel model) {
+        return JSONTrees.convert(value, model, INSTANCE);
+    }
+
+    @Override
+    public ValueKind getKind(final Object value) {
+        if (value instanceof CompactObject) {
+            return ValueKind.OBJECT;
+        } else if (value instanceof CompactArray) {
+            return ValueKind.ARRAY;
+        } else if (value instanceof String) {
+            return ValueKind.STRING;
+        } else if (value instanceof Number) {
+            return ValueKind.ofNumber((Number) value);
+        } else if (value instanceof Boolean) {
+            return ValueKind.BOOLEAN;
+        } else if (value == NULL) {
+            return ValueKind.NULL;
+        }
+        throw new IllegalArgumentException("Unsupported value " + value + " in a compact tree");
+    }
+
+    @Override
+    public int size(final Object value) {
+        if (value instanceof CompactObject) {
+            return ((CompactObject) value).size();
+        }
+        return ((CompactArray) value).size();
+    }
+
+    @Override
+    public Object getMember(final Object object, final String key) {
+        return ((CompactObject) object).get(key);
+    }
+
+    @Override
+    public Iterable<String> getKeys(final Object object) {
+        return ((CompactObject) object).keys();
+    }
+
+    @Override
+    public Object getElement(final Object array, final int index) {
+        return ((CompactArray) array).get(index);
+    }
+
+    @Override
+    public String getString(final Object value) {
+        return (String) value;
+    }
+
+    @Override
+    public Number getNumber(final Object value) {
+        return (Number) value;
+    }
+
+    @Override
+    public boolean getBoolean(final Object value) {
+        return (Boolean) value;
+    }
+
+    @Override
+    public Object createObject(final String[] keys, final Object[] values, final int size) {
+        return CompactObject.of(keys, values, size);
+    }
+
+    @Override
+    public Object createArray(final Object[] elements, final int size) {
+        return CompactArray.of(elements, size);
+    }
+
+    @Override
+    public Object createString(final String value) {
+        return value;
+    }
+
+    @Override
+    public Object createNumber(final Number value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value.longValue();
+        } else if (value instanceof Float) {
+            return value.doubleValue();
+        } else if (value instanceof BigInteger) {
+            final BigInteger integer = (BigInteger) value;
+            if (integer.compareTo(MIN_LONG) >= 0 && integer.compareTo(MAX_LONG) <= 0) {
+                return integer.longValue();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public Object createBoolean(final boolean value) {
+        return value;
+    }
+
+    @Override
+    public Object createNull() {
+        return NULL;
+    }
+
+    @Override
+    public String toString() {
+        return "compact";
+    }
+}
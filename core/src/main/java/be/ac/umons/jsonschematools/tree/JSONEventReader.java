@@ -0,0 +1,441 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.json.JSONException;
+
+/**
+ * A pull reader of JSON texts, producing one event per token.
+ * 
+ * Only the kinds of the containers that are currently open are kept in memory,
+ * so the memory used by the reader is proportional to the nesting depth of the
+ * text, not to its size. The scalar values are created through a
+ * {@link JSONTreeModel}, the {@link OrgJSONTreeModel} by default.
+ * 
+ * The reader checks the syntax of the text as it goes, and only accepts
+ * standard JSON. It must not be used by multiple threads at once.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class JSONEventReader {
+    public enum Event {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        /**
+         * A key in an object. The key is given by {@link JSONEventReader#getKey()},
+         * and the next event starts its value.
+         */
+        KEY,
+        /**
+         * A scalar value, given by {@link JSONEventReader#getValue()}.
+         */
+        VALUE,
+        /**
+         * The end of the text. This event is repeated if the reader is called again.
+         */
+        END
+    }
+
+    private static final byte IN_OBJECT = 0;
+    private static final byte IN_ARRAY = 1;
+
+    private static final byte AFTER_START = 0;
+    private static final byte AFTER_KEY = 1;
+    private static final byte AFTER_VALUE = 2;
+
+    private static final int MAXIMAL_LONG_DIGITS = 18;
+    private static final int MAXIMAL_EXACT_DIGITS = 15;
+
+    private final Reader reader;
+    private final JSONTreeModel model;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long offset;
+
+    private byte[] containers = new byte[16];
+    private byte[] states = new byte[16];
+    private int depth;
+    private boolean rootRead;
+
+    private final StringBuilder builder = new StringBuilder();
+    private String key;
+    private Object value;
+
+    public JSONEventReader(final Reader reader) {
+        this(reader, OrgJSONTreeModel.INSTANCE);
+    }
+
+    public JSONEventReader(final Reader reader, final JSONTreeModel model) {
+        this.reader = reader;
+        this.model = model;
+    }
+
+    /**
+     * Gets the number of containers that are currently open.
+     * 
+     * @return The depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the key read by the last {@link Event#KEY} event.
+     * 
+     * @return The key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the value read by the last {@link Event#VALUE} event.
+     * 
+     * @return The value, in the representation of the model of this reader
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Reads the next event.
+     * 
+     * @return The event
+     * @throws IOException   If the reader can not be read
+     * @throws JSONException If the text is not a valid JSON text
+     */
+    public Event next() throws IOException, JSONException {
+        if (depth == 0) {
+            if (rootRead) {
+                if (peek() != -1) {
+                    throw error("Unexpected content after the JSON value");
+                }
+                return Event.END;
+            }
+            rootRead = true;
+            return readValue();
+        }
+
+        final int current = peek();
+        final int top = depth - 1;
+        if (containers[top] == IN_OBJECT) {
+            switch (states[top]) {
+                case AFTER_START:
+                    if (current == '}') {
+                        return close();
+                    }
+                    return readKey();
+                case AFTER_KEY:
+                    states[top] = AFTER_VALUE;
+                    return readValue();
+                case AFTER_VALUE:
+                default:
+                    if (current == '}') {
+                        return close();
+                    } else if (current != ',') {
+                        throw error("Expected ',' or '}'");
+                    }
+                    position++;
+                    return readKey();
+            }
+        }
+        if (states[top] == AFTER_START) {
+            if (current == ']') {
+                return close();
+            }
+        } else {
+            if (current == ']') {
+                return close();
+            } else if (current != ',') {
+                throw error("Expected ',' or ']'");
+            }
+            position++;
+        }
+        states[top] = AFTER_VALUE;
+        return readValue();
+    }
+
+    private Event close() {
+        position++;
+        depth--;
+        return containers[depth] == IN_OBJECT ? Event.END_OBJECT : Event.END_ARRAY;
+    }
+
+    private Event readKey() throws IOException, JSONException {
+        if (peek() != '"') {
+            throw error("Expected a key");
+        }
+        position++;
+        key = readString();
+        if (peek() != ':') {
+            throw error("Expected ':'");
+        }
+        position++;
+        states[depth - 1] = AFTER_KEY;
+        return Event.KEY;
+    }
+
+    private Event readValue() throws IOException, JSONException {
+        final int current = peek();
+        switch (current) {
+            case '{':
+                position++;
+                open(IN_OBJECT);
+                return Event.START_OBJECT;
+            case '[':
+                position++;
+                open(IN_ARRAY);
+                return Event.START_ARRAY;
+            case '"':
+                position++;
+                value = model.createString(readString());
+                return Event.VALUE;
+            case 't':
+                readLiteral("true");
+                value = model.createBoolean(true);
+                return Event.VALUE;
+            case 'f':
+                readLiteral("false");
+                value = model.createBoolean(false);
+                return Event.VALUE;
+            case 'n':
+                readLiteral("null");
+                value = model.createNull();
+                return Event.VALUE;
+            case -1:
+                throw error("Unexpected end of the text");
+            default:
+                if (current == '-' || ('0' <= current && current <= '9')) {
+                    value = model.createNumber(readNumber());
+                    return Event.VALUE;
+                }
+                throw error("Unexpected character '" + (char) current + "'");
+        }
+    }
+
+    private void open(final byte container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            states = Arrays.copyOf(states, depth * 2);
+        }
+        containers[depth] = container;
+        states[depth] = AFTER_START;
+        depth++;
+    }
+
+    /**
+     * Skips the whitespaces and returns the next character, without consuming it.
+     */
+    private int peek() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            final char current = buffer[position];
+            if (current == ' ' || current == '\n' || current == '\r' || current == '\t') {
+                position++;
+            } else {
+                return current;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = 0;
+        final int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private void readLiteral(final String literal) throws IOException, JSONException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("Expected '" + literal + "'");
+            }
+        }
+    }
+
+    private String readString() throws IOException, JSONException {
+        builder.setLength(0);
+        while (true) {
+            // Copies the characters up to the next quote or escape at once
+            final int start = position;
+            while (position < limit) {
+                final char current = buffer[position];
+                if (current == '"' || current == '\\' || current < 0x20) {
+                    break;
+                }
+                position++;
+            }
+            builder.append(buffer, start, position - start);
+
+            final int current = read();
+            if (current == '"') {
+                return builder.toString();
+            } else if (current == '\\') {
+                readEscape();
+            } else if (current == -1) {
+                throw error("Unterminated string");
+            } else if (current < 0x20) {
+                throw error("Control character in a string");
+            } else {
+                // The buffer was empty, the current character is a regular one
+                builder.append((char) current);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException, JSONException {
+        final int escaped = read();
+        switch (escaped) {
+            case '"':
+            case '\\':
+            case '/':
+                builder.append((char) escaped);
+                break;
+            case 'b':
+                builder.append('\b');
+                break;
+            case 'f':
+                builder.append('\f');
+                break;
+            case 'n':
+                builder.append('\n');
+                break;
+            case 'r':
+                builder.append('\r');
+                break;
+            case 't':
+                builder.append('\t');
+                break;
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw error("Invalid hexadecimal digit");
+                    }
+                    code = (code << 4) | digit;
+                }
+                builder.append((char) code);
+                break;
+            default:
+                throw error("Invalid escape sequence");
+        }
+    }
+
+    private Number readNumber() throws IOException, JSONException {
+        builder.setLength(0);
+        if (peek() == '-') {
+            builder.append((char) read());
+        }
+        final int integerDigits = readDigits();
+        if (integerDigits == 0) {
+            throw error("Expected a digit");
+        } else if (integerDigits > 1 && builder.charAt(builder.length() - integerDigits) == '0') {
+            throw error("Leading zeros are not allowed");
+        }
+        boolean decimal = false;
+        boolean exponent = false;
+        int fractionDigits = 0;
+        if (peekRaw() == '.') {
+            decimal = true;
+            builder.append((char) read());
+            fractionDigits = readDigits();
+            if (fractionDigits == 0) {
+                throw error("Expected a digit");
+            }
+        }
+        if (peekRaw() == 'e' || peekRaw() == 'E') {
+            decimal = true;
+            exponent = true;
+            builder.append((char) read());
+            if (peekRaw() == '+' || peekRaw() == '-') {
+                builder.append((char) read());
+            }
+            if (readDigits() == 0) {
+                throw error("Expected a digit");
+            }
+        }
+
+        final String text = builder.toString();
+        if (!decimal) {
+            if (integerDigits <= MAXIMAL_LONG_DIGITS) {
+                return Long.parseLong(text);
+            }
+            final BigInteger big = new BigInteger(text);
+            if (big.bitLength() <= 63) {
+                return big.longValue();
+            }
+            return big;
+        }
+        if (!exponent && integerDigits + fractionDigits <= MAXIMAL_EXACT_DIGITS) {
+            return Double.valueOf(text);
+        }
+        return new BigDecimal(text);
+    }
+
+    private int readDigits() throws IOException {
+        int digits = 0;
+        while (true) {
+            final int current = peekRaw();
+            if (current < '0' || current > '9') {
+                return digits;
+            }
+            builder.append((char) read());
+            digits++;
+        }
+    }
+
+    /**
+     * Returns the next character without consuming it, and without skipping the
+     * whitespaces.
+     */
+    private int peekRaw() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private JSONException error(final String message) {
+        return new JSONException(message + " at character " + (offset + position));
+    }
+}
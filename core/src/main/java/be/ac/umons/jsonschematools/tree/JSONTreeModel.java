@@ -0,0 +1,134 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+/**
+ * A way to read and build JSON trees, independently of the library that
+ * represents them.
+ * 
+ * A model does not wrap the values: it is given the values of its
+ * representation (for instance, a {@code JSONObject} for
+ * {@link OrgJSONTreeModel}) and answers questions about them. Lookups never
+ * throw exceptions for missing keys: {@link #getMember(Object, String)}
+ * returns <code>null</code> instead. The JSON <code>null</code> value is
+ * represented by {@link #createNull()}, which is never <code>null</code>
+ * itself.
+ * 
+ * The methods reading a value assume that it has the correct kind (see
+ * {@link #getKind(Object)}). A model must be safe to use from multiple threads
+ * at once.
+ * 
+ * The scope of the models is limited to the edges of the library. Schemas are
+ * always represented with <code>org.json</code> values once loaded (the merge
+ * operations, the generators, and the handlers of the default validator read
+ * them directly), and a tree of another model is converted when it is loaded
+ * (see
+ * {@link be.ac.umons.jsonschematools.JSONSchemaStore#loadFromTree(Object, JSONTreeModel)
+ * loadFromTree}).
+ * Only {@link JSONTreeParser}, the algorithms of {@link JSONTrees}, and the
+ * compiled and streaming validators read documents through a model.
+ * 
+ * @author Gaëtan Staquet
+ */
+public interface JSONTreeModel {
+    /**
+     * Gets the kind of a value.
+     * 
+     * @param value The value
+     * @return The kind
+     * @throws IllegalArgumentException If the value is not part of a tree of this
+     *                                  model
+     */
+    ValueKind getKind(Object value);
+
+    /**
+     * Gets the number of members of an object, or the number of elements of an
+     * array.
+     * 
+     * @param value The object or the array
+     * @return The size of the value
+     */
+    int size(Object value);
+
+    /**
+     * Gets the value associated with a key in an object.
+     * 
+     * @param object The object
+     * @param key    The key
+     * @return The value, or <code>null</code> if the object does not have the key
+     */
+    Object getMember(Object object, String key);
+
+    /**
+     * Gets the keys of an object.
+     * 
+     * @param object The object
+     * @return The keys
+     */
+    Iterable<String> getKeys(Object object);
+
+    /**
+     * Gets an element of an array.
+     * 
+     * @param array The array
+     * @param index The index of the element
+     * @return The element
+     */
+    Object getElement(Object array, int index);
+
+    String getString(Object value);
+
+    Number getNumber(Object value);
+
+    boolean getBoolean(Object value);
+
+    /**
+     * Creates an object.
+     * 
+     * If a key appears multiple times, the last value is kept. The arrays are not
+     * modified by this method, and are not used by the created object.
+     * 
+     * @param keys   The keys
+     * @param values The values, such that <code>values[i]</code> is associated
+     *               with <code>keys[i]</code>
+     * @param size   The number of members to read from the arrays
+     * @return The object
+     */
+    Object createObject(String[] keys, Object[] values, int size);
+
+    /**
+     * Creates an array.
+     * 
+     * The array of elements is not modified by this method, and is not used by the
+     * created array.
+     * 
+     * @param elements The elements
+     * @param size     The number of elements to read from <code>elements</code>
+     * @return The array
+     */
+    Object createArray(Object[] elements, int size);
+
+    Object createString(String value);
+
+    Object createNumber(Number value);
+
+    Object createBoolean(boolean value);
+
+    Object createNull();
+}
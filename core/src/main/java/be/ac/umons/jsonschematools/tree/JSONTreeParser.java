@@ -0,0 +1,608 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A parser for UTF-8 encoded JSON texts, building trees of any
+ * {@link JSONTreeModel}.
+ * 
+ * By default, the parser builds compact trees (see {@link CompactTreeModel}).
+ * The keys, and the short strings such as the abstract constants (see
+ * {@link be.ac.umons.jsonschematools.AbstractConstants}), are interned: two
+ * equal keys read by the same parser are the same {@link String} instance,
+ * and reading a known key does not allocate. Integers are read into a
+ * <code>long</code> without going through a {@link String}, and only use
+ * {@link BigInteger} when they do not fit. Decimal numbers are read as
+ * {@link Double}s when this is exact, and as {@link BigDecimal}s otherwise.
+ * 
+ * Unlike {@link org.json.JSONTokener}, the parser only accepts standard JSON.
+ * As with {@link JSONObject}, an object containing the same key twice is
+ * rejected.
+ * A parser reuses internal buffers between texts and must therefore not be
+ * used by multiple threads at once.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class JSONTreeParser {
+    /**
+     * The strings whose length in bytes is at most this value are interned.
+     */
+    static final int MAXIMAL_INTERNED_LENGTH = 32;
+    private static final int MAXIMAL_INTERNED_STRINGS = 1 << 16;
+    private static final int MAXIMAL_EXACT_DIGITS = 15;
+    // Above this number of keys, the duplicates are detected using a set
+    private static final int MAXIMAL_SCANNED_KEYS = 16;
+
+    private final JSONTreeModel model;
+    private final StringTable strings = new StringTable();
+
+    private byte[] input;
+    private int position;
+    private int limit;
+
+    // The members of the objects being parsed, one array per depth
+    private String[][] keysByDepth = new String[8][];
+    private Object[][] valuesByDepth = new Object[8][];
+    private Object[][] elementsByDepth = new Object[8][];
+    private byte[] scratch = new byte[64];
+
+    public JSONTreeParser() {
+        this(CompactTreeModel.INSTANCE);
+    }
+
+    public JSONTreeParser(final JSONTreeModel model) {
+        this.model = model;
+    }
+
+    public JSONTreeModel getModel() {
+        return model;
+    }
+
+    /**
+     * Parses a JSON text.
+     * 
+     * The remaining bytes of the buffer are read. The position of the buffer is
+     * not modified.
+     * 
+     * @param buffer The buffer containing the text
+     * @return The tree
+     * @throws JSONException If the text is not a valid JSON text
+     */
+    public Object parse(final ByteBuffer buffer) throws JSONException {
+        if (buffer.hasArray()) {
+            return parse(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.arrayOffset() + buffer.limit());
+        }
+        final byte[] content = new byte[buffer.remaining()];
+        buffer.duplicate().get(content);
+        return parse(content, 0, content.length);
+    }
+
+    /**
+     * Parses a JSON text.
+     * 
+     * The stream is read until its end, but is not closed.
+     * 
+     * @param stream The stream containing the text
+     * @return The tree
+     * @throws IOException   If the stream can not be read
+     * @throws JSONException If the text is not a valid JSON text
+     */
+    public Object parse(final InputStream stream) throws IOException, JSONException {
+        byte[] content = new byte[8192];
+        int length = 0;
+        int read;
+        while ((read = stream.read(content, length, content.length - length)) != -1) {
+            length += read;
+            if (length == content.length) {
+                content = Arrays.copyOf(content, content.length * 2);
+            }
+        }
+        return parse(content, 0, length);
+    }
+
+    /**
+     * Parses a JSON text.
+     * 
+     * @param content The bytes of the text
+     * @return The tree
+     * @throws JSONException If the text is not a valid JSON text
+     */
+    public Object parse(final byte[] content) throws JSONException {
+        return parse(content, 0, content.length);
+    }
+
+    private Object parse(final byte[] content, final int start, final int end) throws JSONException {
+        input = content;
+        position = start;
+        limit = end;
+        try {
+            skipByteOrderMark();
+            final Object value = readValue(0);
+            skipWhitespaces();
+            if (position != limit) {
+                throw error("Unexpected content after the JSON value");
+            }
+            return value;
+        } finally {
+            input = null;
+        }
+    }
+
+    private void skipByteOrderMark() {
+        if (limit - position >= 3 && input[position] == (byte) 0xEF && input[position + 1] == (byte) 0xBB
+                && input[position + 2] == (byte) 0xBF) {
+            position += 3;
+        }
+    }
+
+    private void skipWhitespaces() {
+        while (position < limit) {
+            final byte current = input[position];
+            if (current == ' ' || current == '\n' || current == '\r' || current == '\t') {
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private byte next() throws JSONException {
+        skipWhitespaces();
+        if (position == limit) {
+            throw error("Unexpected end of the text");
+        }
+        return input[position];
+    }
+
+    private void expect(final byte expected) throws JSONException {
+        if (next() != expected) {
+            throw error("Expected '" + (char) expected + "'");
+        }
+        position++;
+    }
+
+    private Object readValue(final int depth) throws JSONException {
+        final byte current = next();
+        switch (current) {
+            case '{':
+                return readObject(depth);
+            case '[':
+                return readArray(depth);
+            case '"':
+                return model.createString(readString());
+            case 't':
+                readLiteral("true");
+                return model.createBoolean(true);
+            case 'f':
+                readLiteral("false");
+                return model.createBoolean(false);
+            case 'n':
+                readLiteral("null");
+                return model.createNull();
+            default:
+                if (current == '-' || ('0' <= current && current <= '9')) {
+                    return model.createNumber(readNumber());
+                }
+                throw error("Unexpected character '" + (char) current + "'");
+        }
+    }
+
+    private Object readObject(final int depth) throws JSONException {
+        position++;
+        ensureDepth(depth);
+        String[] keys = keysByDepth[depth];
+        Object[] values = valuesByDepth[depth];
+        int size = 0;
+        Set<String> seenKeys = null;
+        if (next() == '}') {
+            position++;
+            return model.createObject(keys, values, 0);
+        }
+        while (true) {
+            if (next() != '"') {
+                throw error("Expected a key");
+            }
+            final String key = readString();
+            if (size < MAXIMAL_SCANNED_KEYS) {
+                for (int i = 0; i < size; i++) {
+                    if (key.equals(keys[i])) {
+                        throw error("Duplicate key " + JSONObject.quote(key));
+                    }
+                }
+            } else {
+                if (seenKeys == null) {
+                    seenKeys = new HashSet<>(Arrays.asList(keys).subList(0, size));
+                }
+                if (!seenKeys.add(key)) {
+                    throw error("Duplicate key " + JSONObject.quote(key));
+                }
+            }
+            expect((byte) ':');
+            final Object value = readValue(depth + 1);
+            if (size == keys.length) {
+                keys = keysByDepth[depth] = Arrays.copyOf(keys, size * 2);
+                values = valuesByDepth[depth] = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            final byte separator = next();
+            position++;
+            if (separator == '}') {
+                final Object object = model.createObject(keys, values, size);
+                Arrays.fill(values, 0, size, null);
+                return object;
+            } else if (separator != ',') {
+                position--;
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private Object readArray(final int depth) throws JSONException {
+        position++;
+        ensureDepth(depth);
+        Object[] elements = elementsByDepth[depth];
+        int size = 0;
+        if (next() == ']') {
+            position++;
+            return model.createArray(elements, 0);
+        }
+        while (true) {
+            final Object element = readValue(depth + 1);
+            if (size == elements.length) {
+                elements = elementsByDepth[depth] = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = element;
+            final byte separator = next();
+            position++;
+            if (separator == ']') {
+                final Object array = model.createArray(elements, size);
+                Arrays.fill(elements, 0, size, null);
+                return array;
+            } else if (separator != ',') {
+                position--;
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private void ensureDepth(final int depth) {
+        if (depth >= keysByDepth.length) {
+            final int length = Math.max(depth + 1, keysByDepth.length * 2);
+            keysByDepth = Arrays.copyOf(keysByDepth, length);
+            valuesByDepth = Arrays.copyOf(valuesByDepth, length);
+            elementsByDepth = Arrays.copyOf(elementsByDepth, length);
+        }
+        if (keysByDepth[depth] == null) {
+            keysByDepth[depth] = new String[8];
+            valuesByDepth[depth] = new Object[8];
+            elementsByDepth[depth] = new Object[8];
+        }
+    }
+
+    private void readLiteral(final String literal) throws JSONException {
+        if (limit - position < literal.length()) {
+            throw error("Unexpected end of the text");
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (input[position + i] != literal.charAt(i)) {
+                throw error("Expected '" + literal + "'");
+            }
+        }
+        position += literal.length();
+    }
+
+    private String readString() throws JSONException {
+        // Skips the opening quote
+        final int start = ++position;
+        int hash = 0;
+        while (position < limit) {
+            final byte current = input[position];
+            if (current == '"') {
+                final int length = position - start;
+                position++;
+                if (length <= MAXIMAL_INTERNED_LENGTH) {
+                    return strings.intern(input, start, length, hash);
+                }
+                return new String(input, start, length, StandardCharsets.UTF_8);
+            } else if (current == '\\') {
+                return readEscapedString(start);
+            } else if ((current & 0xFF) < 0x20) {
+                throw error("Control character in a string");
+            }
+            hash = 31 * hash + current;
+            position++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String readEscapedString(final int start) throws JSONException {
+        // Set once a surrogate is escaped, see below
+        StringBuilder builder = null;
+        int length = position - start;
+        ensureScratch(length);
+        System.arraycopy(input, start, scratch, 0, length);
+        while (position < limit) {
+            final byte current = input[position++];
+            if (current == '"') {
+                if (builder != null) {
+                    return builder.append(new String(scratch, 0, length, StandardCharsets.UTF_8)).toString();
+                }
+                int hash = 0;
+                for (int i = 0; i < length; i++) {
+                    hash = 31 * hash + scratch[i];
+                }
+                if (length <= MAXIMAL_INTERNED_LENGTH) {
+                    return strings.intern(scratch, 0, length, hash);
+                }
+                return new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            ensureScratch(length + 4);
+            if (current != '\\') {
+                if ((current & 0xFF) < 0x20) {
+                    position--;
+                    throw error("Control character in a string");
+                }
+                scratch[length++] = current;
+                continue;
+            }
+            if (position == limit) {
+                break;
+            }
+            final byte escaped = input[position++];
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    scratch[length++] = escaped;
+                    break;
+                case 'b':
+                    scratch[length++] = '\b';
+                    break;
+                case 'f':
+                    scratch[length++] = '\f';
+                    break;
+                case 'n':
+                    scratch[length++] = '\n';
+                    break;
+                case 'r':
+                    scratch[length++] = '\r';
+                    break;
+                case 't':
+                    scratch[length++] = '\t';
+                    break;
+                case 'u':
+                    final char unit = (char) readHexadecimal();
+                    if (Character.isSurrogate(unit)) {
+                        // A surrogate can not be encoded on its own in UTF-8. The rest of the
+                        // string is thus built from chars: pairs of surrogates form their code
+                        // point, and lone surrogates are kept as they are, as org.json does
+                        if (builder == null) {
+                            builder = new StringBuilder(length + 16);
+                        }
+                        builder.append(new String(scratch, 0, length, StandardCharsets.UTF_8)).append(unit);
+                        length = 0;
+                    } else {
+                        length = appendUTF8(unit, length);
+                    }
+                    break;
+                default:
+                    position--;
+                    throw error("Invalid escape sequence");
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private int readHexadecimal() throws JSONException {
+        if (limit - position < 4) {
+            throw error("Unexpected end of the text");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            final int digit = Character.digit(input[position++], 16);
+            if (digit < 0) {
+                position--;
+                throw error("Invalid hexadecimal digit");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private int appendUTF8(final char character, int length) {
+        ensureScratch(length + 3);
+        if (character < 0x80) {
+            scratch[length++] = (byte) character;
+        } else if (character < 0x800) {
+            scratch[length++] = (byte) (0xC0 | (character >> 6));
+            scratch[length++] = (byte) (0x80 | (character & 0x3F));
+        } else {
+            scratch[length++] = (byte) (0xE0 | (character >> 12));
+            scratch[length++] = (byte) (0x80 | ((character >> 6) & 0x3F));
+            scratch[length++] = (byte) (0x80 | (character & 0x3F));
+        }
+        return length;
+    }
+
+    private void ensureScratch(final int length) {
+        if (length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(length, scratch.length * 2));
+        }
+    }
+
+    private Number readNumber() throws JSONException {
+        final int start = position;
+        final boolean negative = input[position] == '-';
+        if (negative) {
+            position++;
+        }
+        final int digitsStart = position;
+        long integer = 0;
+        while (position < limit && '0' <= input[position] && input[position] <= '9') {
+            integer = integer * 10 + (input[position] - '0');
+            position++;
+        }
+        final int integerDigits = position - digitsStart;
+        if (integerDigits == 0) {
+            throw error("Expected a digit");
+        } else if (integerDigits > 1 && input[digitsStart] == '0') {
+            throw error("Leading zeros are not allowed");
+        }
+
+        boolean decimal = false;
+        int fractionDigits = 0;
+        if (position < limit && input[position] == '.') {
+            decimal = true;
+            position++;
+            final int fractionStart = position;
+            while (position < limit && '0' <= input[position] && input[position] <= '9') {
+                position++;
+            }
+            fractionDigits = position - fractionStart;
+            if (fractionDigits == 0) {
+                throw error("Expected a digit");
+            }
+        }
+        boolean exponent = false;
+        if (position < limit && (input[position] == 'e' || input[position] == 'E')) {
+            decimal = true;
+            exponent = true;
+            position++;
+            if (position < limit && (input[position] == '+' || input[position] == '-')) {
+                position++;
+            }
+            final int exponentStart = position;
+            while (position < limit && '0' <= input[position] && input[position] <= '9') {
+                position++;
+            }
+            if (position == exponentStart) {
+                throw error("Expected a digit");
+            }
+        }
+
+        if (!decimal) {
+            // A long holds any number of 18 digits
+            if (integerDigits <= 18) {
+                return negative ? -integer : integer;
+            }
+            final BigInteger big = new BigInteger(new String(input, start, position - start, StandardCharsets.US_ASCII));
+            if (big.bitLength() <= 63) {
+                return big.longValue();
+            }
+            return big;
+        }
+        final String text = new String(input, start, position - start, StandardCharsets.US_ASCII);
+        if (!exponent && integerDigits + fractionDigits <= MAXIMAL_EXACT_DIGITS) {
+            // With at most 15 significant digits, the text is the shortest representation
+            // of the closest double, so no precision is lost
+            return Double.valueOf(text);
+        }
+        return new BigDecimal(text);
+    }
+
+    private JSONException error(final String message) {
+        return new JSONException(message + " at byte " + position);
+    }
+
+    /**
+     * An open-addressing table of strings, indexed by their UTF-8 bytes.
+     */
+    private static final class StringTable {
+        private byte[][] bytes = new byte[256][];
+        private String[] strings = new String[256];
+        private int[] hashes = new int[256];
+        private int size;
+
+        String intern(final byte[] source, final int start, final int length, final int hash) {
+            final int mask = strings.length - 1;
+            int slot = mix(hash) & mask;
+            while (strings[slot] != null) {
+                if (hashes[slot] == hash && equal(bytes[slot], source, start, length)) {
+                    return strings[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            final String string = new String(source, start, length, StandardCharsets.UTF_8);
+            if (size >= MAXIMAL_INTERNED_STRINGS) {
+                return string;
+            }
+            bytes[slot] = Arrays.copyOfRange(source, start, start + length);
+            strings[slot] = string;
+            hashes[slot] = hash;
+            size++;
+            if (2 * size > strings.length) {
+                grow();
+            }
+            return string;
+        }
+
+        private void grow() {
+            final byte[][] oldBytes = bytes;
+            final String[] oldStrings = strings;
+            final int[] oldHashes = hashes;
+            bytes = new byte[oldStrings.length * 2][];
+            strings = new String[oldStrings.length * 2];
+            hashes = new int[oldStrings.length * 2];
+            final int mask = strings.length - 1;
+            for (int i = 0; i < oldStrings.length; i++) {
+                if (oldStrings[i] != null) {
+                    int slot = mix(oldHashes[i]) & mask;
+                    while (strings[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    bytes[slot] = oldBytes[i];
+                    strings[slot] = oldStrings[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+
+        private static int mix(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean equal(final byte[] stored, final byte[] source, final int start, final int length) {
+            if (stored.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (stored[i] != source[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
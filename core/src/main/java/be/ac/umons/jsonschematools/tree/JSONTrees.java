@@ -0,0 +1,334 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Algorithms on JSON trees that work for any {@link JSONTreeModel}.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class JSONTrees {
+    private JSONTrees() {
+    }
+
+    /**
+     * Converts a tree from a model to another.
+     * 
+     * @param value The tree, in the representation of <code>from</code>
+     * @param from  The model of the tree
+     * @param to    The model of the result
+     * @return The tree, in the representation of <code>to</code>
+     */
+    public static Object convert(final Object value, final JSONTreeModel from, final JSONTreeModel to) {
+        return convert(value, from, to, null);
+    }
+
+    /**
+     * Converts a tree from a model to another, reusing the sub-trees that were
+     * already converted.
+     * 
+     * The objects and arrays converted by this method are recorded in
+     * <code>converted</code>, which must compare its keys by identity (see
+     * {@link java.util.IdentityHashMap}). Converting a sub-tree of a tree that
+     * was already converted is thus immediate, and returns the same instance as
+     * the one in the converted tree. The map must be discarded as soon as one of
+     * the recorded trees may be modified.
+     * 
+     * @param value     The tree, in the representation of <code>from</code>
+     * @param from      The model of the tree
+     * @param to        The model of the result
+     * @param converted The objects and arrays already converted
+     * @return The tree, in the representation of <code>to</code>
+     */
+    public static Object convert(final Object value, final JSONTreeModel from, final JSONTreeModel to,
+            final Map<Object, Object> converted) {
+        if (from == to) {
+            return value;
+        }
+        final ValueKind kind = from.getKind(value);
+        if (converted != null && (kind == ValueKind.OBJECT || kind == ValueKind.ARRAY)) {
+            final Object known = converted.get(value);
+            if (known != null) {
+                return known;
+            }
+        }
+        final Object result;
+        switch (kind) {
+            case OBJECT:
+                final int members = from.size(value);
+                final String[] keys = new String[members];
+                final Object[] values = new Object[members];
+                int i = 0;
+                for (final String key : from.getKeys(value)) {
+                    keys[i] = key;
+                    values[i] = convert(from.getMember(value, key), from, to, converted);
+                    i++;
+                }
+                result = to.createObject(keys, values, members);
+                break;
+            case ARRAY:
+                final int length = from.size(value);
+                final Object[] elements = new Object[length];
+                for (int j = 0; j < length; j++) {
+                    elements[j] = convert(from.getElement(value, j), from, to, converted);
+                }
+                result = to.createArray(elements, length);
+                break;
+            case STRING:
+                return to.createString(from.getString(value));
+            case INTEGER:
+            case NUMBER:
+                return to.createNumber(from.getNumber(value));
+            case BOOLEAN:
+                return to.createBoolean(from.getBoolean(value));
+            case NULL:
+            default:
+                return to.createNull();
+        }
+        if (converted != null) {
+            converted.put(value, result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether two trees of the same model are similar, i.e., they have the
+     * same structure and the same values.
+     * 
+     * The order of the members of an object is not relevant. Numbers are compared
+     * by value, regardless of their representation.
+     * 
+     * @param model The model of the trees
+     * @param value The first tree
+     * @param other The second tree
+     * @return True if and only if the trees are similar
+     */
+    public static boolean similar(final JSONTreeModel model, final Object value, final Object other) {
+        return similar(model, value, model, other);
+    }
+
+    /**
+     * Checks whether two trees, possibly of different models, are similar.
+     * 
+     * @param model      The model of the first tree
+     * @param value      The first tree
+     * @param otherModel The model of the second tree
+     * @param other      The second tree
+     * @return True if and only if the trees are similar
+     * @see #similar(JSONTreeModel, Object, Object)
+     */
+    public static boolean similar(final JSONTreeModel model, final Object value, final JSONTreeModel otherModel,
+            final Object other) {
+        if (value == other && model == otherModel) {
+            return true;
+        }
+        final ValueKind kind = model.getKind(value);
+        final ValueKind otherKind = otherModel.getKind(other);
+        switch (kind) {
+            case OBJECT:
+                if (otherKind != ValueKind.OBJECT || model.size(value) != otherModel.size(other)) {
+                    return false;
+                }
+                for (final String key : model.getKeys(value)) {
+                    final Object member = otherModel.getMember(other, key);
+                    if (member == null || !similar(model, model.getMember(value, key), otherModel, member)) {
+                        return false;
+                    }
+                }
+                return true;
+            case ARRAY:
+                if (otherKind != ValueKind.ARRAY || model.size(value) != otherModel.size(other)) {
+                    return false;
+                }
+                for (int i = 0; i < model.size(value); i++) {
+                    if (!similar(model, model.getElement(value, i), otherModel, otherModel.getElement(other, i))) {
+                        return false;
+                    }
+                }
+                return true;
+            case STRING:
+                return otherKind == ValueKind.STRING && model.getString(value).equals(otherModel.getString(other));
+            case INTEGER:
+            case NUMBER:
+                return (otherKind == ValueKind.INTEGER || otherKind == ValueKind.NUMBER)
+                        && compareNumbers(model.getNumber(value), otherModel.getNumber(other)) == 0;
+            case BOOLEAN:
+                return otherKind == ValueKind.BOOLEAN && model.getBoolean(value) == otherModel.getBoolean(other);
+            case NULL:
+            default:
+                return otherKind == ValueKind.NULL;
+        }
+    }
+
+    /**
+     * Computes a hash code of a tree that is consistent with
+     * {@link #similar(JSONTreeModel, Object, Object)}.
+     * 
+     * @param model The model of the tree
+     * @param value The tree
+     * @return The hash code
+     */
+    public static int hashCode(final JSONTreeModel model, final Object value) {
+        if (value instanceof CompactObject || value instanceof CompactArray) {
+            // The compact trees are immutable and cache their hash
+            return value.hashCode();
+        }
+        return structuralHashCode(model, value);
+    }
+
+    /**
+     * Computes the hash code of a tree, without using the cached hash of the
+     * tree itself. The cached hashes of its sub-trees are used.
+     * 
+     * @param model The model of the tree
+     * @param value The tree
+     * @return The hash code
+     */
+    static int structuralHashCode(final JSONTreeModel model, final Object value) {
+        switch (model.getKind(value)) {
+            case OBJECT:
+                int objectHash = 0;
+                for (final String key : model.getKeys(value)) {
+                    objectHash += key.hashCode() ^ hashCode(model, model.getMember(value, key));
+                }
+                return objectHash;
+            case ARRAY:
+                int arrayHash = 1;
+                for (int i = 0; i < model.size(value); i++) {
+                    arrayHash = 31 * arrayHash + hashCode(model, model.getElement(value, i));
+                }
+                return arrayHash;
+            case STRING:
+                return model.getString(value).hashCode();
+            case INTEGER:
+            case NUMBER:
+                final double number = model.getNumber(value).doubleValue();
+                // -0.0 and 0.0 are similar, and must have the same hash
+                return Double.hashCode(number == 0 ? 0.0 : number);
+            case BOOLEAN:
+                return Boolean.hashCode(model.getBoolean(value));
+            case NULL:
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Writes a tree as a JSON text.
+     * 
+     * @param model The model of the tree
+     * @param value The tree
+     * @return The JSON text
+     */
+    public static String toString(final JSONTreeModel model, final Object value) {
+        final StringBuilder builder = new StringBuilder();
+        write(model, value, builder);
+        return builder.toString();
+    }
+
+    private static void write(final JSONTreeModel model, final Object value, final StringBuilder builder) {
+        switch (model.getKind(value)) {
+            case OBJECT:
+                builder.append('{');
+                boolean first = true;
+                for (final String key : model.getKeys(value)) {
+                    if (!first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    builder.append(JSONObject.quote(key)).append(':');
+                    write(model, model.getMember(value, key), builder);
+                }
+                builder.append('}');
+                break;
+            case ARRAY:
+                builder.append('[');
+                for (int i = 0; i < model.size(value); i++) {
+                    if (i != 0) {
+                        builder.append(',');
+                    }
+                    write(model, model.getElement(value, i), builder);
+                }
+                builder.append(']');
+                break;
+            case STRING:
+                builder.append(JSONObject.quote(model.getString(value)));
+                break;
+            case INTEGER:
+            case NUMBER:
+                builder.append(JSONObject.numberToString(model.getNumber(value)));
+                break;
+            case BOOLEAN:
+                builder.append(model.getBoolean(value));
+                break;
+            case NULL:
+            default:
+                builder.append("null");
+                break;
+        }
+    }
+
+    /**
+     * Compares two numbers by value, regardless of their representation.
+     * 
+     * @param number The first number
+     * @param other  The second number
+     * @return A negative value, zero, or a positive value if the first number is
+     *         smaller than, equal to, or greater than the second number
+     */
+    public static int compareNumbers(final Number number, final Number other) {
+        if (isLong(number) && isLong(other)) {
+            return Long.compare(number.longValue(), other.longValue());
+        }
+        if (isNotFinite(number) || isNotFinite(other)) {
+            return Double.compare(number.doubleValue(), other.doubleValue());
+        }
+        return toBigDecimal(number).compareTo(toBigDecimal(other));
+    }
+
+    private static boolean isLong(final Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte;
+    }
+
+    private static boolean isNotFinite(final Number number) {
+        if (number instanceof Double || number instanceof Float) {
+            final double value = number.doubleValue();
+            return Double.isNaN(value) || Double.isInfinite(value);
+        }
+        return false;
+    }
+
+    private static BigDecimal toBigDecimal(final Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        } else if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        } else if (isLong(number)) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        return BigDecimal.valueOf(number.doubleValue());
+    }
+}
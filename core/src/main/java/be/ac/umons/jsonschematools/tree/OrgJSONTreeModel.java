@@ -0,0 +1,137 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The model of the trees of the <code>org.json</code> library.
+ * 
+ * Objects are {@link JSONObject}s, arrays are {@link JSONArray}s, and the
+ * <code>null</code> value is {@link JSONObject#NULL}. This is the
+ * representation used by {@link be.ac.umons.jsonschematools.JSONSchema}.
+ * 
+ * @author Gaëtan Staquet
+ */
+public final class OrgJSONTreeModel implements JSONTreeModel {
+    public static final OrgJSONTreeModel INSTANCE = new OrgJSONTreeModel();
+
+    private OrgJSONTreeModel() {
+    }
+
+    @Override
+    public ValueKind getKind(final Object value) {
+        if (value instanceof JSONObject) {
+            return ValueKind.OBJECT;
+        } else if (value instanceof JSONArray) {
+            return ValueKind.ARRAY;
+        } else if (value instanceof String) {
+            return ValueKind.STRING;
+        } else if (value instanceof Number) {
+            return ValueKind.ofNumber((Number) value);
+        } else if (value instanceof Boolean) {
+            return ValueKind.BOOLEAN;
+        } else if (value == null || JSONObject.NULL.equals(value)) {
+            return ValueKind.NULL;
+        }
+        throw new IllegalArgumentException("Unsupported value " + value + " of class " + value.getClass());
+    }
+
+    @Override
+    public int size(final Object value) {
+        if (value instanceof JSONObject) {
+            return ((JSONObject) value).length();
+        }
+        return ((JSONArray) value).length();
+    }
+
+    @Override
+    public Object getMember(final Object object, final String key) {
+        return ((JSONObject) object).opt(key);
+    }
+
+    @Override
+    public Iterable<String> getKeys(final Object object) {
+        return ((JSONObject) object).keySet();
+    }
+
+    @Override
+    public Object getElement(final Object array, final int index) {
+        return ((JSONArray) array).opt(index);
+    }
+
+    @Override
+    public String getString(final Object value) {
+        return (String) value;
+    }
+
+    @Override
+    public Number getNumber(final Object value) {
+        return (Number) value;
+    }
+
+    @Override
+    public boolean getBoolean(final Object value) {
+        return (Boolean) value;
+    }
+
+    @Override
+    public Object createObject(final String[] keys, final Object[] values, final int size) {
+        final JSONObject object = new JSONObject();
+        for (int i = 0; i < size; i++) {
+            object.put(keys[i], values[i]);
+        }
+        return object;
+    }
+
+    @Override
+    public Object createArray(final Object[] elements, final int size) {
+        final JSONArray array = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            array.put(elements[i]);
+        }
+        return array;
+    }
+
+    @Override
+    public Object createString(final String value) {
+        return value;
+    }
+
+    @Override
+    public Object createNumber(final Number value) {
+        return value;
+    }
+
+    @Override
+    public Object createBoolean(final boolean value) {
+        return value;
+    }
+
+    @Override
+    public Object createNull() {
+        return JSONObject.NULL;
+    }
+
+    @Override
+    public String toString() {
+        return "org.json";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.tree;
+
+import java.math.BigInteger;
+
+/**
+ * The kinds of values that can appear in a JSON tree.
+ * 
+ * @author Gaëtan Staquet
+ */
+public enum ValueKind {
+    OBJECT,
+    ARRAY,
+    STRING,
+    /**
+     * A number without fractional part.
+     */
+    INTEGER,
+    /**
+     * A number with a fractional part or an exponent.
+     */
+    NUMBER,
+    BOOLEAN,
+    NULL;
+
+    /**
+     * Gets the kind of a number.
+     * 
+     * @param number The number
+     * @return {@link #INTEGER} if the number is represented by an integral type,
+     *         {@link #NUMBER} otherwise
+     */
+    static ValueKind ofNumber(final Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof BigInteger
+                || number instanceof Short || number instanceof Byte) {
+            return INTEGER;
+        }
+        return NUMBER;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Contains an abstraction over the representation of JSON trees.
+ * 
+ * A {@link JSONTreeModel} reads and builds JSON trees without depending on the
+ * library that represents them. Two models are provided:
+ * {@link OrgJSONTreeModel}, for the values of the <code>org.json</code>
+ * library, and {@link CompactTreeModel}, for immutable trees whose objects are
+ * backed by sorted arrays.
+ * 
+ * The models are used to parse documents, and to validate them with the
+ * compiled validator. The schemas themselves, the merge operations, and the
+ * generators keep working on <code>org.json</code> values: a schema given in
+ * another model is converted when it is loaded.
+ * 
+ * @author Gaëtan Staquet
+ */
+package be.ac.umons.jsonschematools.tree;
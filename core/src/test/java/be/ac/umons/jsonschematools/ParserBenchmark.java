@@ -0,0 +1,98 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import be.ac.umons.jsonschematools.tree.JSONTreeParser;
+
+/**
+ * Compares the time needed to parse JSON texts with {@link JSONTokener} and
+ * with {@link JSONTreeParser}.
+ * 
+ * This is not a unit test, and must be started manually. The files to parse
+ * can be given as arguments. Without arguments, an abstracted document of a few
+ * megabytes is generated.
+ * 
+ * @author Gaëtan Staquet
+ */
+public class ParserBenchmark {
+    private static final int WARM_UP = 5;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            run("generated document", generateDocument(20000));
+        } else {
+            for (final String file : args) {
+                run(file, Files.readAllBytes(Paths.get(file)));
+            }
+        }
+    }
+
+    private static void run(final String name, final byte[] content) {
+        final JSONTreeParser parser = new JSONTreeParser();
+        final double orgJson = measure(() -> new JSONObject(new JSONTokener(new ByteArrayInputStream(content))));
+        final double hashable = measure(
+                () -> new HashableJSONObject(new JSONTokener(new ByteArrayInputStream(content))));
+        final double compact = measure(() -> parser.parse(content));
+        final double megabytes = content.length / (1024. * 1024.);
+        System.out.println(name + " (" + String.format("%.2f", megabytes) + " MB)");
+        print("org.json JSONObject", orgJson, megabytes);
+        print("org.json HashableJSONObject", hashable, megabytes);
+        print("compact tree", compact, megabytes);
+    }
+
+    private static double measure(final Runnable parse) {
+        for (int i = 0; i < WARM_UP; i++) {
+            parse.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            parse.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+    private static void print(final String parser, final double milliseconds, final double megabytes) {
+        System.out.println(String.format("  %-30s %10.2f ms %10.2f MB/s", parser, milliseconds,
+                megabytes / (milliseconds / 1000)));
+    }
+
+    private static byte[] generateDocument(final int items) {
+        final StringBuilder builder = new StringBuilder("{\"items\": [");
+        for (int i = 0; i < items; i++) {
+            if (i != 0) {
+                builder.append(',');
+            }
+            builder.append("{\"name\": \"\\\\S\", \"count\": \"\\\\I\", \"ratio\": \"\\\\D\", \"kind\": \"\\\\E\", ")
+                    .append("\"enabled\": true, \"parent\": null, \"id\": ").append(i)
+                    .append(", \"tags\": [\"\\\\S\", \"\\\\S\"], \"nested\": {\"value\": ").append(i * 0.5)
+                    .append("}}");
+        }
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -20,6 +20,7 @@ package be.ac.umons.jsonschematools;
 
 import java.io.FileNotFoundException;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.Set;
 
 import org.testng.Assert;
@@ -41,6 +42,28 @@ public class TestGettingKeys {
         Assert.assertTrue(keys.contains("list"));
     }
 
+    @Test
+    public void testKeyAlphabet() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        JSONSchema schema = loadSchema("notSchema.json");
+        KeyAlphabet alphabet = schema.getKeyAlphabet();
+        Assert.assertSame(schema.getKeyAlphabet(), alphabet);
+        Assert.assertEquals(alphabet.getKeysDefinedInSchema(), schema.getAllKeysDefinedInSchema());
+
+        Assert.assertEquals(alphabet.getId(AbstractConstants.stringConstant), 0);
+        Assert.assertEquals(alphabet.getId(AbstractConstants.integerConstant), 1);
+        Assert.assertEquals(alphabet.getId(AbstractConstants.numberConstant), 2);
+        Assert.assertEquals(alphabet.getId(AbstractConstants.enumConstant), 3);
+        Assert.assertEquals(alphabet.size(), 4 + alphabet.getKeysDefinedInSchema().size());
+        for (String key : alphabet.getKeysDefinedInSchema()) {
+            Assert.assertEquals(alphabet.getKey(alphabet.getId(key)), key);
+            Assert.assertFalse(alphabet.getPaths(key).isEmpty());
+        }
+        Assert.assertEquals(alphabet.getId("unknown"), -1);
+
+        Assert.assertEquals(loadSchema("firstPart.json").getKeyAlphabet().getPaths("id"),
+                Collections.singleton("#/properties/value"));
+    }
+
     @Test
     public void testBasicTypes() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
         JSONSchema schema = loadSchema("basicTypes.json");
@@ -0,0 +1,212 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import be.ac.umons.jsonschematools.tree.CompactObject;
+import be.ac.umons.jsonschematools.tree.CompactTreeModel;
+import be.ac.umons.jsonschematools.tree.JSONTreeParser;
+import be.ac.umons.jsonschematools.tree.JSONTrees;
+import be.ac.umons.jsonschematools.tree.OrgJSONTreeModel;
+import be.ac.umons.jsonschematools.tree.ValueKind;
+
+public class TestHashableJSONObject {
+    private static HashableJSONObject parse(String document) {
+        return new HashableJSONObject(new JSONTokener(document));
+    }
+
+    @Test
+    public void testNestedValuesAreCopiedOnWrite() {
+        HashableJSONObject object = parse("{\"a\": {\"b\": [{\"c\": 1}]}}");
+        final String before = object.toString();
+        HashableJSONObject a = object.getJSONObject("a");
+        Assert.assertEquals(a, object.getJSONObject("a"));
+        a.put("d", 2);
+        a.getJSONArray("b").getJSONObject(0).put("c", 2);
+        Assert.assertTrue(a.has("d"));
+        Assert.assertFalse(object.getJSONObject("a").has("d"));
+        Assert.assertEquals(object.toString(), before);
+
+        // Modifying the array in place, then storing it back
+        JSONArray b = a.getJSONArray("b");
+        b.getJSONObject(0);
+        b.put(0, new JSONObject().put("c", 3));
+        a.put("b", b);
+        Assert.assertEquals(a.getJSONArray("b").getJSONObject(0).getInt("c"), 3);
+        Assert.assertEquals(object.toString(), before);
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        HashableJSONObject object = parse("{\"a\": {\"b\": 1}}");
+        HashableJSONObject a = object.getJSONObject("a");
+        HashableJSONObject copy = new HashableJSONObject(a);
+        copy.put("c", 2);
+        Assert.assertFalse(a.has("c"));
+        Assert.assertTrue(copy.similar(new JSONObject().put("b", 1).put("c", 2)));
+
+        // Modifying the original object does not modify the copy, nor the stored value
+        HashableJSONObject stored = new HashableJSONObject();
+        stored.put("a", a);
+        a.remove("b");
+        Assert.assertTrue(copy.has("b"));
+        Assert.assertTrue(stored.getJSONObject("a").has("b"));
+        Assert.assertTrue(object.getJSONObject("a").has("b"));
+        Assert.assertFalse(a.has("b"));
+    }
+
+    @Test
+    public void testPlainValuesAreConverted() {
+        JSONObject plain = new JSONObject().put("a", new JSONObject().put("b", new JSONArray().put(1)));
+        HashableJSONObject object = new HashableJSONObject(plain);
+        Assert.assertTrue(object.get("a") instanceof HashableJSONObject);
+        Assert.assertTrue(object.getJSONObject("a").get("b") instanceof HashableJSONArray);
+        plain.getJSONObject("a").put("c", 3);
+        Assert.assertFalse(object.getJSONObject("a").has("c"));
+    }
+
+    @Test
+    public void testStructuralEquality() {
+        HashableJSONObject first = parse("{\"type\": \"integer\", \"minimum\": 1, \"enum\": [1, 2]}");
+        HashableJSONObject second = parse("{\"enum\": [1.0, 2], \"minimum\": 1.0, \"type\": \"integer\"}");
+        HashableJSONObject other = parse("{\"type\": \"string\", \"minimum\": 1, \"enum\": [1, 2]}");
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(first.hashCode(), second.hashCode());
+        Assert.assertNotEquals(first, other);
+        Assert.assertNotEquals(first.hashCode(), other.hashCode());
+        Assert.assertTrue(first.getJSONArray("enum").equals(second.getJSONArray("enum")));
+
+        Set<Object> set = new HashSet<>();
+        set.add(first);
+        set.add(second);
+        set.add(other);
+        Assert.assertEquals(set.size(), 2);
+    }
+
+    @Test
+    public void testTreeModels() {
+        final HashableJSONObject object = parse(
+                "{\"b\": [1, 2.5, \"\\\\S\", null, true], \"a\": {\"c\": 12345678901234}}");
+        final Object compact = CompactTreeModel.of(object, OrgJSONTreeModel.INSTANCE);
+        final CompactTreeModel model = CompactTreeModel.INSTANCE;
+        Assert.assertEquals(model.getKind(compact), ValueKind.OBJECT);
+        Assert.assertEquals(((CompactObject) compact).keys(), Arrays.asList("a", "b"));
+        Assert.assertNull(model.getMember(compact, "missing"));
+        Assert.assertEquals(model.getNumber(model.getMember(model.getMember(compact, "a"), "c")), 12345678901234L);
+
+        // -0.0 and 0 are similar, and have the same hash
+        final Object zero = CompactTreeModel.of(new JSONArray("[-0.0]"), OrgJSONTreeModel.INSTANCE);
+        final Object otherZero = CompactTreeModel.of(new JSONArray("[0]"), OrgJSONTreeModel.INSTANCE);
+        Assert.assertEquals(zero, otherZero);
+        Assert.assertEquals(zero.hashCode(), otherZero.hashCode());
+
+        // The converted sub-trees are reused
+        final Map<Object, Object> converted = new IdentityHashMap<>();
+        final JSONObject plain = new JSONObject("{\"a\": {\"c\": [1, 2]}}");
+        final Object root = JSONTrees.convert(plain, OrgJSONTreeModel.INSTANCE, model, converted);
+        Assert.assertSame(JSONTrees.convert(plain.getJSONObject("a"), OrgJSONTreeModel.INSTANCE, model, converted),
+                model.getMember(root, "a"));
+
+        // The last value of a duplicated key is kept
+        final Object other = model.createObject(new String[] { "b", "a", "b" },
+                new Object[] { CompactTreeModel.NULL, model.getMember(compact, "a"), model.getMember(compact, "b") },
+                3);
+        Assert.assertEquals(compact, other);
+        Assert.assertEquals(compact.hashCode(), other.hashCode());
+
+        final Object array = CompactTreeModel.of(new JSONArray("[1, 2.5, \"\\\\S\", null, true]"),
+                OrgJSONTreeModel.INSTANCE);
+        Assert.assertEquals(model.getKind(model.getElement(array, 0)), ValueKind.INTEGER);
+        Assert.assertEquals(model.getKind(model.getElement(array, 1)), ValueKind.NUMBER);
+        Assert.assertEquals(model.getString(model.getElement(array, 2)), AbstractConstants.stringConstant);
+        Assert.assertSame(model.getElement(array, 3), CompactTreeModel.NULL);
+        Assert.assertEquals(array.toString(), "[1,2.5,\"\\\\S\",null,true]");
+
+        final Object back = JSONTrees.convert(array, model, OrgJSONTreeModel.INSTANCE);
+        Assert.assertTrue(new JSONArray("[1, 2.5, \"\\\\S\", null, true]").similar(back));
+    }
+
+    @Test
+    public void testParser() throws IOException, URISyntaxException {
+        final JSONTreeParser parser = new JSONTreeParser();
+        final CompactTreeModel model = CompactTreeModel.INSTANCE;
+        final Object tree = parser.parse(("{\"key\": [\"\\\\S\", \"\\\\S\", \"\\u00e9\\ud83d\\ude00\\n\"], "
+                + "\"numbers\": [-12, 12345678901234567890, 0.1, 1e3, -0.0], \"key2\": {\"key\": null}}")
+                        .getBytes(StandardCharsets.UTF_8));
+        final Object strings = model.getMember(tree, "key");
+        Assert.assertSame(model.getElement(strings, 0), model.getElement(strings, 1));
+        Assert.assertEquals(model.getElement(strings, 2), "\u00e9\ud83d\ude00\n");
+        Assert.assertSame(((CompactObject) model.getMember(tree, "key2")).getKey(0), ((CompactObject) tree).getKey(0));
+
+        final Object numbers = model.getMember(tree, "numbers");
+        Assert.assertEquals(model.getElement(numbers, 0), -12L);
+        Assert.assertEquals(model.getElement(numbers, 1), new BigInteger("12345678901234567890"));
+        Assert.assertEquals(model.getElement(numbers, 2), 0.1);
+        Assert.assertEquals(model.getKind(model.getElement(numbers, 3)), ValueKind.NUMBER);
+        Assert.assertSame(model.getMember(model.getMember(tree, "key2"), "key"), CompactTreeModel.NULL);
+
+        // Lone surrogates are kept, as org.json does
+        Assert.assertEquals(parser.parse("\"a\\ud83d\\u00e9\\ude00\"".getBytes(StandardCharsets.UTF_8)),
+                "a\ud83d\u00e9\ude00");
+
+        final StringBuilder large = new StringBuilder("{");
+        for (int i = 0; i < 20; i++) {
+            large.append("\"k").append(i).append("\": ").append(i).append(", ");
+        }
+        large.append("\"k3\": 3}");
+        for (final String invalid : Arrays.asList("{\"a\": 01}", "[1,]", "{\"a\" 1}", "\"abc", "[1] 2", "tru",
+                "{\"a\": 1, \"a\": 2}", large.toString())) {
+            Assert.assertThrows(JSONException.class, () -> parser.parse(invalid.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        // The trees are the same as the ones from org.json
+        final JSONTreeParser orgParser = new JSONTreeParser(OrgJSONTreeModel.INSTANCE);
+        for (final String file : Arrays.asList("basicTypes.json", "codecov.json", "composition.json", "oneOf.json")) {
+            final Path path = Paths.get(TestHashableJSONObject.class.getResource("/" + file).toURI());
+            final JSONObject expected = new JSONObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            try (final InputStream stream = Files.newInputStream(path)) {
+                Assert.assertTrue(expected.similar(orgParser.parse(stream)), file);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Files.size(path));
+            buffer.put(Files.readAllBytes(path)).flip();
+            Assert.assertEquals(parser.parse(buffer), CompactTreeModel.of(expected, OrgJSONTreeModel.INSTANCE));
+        }
+    }
+}
@@ -19,8 +19,25 @@
 package be.ac.umons.jsonschematools;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -30,4 +47,424 @@ public class TestSchema {
         JSONSchema schema = TestGettingKeys.loadSchema("composition.json");
         Assert.assertEquals(schema.depth(), 3);
     }
+
+    @Test
+    public void testRecursionAnalysis() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        final JSONSchema composition = TestGettingKeys.loadSchema("composition.json");
+        Assert.assertTrue(composition.analyzeRecursion().isBounded());
+        Assert.assertSame(composition.analyzeRecursion(), composition.analyzeRecursion());
+
+        final JSONSchema recursive = TestGettingKeys.loadSchema("recursiveList.json");
+        final RecursionAnalysis analysis = recursive.analyzeRecursion();
+        Assert.assertFalse(analysis.isBounded());
+        Assert.assertFalse(analysis.getDepth().isPresent());
+        Assert.assertEquals(analysis.getCycles().size(), 1);
+        Assert.assertTrue(analysis.getCycles().get(0).stream().anyMatch(location -> location.endsWith("#")));
+        Assert.assertTrue(analysis.getCycles().get(0).stream()
+                .anyMatch(location -> location.endsWith("#/properties/list/items")));
+        Assert.expectThrows(JSONSchemaException.class, recursive::depth);
+
+        // A cycle without nesting does not make the depth unbounded
+        final JSONObject definitions = new JSONObject();
+        definitions.put("a", new JSONObject().put("allOf",
+                new JSONArray().put(new JSONObject().put("$ref", "#/definitions/b"))));
+        definitions.put("b", new JSONObject().put("anyOf", new JSONArray()
+                .put(new JSONObject().put("$ref", "#/definitions/a"))
+                .put(new JSONObject().put("type", "array").put("items", new JSONObject().put("type", "integer")))));
+        final JSONObject document = new JSONObject().put("definitions", definitions).put("properties",
+                new JSONObject().put("value", new JSONObject().put("$ref", "#/definitions/a")));
+        final JSONSchema schema = new JSONSchemaStore().loadFromJSONObject(document);
+        Assert.assertEquals(schema.depth(), 2);
+        Assert.assertTrue(schema.analyzeRecursion().getCycles().isEmpty());
+    }
+
+    @Test
+    public void testCompiledRecursiveSchema() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        JSONSchema schema = TestGettingKeys.loadSchema("recursiveList.json");
+        Assert.assertFalse(schema.isCompiled());
+        Assert.assertSame(schema.getStore().compile(schema), schema);
+        Assert.assertTrue(schema.isCompiled());
+
+        JSONSchema list = schema.getSubSchemaProperties("list");
+        Assert.assertTrue(list.isCompiled());
+        Assert.assertSame(schema.getSubSchemaProperties("list"), list);
+        Assert.assertEquals(list.getItemsArray().size(), 1);
+        Assert.assertSame(list.getItemsArray().get(0), schema);
+        Assert.assertSame(schema.getAllOf(), schema.getAllOf());
+    }
+
+    @Test
+    public void testReferencePointers() throws JSONSchemaException {
+        JSONObject document = new JSONObject();
+        JSONObject definitions = new JSONObject();
+        definitions.put("a/b", new JSONObject().put("type", "string"));
+        definitions.put("m~n", new JSONObject().put("type", "integer"));
+        definitions.put("c d", new JSONObject().put("type", "boolean"));
+        definitions.put("tuple", new JSONArray().put(new JSONObject().put("type", "number")));
+        JSONObject properties = new JSONObject();
+        properties.put("slash", new JSONObject().put("$ref", "#/definitions/a~1b"));
+        properties.put("tilde", new JSONObject().put("$ref", "#/definitions/m~0n"));
+        properties.put("space", new JSONObject().put("$ref", "#/definitions/c%20d"));
+        properties.put("index", new JSONObject().put("$ref", "#/definitions/tuple/0"));
+        properties.put("again", new JSONObject().put("$ref", "#/definitions/a~1b"));
+        document.put("definitions", definitions);
+        document.put("properties", properties);
+        JSONSchema schema = new JSONSchemaStore().loadFromJSONObject(document);
+
+        Assert.assertEquals(schema.getSubSchemaProperties("slash").getString("type"), "string");
+        Assert.assertEquals(schema.getSubSchemaProperties("tilde").getString("type"), "integer");
+        Assert.assertEquals(schema.getSubSchemaProperties("space").getString("type"), "boolean");
+        Assert.assertEquals(schema.getSubSchemaProperties("index").getString("type"), "number");
+        Assert.assertSame(schema.getSubSchemaProperties("slash"), schema.getSubSchemaProperties("again"));
+    }
+
+    @Test
+    public void testInterning() throws JSONSchemaException {
+        JSONObject document = new JSONObject();
+        JSONObject properties = new JSONObject();
+        properties.put("first", new JSONObject().put("type", "integer").put("minimum", 1));
+        properties.put("second", new JSONObject().put("minimum", 1.0).put("type", "integer"));
+        properties.put("third", new JSONObject().put("type", "string"));
+        document.put("properties", properties);
+        JSONSchema schema = new JSONSchemaStore().loadFromJSONObject(document);
+
+        JSONSchema first = schema.getSubSchemaProperties("first");
+        Assert.assertSame(schema.getSubSchemaProperties("second"), first);
+        Assert.assertNotSame(schema.getSubSchemaProperties("third"), first);
+        Assert.assertSame(first.merge(schema.getSubSchemaProperties("third")),
+                schema.getSubSchemaProperties("second").merge(schema.getSubSchemaProperties("third")));
+    }
+
+    @Test
+    public void testMergeCache() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        JSONSchema schema = TestGettingKeys.loadSchema("allOf.json").getSubSchemaProperties("allOfObject");
+        JSONSchemaStore store = schema.getStore();
+        store.configureMergeCache(1, BoundedCache.Eviction.LEAST_RECENTLY_USED);
+        JSONSchema allOf = schema.getAllOf();
+
+        JSONSchema merged = schema.dropAllOfAnyOfOneOfAndNot().merge(allOf);
+        Assert.assertEquals(store.getMergeCache().getMisses(), 1);
+        Assert.assertSame(schema.dropAllOfAnyOfOneOfAndNot().merge(allOf), merged);
+        Assert.assertEquals(store.getMergeCache().getHits(), 1);
+
+        allOf.merge(schema);
+        Assert.assertEquals(store.getMergeCache().size(), 1);
+        schema.dropAllOfAnyOfOneOfAndNot().merge(allOf);
+        Assert.assertEquals(store.getMergeCache().getMisses(), 3);
+
+        store.configureMergeCache(0, BoundedCache.Eviction.FIRST_IN_FIRST_OUT);
+        schema.dropAllOfAnyOfOneOfAndNot().merge(allOf);
+        Assert.assertEquals(store.getMergeCache().size(), 0);
+
+        final BoundedCache<Integer, Integer> striped = new BoundedCache<>(64, BoundedCache.Eviction.FIRST_IN_FIRST_OUT, 4);
+        for (int i = 0; i < 1000; i++) {
+            striped.put(i, i);
+        }
+        Assert.assertEquals(striped.getNumberOfStripes(), 4);
+        Assert.assertTrue(striped.size() <= 64);
+        Assert.assertEquals(striped.get(999), Integer.valueOf(999));
+    }
+
+    @Test
+    public void testMergeAll() throws JSONSchemaException {
+        final JSONSchemaStore store = new JSONSchemaStore();
+        final JSONSchema base = store.loadFromJSONObject(new JSONObject().put("type", "object").put("properties",
+                new JSONObject().put("a", new JSONObject().put("type", "integer"))));
+        final JSONSchema minimum = store.loadFromJSONObject(new JSONObject().put("minProperties", 1));
+        final JSONSchema required = store.loadFromJSONObject(new JSONObject().put("required",
+                new JSONArray().put("a")).put("properties", new JSONObject().put("b", new JSONObject())));
+
+        final JSONSchema merged = base.mergeAll(Arrays.asList(minimum, null, store.trueSchema(), required));
+        Assert.assertTrue(merged.getSchema().similar(base.merge(minimum).merge(required).getSchema()));
+        Assert.assertEquals(merged.getSchema().length(), 4);
+        Assert.assertSame(base.mergeAll(Arrays.asList(minimum, required)), merged);
+        Assert.assertSame(base.mergeAll(Collections.singletonList(null)), base);
+
+        // Each negation is kept separately, as with chained merges
+        final JSONSchema types = store.loadFromJSONObject(
+                new JSONObject().put("type", new JSONArray().put("string").put("integer").put("boolean")));
+        final JSONSchema notString = store
+                .loadFromJSONObject(new JSONObject().put("not", new JSONObject().put("type", "string")));
+        final JSONSchema notInteger = store
+                .loadFromJSONObject(new JSONObject().put("not", new JSONObject().put("type", "integer")));
+        final JSONSchema notMaximum = store
+                .loadFromJSONObject(new JSONObject().put("not", new JSONObject().put("maximum", 3)));
+        final JSONSchema withNots = types.mergeAll(Arrays.asList(notString, notInteger, notMaximum));
+        Assert.assertTrue(withNots.getSchema()
+                .similar(types.merge(notString).merge(notInteger).merge(notMaximum).getSchema()));
+        Assert.assertFalse(withNots.getSchema().has("allOf"));
+        // One branch by combination of the negated keys
+        Assert.assertEquals(withNots.getSchema().getJSONArray("anyOf").length(), 1);
+        Assert.assertTrue(withNots.isSatisfiable());
+    }
+
+    @Test
+    public void testMemoizedDerivations() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        JSONSchema schema = TestGettingKeys.loadSchema("oneOf.json");
+        Assert.assertSame(schema.getAllOf(), schema.getAllOf());
+        Assert.assertSame(schema.getAnyOf(), schema.getAnyOf());
+        Assert.assertSame(schema.getOneOf(), schema.getOneOf());
+        Assert.assertSame(schema.getNot(), schema.getNot());
+        Assert.assertSame(schema.getNonRequiredProperties(), schema.getNonRequiredProperties());
+        Assert.assertSame(schema.getForbiddenValues(), schema.getForbiddenValues());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> schema.getOneOf().clear());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> schema.getNonRequiredProperties().clear());
+    }
+
+    @Test
+    public void testLazyOneOf() throws JSONSchemaException {
+        JSONObject document = new JSONObject();
+        JSONArray oneOf = new JSONArray();
+        oneOf.put(new JSONObject().put("type", "integer"));
+        oneOf.put(new JSONObject().put("type", "string"));
+        oneOf.put(new JSONObject().put("type", "boolean"));
+        document.put("oneOf", oneOf);
+        JSONSchema schema = new JSONSchemaStore().loadFromJSONObject(document);
+
+        List<JSONSchema> combinations = schema.getOneOf();
+        Assert.assertEquals(combinations.size(), 3);
+        JSONSchema first = combinations.get(0);
+        Assert.assertSame(combinations.get(0), first);
+        JSONArray firstAllOf = first.getSchema().getJSONArray("allOf");
+        JSONArray secondAllOf = combinations.get(1).getSchema().getJSONArray("allOf");
+        Assert.assertEquals(firstAllOf.length(), 3);
+        Assert.assertEquals(firstAllOf.getJSONObject(0).getString("type"), "integer");
+        // The getters return copies of the shared negation of the third element
+        Assert.assertEquals(firstAllOf.get(2), secondAllOf.get(2));
+        Assert.assertEquals(first.getAllOf().getAllowedTypes(), Collections.singletonList(Type.INTEGER));
+
+        List<JSONSchema> branches = schema.getOneOfBranches();
+        Assert.assertEquals(branches.size(), 3);
+        Assert.assertEquals(branches.get(1).getAllowedTypes(), Collections.singletonList(Type.STRING));
+    }
+
+    @Test
+    public void testConcurrentStore() throws Exception {
+        final JSONSchemaStore store = new JSONSchemaStore();
+        final URI path = TestSchema.class.getResource("/definitionByRef.json").toURI();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<JSONSchema>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> {
+                    final JSONSchema schema = store.load(path);
+                    for (final String key : schema.getNonRequiredProperties().keySet()) {
+                        schema.getSubSchemaProperties(key).getAllOf();
+                    }
+                    return schema;
+                }));
+            }
+            final JSONSchema schema = futures.get(0).get();
+            for (final Future<JSONSchema> future : futures) {
+                Assert.assertSame(future.get(), schema);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoadAll() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        final JSONSchemaStore store = new JSONSchemaStore();
+        final URI firstPart = TestSchema.class.getResource("/firstPart.json").toURI();
+        final URI secondPart = TestSchema.class.getResource("/secondPart.json").toURI();
+        final LoadReport report = store.loadAll(Collections.singletonList(firstPart));
+
+        // The second part is only reachable through a $ref
+        Assert.assertEquals(report.getSchemas().size(), 2);
+        Assert.assertEquals(report.getParseTimes().keySet(), report.getSchemas().keySet());
+        Assert.assertSame(report.getSchemas().get(Paths.get(secondPart)), store.load(secondPart));
+        Assert.assertSame(report.getSchemas().get(Paths.get(firstPart)), store.load(firstPart));
+        Assert.assertFalse(report.getTotalTime().isNegative());
+    }
+
+    @Test(timeOut = 10000)
+    public void testLoadAllMutualReferences()
+            throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        final JSONSchemaStore store = new JSONSchemaStore();
+        final URI first = TestSchema.class.getResource("/mutualFirst.json").toURI();
+        final URI second = TestSchema.class.getResource("/mutualSecond.json").toURI();
+        // Both files are loaded at the same time, and reference each other
+        final LoadReport report = store.loadAll(Arrays.asList(first, second));
+
+        Assert.assertEquals(report.getSchemas().size(), 2);
+        final JSONSchema firstSchema = report.getSchemas().get(Paths.get(first));
+        final JSONSchema secondSchema = report.getSchemas().get(Paths.get(second));
+        Assert.assertSame(firstSchema.getSubSchemaProperties("next"), secondSchema);
+        Assert.assertSame(secondSchema.getSubSchemaProperties("previous"), firstSchema);
+    }
+
+    @Test
+    public void testSnapshot() throws IOException, JSONSchemaException, URISyntaxException {
+        final Path directory = Files.createTempDirectory("snapshot");
+        final Path firstPart = directory.resolve("firstPart.json");
+        final Path secondPart = directory.resolve("secondPart.json");
+        final Path snapshot = directory.resolve("schemas.snapshot");
+        Files.copy(Paths.get(TestSchema.class.getResource("/firstPart.json").toURI()), firstPart);
+        Files.copy(Paths.get(TestSchema.class.getResource("/secondPart.json").toURI()), secondPart);
+
+        final JSONSchemaStore store = new JSONSchemaStore();
+        final JSONSchema schema = store.load(firstPart.toUri());
+        // Resolves the reference to the second part
+        schema.getSubSchemaProperties("value");
+        store.writeSnapshot(snapshot);
+
+        // Nothing changed: no file is parsed
+        final JSONSchemaStore restoredStore = new JSONSchemaStore();
+        final LoadReport report = restoredStore.restoreSnapshot(snapshot);
+        Assert.assertEquals(report.getSchemas().keySet(), new HashSet<>(Arrays.asList(firstPart, secondPart)));
+        Assert.assertTrue(report.getParseTimes().isEmpty());
+        final JSONSchema restored = restoredStore.load(firstPart.toUri());
+        Assert.assertSame(restored, report.getSchemas().get(firstPart));
+        Assert.assertTrue(restored.getSchema().similar(schema.getSchema()));
+        Assert.assertTrue(restoredStore.load(secondPart.toUri()).getSchema()
+                .similar(store.load(secondPart.toUri()).getSchema()));
+
+        // Only the modified file is parsed again
+        final JSONObject modified = new JSONObject(new String(Files.readAllBytes(secondPart), StandardCharsets.UTF_8));
+        modified.put("description", "modified");
+        Files.write(secondPart, modified.toString().getBytes(StandardCharsets.UTF_8));
+        final LoadReport reloaded = new JSONSchemaStore().restoreSnapshot(snapshot);
+        Assert.assertEquals(reloaded.getParseTimes().keySet(), Collections.singleton(secondPart));
+        Assert.assertEquals(reloaded.getSchemas().get(secondPart).getSchema().getString("description"), "modified");
+    }
+
+    @Test
+    public void testAllowedTypes() throws JSONSchemaException {
+        final JSONSchemaStore store = new JSONSchemaStore();
+        final JSONObject document = new JSONObject();
+        document.put("type", new JSONArray().put("string").put("integer").put("null"));
+        document.put("not", new JSONObject().put("type", "null"));
+        final JSONSchema schema = store.loadFromJSONObject(document);
+
+        Assert.assertEquals(schema.getAllowedTypesMask(), Type.STRING.mask() | Type.INTEGER.mask());
+        Assert.assertEquals(schema.getAllowedTypesSet(), EnumSet.of(Type.STRING, Type.INTEGER));
+        Assert.assertEquals(schema.getAllowedTypes(), Arrays.asList(Type.STRING, Type.INTEGER));
+        Assert.assertSame(schema.getAllowedTypes(), schema.getAllowedTypes());
+        Assert.assertTrue(schema.isString());
+        Assert.assertTrue(schema.isInteger());
+        Assert.assertFalse(schema.isNull());
+        Assert.assertFalse(schema.isObject());
+
+        // The order given in the schema is kept
+        final JSONSchema reversed = store
+                .loadFromJSONObject(new JSONObject().put("type", new JSONArray().put("integer").put("string")));
+        Assert.assertEquals(reversed.getAllowedTypes(), Arrays.asList(Type.INTEGER, Type.STRING));
+        Assert.assertEquals(reversed.getAllowedTypesMask(), schema.getAllowedTypesMask());
+
+        Assert.assertEquals(store.trueSchema().getAllowedTypesMask(), Type.ALL);
+        Assert.assertEquals(Type.fromMask(Type.ALL, Type.NULL.ordinal()), Type.NULL);
+    }
+
+    @Test
+    public void testMergeKernels() throws JSONSchemaException {
+        final JSONArray allOf = new JSONArray();
+        allOf.put(new JSONObject().put("maximum", 2.5).put("minimum", 1).put("multipleOf", 2)
+                .put("enum", new JSONArray().put("a").put("b").put(new JSONObject().put("c", 1)))
+                .put("type", new JSONArray().put("integer").put("number")));
+        allOf.put(new JSONObject().put("maximum", 3).put("minimum", 5000000000L).put("multipleOf", 3)
+                .put("enum", new JSONArray().put(new JSONObject().put("c", 1)).put("b"))
+                .put("type", "number"));
+        final JSONSchema schema = new JSONSchemaStore().loadFromJSONObject(new JSONObject().put("allOf", allOf));
+        final JSONObject merged = schema.getAllOf().getSchema();
+
+        Assert.assertEquals(merged.get("maximum"), 2.5);
+        Assert.assertEquals(merged.get("minimum"), 5000000000L);
+        Assert.assertEquals(merged.get("multipleOf"), 6);
+        Assert.assertTrue(merged.getJSONArray("enum")
+                .similar(new JSONArray().put("b").put(new JSONObject().put("c", 1))));
+        Assert.assertTrue(merged.getJSONArray("type").similar(new JSONArray().put("number")));
+    }
+
+    @Test
+    public void testNegatedBounds() throws JSONSchemaException {
+        final JSONSchemaStore store = new JSONSchemaStore();
+        // @formatter:off
+        final String[][] cases = {
+            { "{\"maximum\": 3}", "{\"minimum\": 4}" },
+            { "{\"maxItems\": 2}", "{\"minItems\": 3}" },
+            { "{\"maximum\": 1.5}", "{\"exclusiveMinimum\": 1.5}" },
+            { "{\"minimum\": 2.5}", "{\"exclusiveMaximum\": 2.5}" },
+            { "{\"exclusiveMaximum\": 0.5}", "{\"minimum\": 0.5}" },
+            { "{\"exclusiveMinimum\": -0.25}", "{\"maximum\": -0.25}" },
+        };
+        // @formatter:on
+        for (final String[] negation : cases) {
+            final JSONSchema schema = store.loadFromJSONObject(new JSONObject().put("not", new JSONObject(negation[0])));
+            final List<JSONSchema> not = schema.getNot();
+            Assert.assertEquals(not.size(), 1);
+            Assert.assertTrue(not.get(0).getSchema().similar(new JSONObject(negation[1])),
+                    negation[0] + " gives " + not.get(0));
+        }
+    }
+
+    @Test
+    public void testNormalForm() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        for (final String file : Arrays.asList("allOf.json", "anyOf.json", "oneOf.json", "notSchema.json")) {
+            final JSONSchema schema = TestGettingKeys.loadSchema(file);
+            final List<JSONSchema> normalForm = schema.getNormalForm();
+            Assert.assertSame(schema.getNormalForm(), normalForm);
+            Assert.assertFalse(normalForm.isEmpty());
+            for (final JSONSchema branch : normalForm) {
+                Assert.assertFalse(branch.needsFurtherUnfolding());
+            }
+        }
+
+        final JSONSchemaStore store = new JSONSchemaStore();
+        final JSONArray anyOf = new JSONArray();
+        anyOf.put(new JSONObject().put("type", "string"));
+        anyOf.put(new JSONObject().put("type", "integer").put("minimum", 1));
+        final JSONSchema schema = store
+                .loadFromJSONObject(new JSONObject().put("type", "integer").put("anyOf", anyOf));
+        final List<JSONSchema> normalForm = schema.getNormalForm();
+        Assert.assertEquals(normalForm.size(), 1);
+        Assert.assertEquals(normalForm.get(0).getSchema().getInt("minimum"), 1);
+        Assert.assertTrue(store.falseSchema().getNormalForm().isEmpty());
+
+        // Both the branch of anyOf and the negated element contain a "not"
+        final JSONSchema withNots = store.loadFromJSONObject(new JSONObject()
+                .put("type", new JSONArray().put("string").put("integer").put("boolean"))
+                .put("anyOf", new JSONArray().put(new JSONObject().put("not", new JSONObject().put("type", "string"))))
+                .put("not", new JSONObject().put("const", true)));
+        final List<JSONSchema> branches = withNots.getNormalForm();
+        Assert.assertFalse(branches.isEmpty());
+        for (final JSONSchema branch : branches) {
+            Assert.assertFalse(branch.getAllowedTypes().contains(Type.STRING), branch.toString());
+            Assert.assertEquals(branch.getForbiddenValues(), Collections.singleton(true), branch.toString());
+        }
+    }
+
+    @Test
+    public void testSatisfiability() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        for (final String file : Arrays.asList("allOf.json", "anyOf.json", "oneOf.json", "notSchema.json")) {
+            Assert.assertTrue(TestGettingKeys.loadSchema(file).isSatisfiable());
+        }
+
+        final JSONSchemaStore store = new JSONSchemaStore();
+        Assert.assertTrue(store.trueSchema().isSatisfiable());
+        Assert.assertFalse(store.falseSchema().isSatisfiable());
+        Assert.assertFalse(store.loadFromJSONObject(
+                new JSONObject().put("type", "array").put("minItems", 3).put("maxItems", 2)).isSatisfiable());
+        Assert.assertFalse(store.loadFromJSONObject(
+                new JSONObject().put("type", "integer").put("minimum", 1.2).put("maximum", 1.8)).isSatisfiable());
+        Assert.assertTrue(store.loadFromJSONObject(
+                new JSONObject().put("type", "number").put("minimum", 1.2).put("maximum", 1.8)).isSatisfiable());
+        Assert.assertFalse(store.loadFromJSONObject(
+                new JSONObject().put("type", "string").put("const", "abc").put("maxLength", 2)).isSatisfiable());
+        // One allowed type is enough
+        Assert.assertTrue(store.loadFromJSONObject(new JSONObject().put("type", new JSONArray().put("array").put("null"))
+                .put("minItems", 3).put("maxItems", 2)).isSatisfiable());
+
+        final JSONObject properties = new JSONObject().put("value", new JSONObject().put("not", new JSONObject()));
+        final JSONSchema requiredFalse = store.loadFromJSONObject(new JSONObject().put("type", "object")
+                .put("properties", properties).put("required", new JSONArray().put("value")));
+        Assert.assertFalse(requiredFalse.isSatisfiable());
+
+        final JSONArray anyOf = new JSONArray();
+        anyOf.put(new JSONObject().put("type", "string").put("minLength", 5).put("maxLength", 1));
+        anyOf.put(new JSONObject().put("type", "integer").put("minimum", 1));
+        final JSONSchema schema = store.loadFromJSONObject(new JSONObject().put("anyOf", anyOf));
+        Assert.assertTrue(schema.isSatisfiable());
+        Assert.assertEquals(schema.getNormalForm().size(), 1);
+    }
 }
@@ -19,8 +19,8 @@
 package be.ac.umons.jsonschematools.generator.exploration;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
@@ -53,7 +53,6 @@ public class ExplorationGenerator implements IGenerator {
 
     public static final Optional<Object> EMPTY_VALUE_DUE_TO_MAX_DEPTH = Optional.of(Type.NULL);
 
-    private static final List<Type> allTypes = new ArrayList<>(EnumSet.allOf(Type.class));
 
     private final IHandler stringHandler;
     private final IHandler integerHandler;
@@ -200,10 +199,9 @@ public class ExplorationGenerator implements IGenerator {
                 .filter(s -> !JSONSchemaStore.isFalseSchema(s))
                 .collect(Collectors.toList())
             ;
-            oneOfList = schema.getOneOf().stream()
-                .filter(s -> !JSONSchemaStore.isFalseSchema(s))
-                .collect(Collectors.toList())
-            ;
+            // The combinations of oneOf are never the false schema. Keeping the list as-is
+            // means that a combination is only constructed if it is selected
+            oneOfList = schema.getOneOf();
             notList = schema.getNot().stream()
                 .filter(s -> !JSONSchemaStore.isFalseSchema(s))
                 .collect(Collectors.toList())
@@ -270,14 +268,8 @@ public class ExplorationGenerator implements IGenerator {
             }
             final JSONSchema not = selectSchema(notList, choices, choiceNot, samePossibilityNot);
 
-            // @formatter:off
             final JSONSchema mergedSchema = schema.dropAllOfAnyOfOneOfAndNot()
-                .merge(allOf)
-                .merge(anyOf)
-                .merge(oneOf)
-                .merge(not)
-            ;
-            // @formatter:on
+                    .mergeAll(Arrays.asList(allOf, anyOf, oneOf, not));
 
             value = generateValueForMergedSchema(mergedSchema, maxDocumentDepth, generateInvalid, choices,
                     mustBeObject);
@@ -292,28 +284,28 @@ public class ExplorationGenerator implements IGenerator {
             return generateValueAccordingToConstraints(mergedSchema, maxDocumentDepth, generateInvalid, choices);
         }
 
-        List<Type> allowedTypes = mergedSchema.getAllowedTypes();
-        if (allowedTypes.isEmpty()) {
+        if (mergedSchema.getAllowedTypesMask() == 0) {
             return Optional.empty();
         }
 
-        final Type selectedType = selectType(allowedTypes, generateInvalid, choices, mustBeObject);
+        final Type selectedType = selectType(mergedSchema, generateInvalid, choices, mustBeObject);
         if (selectedType == null) {
             return Optional.empty();
         }
         return generateValue(mergedSchema, selectedType, maxDocumentDepth, generateInvalid, choices);
     }
 
-    private Type selectType(List<Type> allowedTypes, boolean generateInvalid, ChoicesSequence choices,
+    private Type selectType(JSONSchema schema, boolean generateInvalid, ChoicesSequence choices,
             boolean mustBeObject) {
         if (mustBeObject) {
-            if (allowedTypes.contains(Type.OBJECT)) {
+            if (schema.isObject()) {
                 return Type.OBJECT;
             }
             else {
                 return null;
             }
         }
+        final List<Type> allowedTypes = schema.getAllowedTypes();
         if (!generateInvalid) {
             final Integer index = choices.getIndexNextExclusiveSelectionInList(allowedTypes.size());
             if (index == null) {
@@ -331,16 +323,15 @@ public class ExplorationGenerator implements IGenerator {
                 return allowedTypes.get(index);
             }
             else {
-                final List<Type> typesNotAllowed = new ArrayList<>(allTypes);
-                typesNotAllowed.removeAll(allowedTypes);
-                if (typesNotAllowed.isEmpty()) {
+                final int typesNotAllowed = Type.ALL & ~schema.getAllowedTypesMask();
+                if (typesNotAllowed == 0) {
                     return null;
                 }
-                final Integer index = choices.getIndexNextExclusiveSelectionInList(typesNotAllowed.size());
+                final Integer index = choices.getIndexNextExclusiveSelectionInList(Integer.bitCount(typesNotAllowed));
                 if (index == null) {
                     return null;
                 }
-                return typesNotAllowed.get(index);
+                return Type.fromMask(typesNotAllowed, index);
             }
         }
     }
@@ -381,13 +372,12 @@ public class ExplorationGenerator implements IGenerator {
         if (bit == -1) {
             return schemas.get(0).getStore().trueSchema();
         }
-        JSONSchema merged = schemas.get(bit);
-
-        for (bit = bitset.nextSetBit(0); bit != -1; bit = bitset.nextSetBit(bit + 1)) {
-            merged = merged.merge(schemas.get(bit));
+        final List<JSONSchema> selected = new ArrayList<>(bitset.cardinality());
+        for (; bit != -1; bit = bitset.nextSetBit(bit + 1)) {
+            selected.add(schemas.get(bit));
         }
 
-        return merged;
+        return selected.get(0).mergeAll(selected);
     }
 
     private Boolean invalidGenerationChoice(final boolean canGenerateInvalid, final ChoicesSequence choices) {
@@ -189,7 +189,6 @@ public class DefaultObjectHandler extends AHandler {
                 return Optional.empty();
             }
             addToDocumentIfNotNullType.accept(key, value);
-            nonRequiredProperties.remove(key);
         }
 
         return Optional.of(jsonObject);
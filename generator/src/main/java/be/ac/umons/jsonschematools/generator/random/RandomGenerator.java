@@ -18,14 +18,10 @@
 
 package be.ac.umons.jsonschematools.generator.random;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.EnumSet;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.json.JSONException;
@@ -56,7 +52,6 @@ public class RandomGenerator implements IGenerator {
     private final IHandler enumHandler;
     private final IHandler objectHandler;
     private final IHandler arrayHandler;
-    private final Set<Type> allTypes = EnumSet.allOf(Type.class);
 
     public RandomGenerator(final IHandler stringHandler, final IHandler integerHandler, final IHandler numberHandler,
             final IHandler booleanHandler, final IHandler enumHandler, final IHandler objectHandler,
@@ -79,7 +74,7 @@ public class RandomGenerator implements IGenerator {
             throw new GeneratorException(
                     "Impossible to generate a document as one of the sub schemas is the false schema");
         }
-        return baseSchema.dropAllOfAnyOfOneOfAndNot().merge(allOf).merge(anyOf).merge(oneOf).merge(not);
+        return baseSchema.dropAllOfAnyOfOneOfAndNot().mergeAll(Arrays.asList(allOf, anyOf, oneOf, not));
     }
 
     @Override
@@ -123,8 +118,7 @@ public class RandomGenerator implements IGenerator {
                     final JSONSchema not = notList.get(indexNot);
                     try {
                         final JSONSchema fullSchema = getMergedSchema(schema, allOf, anyOf, oneOf, not);
-                        List<Type> types = fullSchema.getAllowedTypes();
-                        if (!types.contains(Type.OBJECT)) {
+                        if (!fullSchema.isObject() || (!canGenerateInvalid && !fullSchema.isSatisfiable())) {
                             continue;
                         }
 
@@ -202,20 +196,23 @@ public class RandomGenerator implements IGenerator {
                     final JSONSchema not = notList.get(indexNot);
                     try {
                         final JSONSchema fullSchema = getMergedSchema(schema, allOf, anyOf, oneOf, not);
+                        // A branch that can not be satisfied is skipped without trying to generate
+                        // a value
+                        if (!canGenerateInvalid && !fullSchema.isSatisfiable()) {
+                            continue;
+                        }
                         // If we still have some constraints behind "allOf", "anyOf", "oneOf", or "not",
                         // we unfold them
                         if (fullSchema.needsFurtherUnfolding()) {
                             return generateAccordingToConstraints(fullSchema, maxTreeSize, canGenerateInvalid, rand);
                         }
 
-                        List<Type> allowedTypes = fullSchema.getAllowedTypes();
-
-                        if (allowedTypes.isEmpty()) {
+                        if (fullSchema.getAllowedTypesMask() == 0) {
                             throw new GeneratorException("Impossible to generate a value for the schema " + fullSchema
                                     + " as the set of allowed types is empty");
                         }
 
-                        Type type = selectType(allowedTypes, canGenerateInvalid, rand);
+                        Type type = selectType(fullSchema, rand);
                         return generateValue(type, fullSchema, maxTreeSize, canGenerateInvalid, rand);
                     } catch (GeneratorException e) {
                         // The choice we made lead to an invalid schema. We retry with a different
@@ -227,16 +224,9 @@ public class RandomGenerator implements IGenerator {
         throw new GeneratorException("Impossible to generate a document: all tries failed for the schema " + schema);
     }
 
-    private Type selectType(final Collection<Type> allowedTypes, final boolean canGenerateInvalid, final Random rand) {
-        final Collection<Type> typesToConsider;
-        if (canGenerateInvalid && allTypes.size() != Type.values().length && rand.nextBoolean()) {
-            typesToConsider = new LinkedHashSet<>(allTypes);
-            typesToConsider.removeAll(allowedTypes);
-        } else {
-            typesToConsider = allowedTypes;
-        }
-
-        return new ArrayList<>(typesToConsider).get(rand.nextInt(typesToConsider.size()));
+    private Type selectType(final JSONSchema schema, final Random rand) {
+        final List<Type> allowedTypes = schema.getAllowedTypes();
+        return allowedTypes.get(rand.nextInt(allowedTypes.size()));
     }
 
     private Object generateValue(Type type, JSONSchema schema, int maxTreeSize, boolean canGenerateInvalid, Random rand)
@@ -62,6 +62,9 @@ public class DefaultArrayHandler implements IHandler {
         }
         final Set<JSONArray> forbiddenValues = schema.getForbiddenValuesFilteredByType(JSONArray.class);
         final boolean generateInvalid = generateInvalid(canGenerateInvalid, rand);
+        if (!generateInvalid && !schema.isSatisfiable()) {
+            throw new GeneratorException("Impossible to generate an array as the schema can not be satisfied " + schema);
+        }
 
         if (generateInvalid && !forbiddenValues.isEmpty()) {
             return (JSONArray) new ArrayList<>(forbiddenValues).get(rand.nextInt(forbiddenValues.size()));
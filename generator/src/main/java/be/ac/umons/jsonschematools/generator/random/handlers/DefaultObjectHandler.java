@@ -65,6 +65,9 @@ public class DefaultObjectHandler implements IHandler {
         }
         final Set<JSONObject> forbiddenValues = schema.getForbiddenValuesFilteredByType(JSONObject.class);
         final boolean generateInvalid = generateInvalid(canGenerateInvalid, rand);
+        if (!generateInvalid && !schema.isSatisfiable()) {
+            throw new GeneratorException("Impossible to generate an object as the schema can not be satisfied " + schema);
+        }
 
         if (generateInvalid && !forbiddenValues.isEmpty()) {
             return new ArrayList<>(forbiddenValues).get(rand.nextInt(forbiddenValues.size()));
@@ -182,7 +185,6 @@ public class DefaultObjectHandler implements IHandler {
             JSONSchema subSchema = schema.getSubSchemaProperties(key);
             Object value = generator.generateAccordingToConstraints(subSchema, newMaxTreeSize, generateInvalid, rand);
             addToDocumentIfNotNullType.accept(key, value);
-            nonRequiredProperties.remove(key);
         }
 
         if (jsonObject.length() == maxProperties) {
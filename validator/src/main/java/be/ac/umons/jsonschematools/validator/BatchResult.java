@@ -0,0 +1,88 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.validator;
+
+import java.util.BitSet;
+
+/**
+ * The verdicts of a batch validation.
+ * 
+ * The documents are identified by their position in the batch. A result is
+ * immutable and can be shared between threads.
+ * 
+ * @see Validator#validateAll(be.ac.umons.jsonschematools.JSONSchema,
+ *      java.util.Collection, java.util.concurrent.ForkJoinPool)
+ * @author Gaëtan Staquet
+ */
+public final class BatchResult {
+    private final BitSet valid;
+    private final int size;
+    private final int numberOfValid;
+
+    BatchResult(final BitSet valid, final int size) {
+        this.valid = valid;
+        this.size = size;
+        this.numberOfValid = valid.cardinality();
+    }
+
+    /**
+     * Gets the number of documents in the batch.
+     * 
+     * @return The number of documents
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getNumberOfValid() {
+        return numberOfValid;
+    }
+
+    public int getNumberOfInvalid() {
+        return size - numberOfValid;
+    }
+
+    /**
+     * Checks whether the document at the given position is valid.
+     * 
+     * @param index The position of the document in the batch
+     * @return True if and only if the document is valid
+     * @throws IndexOutOfBoundsException If the index is not in the batch
+     */
+    public boolean isValid(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for a batch of size " + size);
+        }
+        return valid.get(index);
+    }
+
+    /**
+     * Gets the positions of the valid documents.
+     * 
+     * @return A copy of the set of positions
+     */
+    public BitSet getValid() {
+        return (BitSet) valid.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult[size=" + size + ", valid=" + numberOfValid + "]";
+    }
+}
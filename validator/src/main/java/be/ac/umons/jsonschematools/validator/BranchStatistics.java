@@ -0,0 +1,140 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.validator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how often each branch of an <code>anyOf</code> or a
+ * <code>oneOf</code> matches, in order to try the most likely branches first.
+ * 
+ * The order is recomputed periodically from the counters, rather than after
+ * every evaluation. Branches that matched equally often are kept in the order
+ * of the schema.
+ * 
+ * The counters are updated without locks, and can be read at any time.
+ * 
+ * @see Validator#setAdaptiveBranchOrdering(boolean)
+ * @author Gaëtan Staquet
+ */
+public final class BranchStatistics {
+    // The number of evaluations between two computations of the order
+    private static final int REORDER_INTERVAL = 64;
+
+    private final AtomicLongArray matches;
+    private final AtomicLong evaluations = new AtomicLong();
+    private volatile int[] order;
+
+    BranchStatistics(final int numberOfBranches) {
+        this.matches = new AtomicLongArray(numberOfBranches);
+        final int[] order = new int[numberOfBranches];
+        for (int i = 0; i < numberOfBranches; i++) {
+            order[i] = i;
+        }
+        this.order = order;
+    }
+
+    /**
+     * Gets the order in which the branches are tried.
+     * 
+     * The returned array must not be modified.
+     * 
+     * @return The positions of the branches, the most likely first
+     */
+    int[] order() {
+        return order;
+    }
+
+    /**
+     * Records an evaluation of the branches.
+     * 
+     * @param matched The position of the branch that matched, or -1 if no branch
+     *                matched
+     */
+    void record(final int matched) {
+        if (matched != -1) {
+            matches.incrementAndGet(matched);
+        }
+        if (evaluations.incrementAndGet() % REORDER_INTERVAL == 0) {
+            reorder();
+        }
+    }
+
+    private void reorder() {
+        final int size = matches.length();
+        final long[] counts = new long[size];
+        final Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            counts[i] = matches.get(i);
+            positions[i] = i;
+        }
+        // The sort is stable, which keeps the order of the schema for ties
+        Arrays.sort(positions, (a, b) -> Long.compare(counts[b], counts[a]));
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = positions[i];
+        }
+        this.order = order;
+    }
+
+    public int getNumberOfBranches() {
+        return matches.length();
+    }
+
+    /**
+     * @return The number of times the branches were evaluated
+     */
+    public long getNumberOfEvaluations() {
+        return evaluations.get();
+    }
+
+    /**
+     * Gets the number of times a branch matched.
+     * 
+     * For a <code>oneOf</code>, a branch is counted only if it is the only branch
+     * that matches, as the evaluation stops as soon as a second branch matches.
+     * 
+     * @param branch The position of the branch in the schema
+     * @return The number of matches
+     */
+    public long getMatches(final int branch) {
+        return matches.get(branch);
+    }
+
+    /**
+     * Gets the order in which the branches are currently tried.
+     * 
+     * @return A copy of the positions of the branches, the most likely first
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    @Override
+    public String toString() {
+        final long[] counts = new long[matches.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = matches.get(i);
+        }
+        return "BranchStatistics[evaluations=" + evaluations.get() + ", matches=" + Arrays.toString(counts)
+                + ", order=" + Arrays.toString(order) + "]";
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.validator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import be.ac.umons.jsonschematools.AbstractConstants;
+import be.ac.umons.jsonschematools.JSONSchema;
+import be.ac.umons.jsonschematools.JSONSchemaException;
+import be.ac.umons.jsonschematools.JSONSchemaStore;
+import be.ac.umons.jsonschematools.Type;
+import be.ac.umons.jsonschematools.tree.JSONTreeModel;
+import be.ac.umons.jsonschematools.tree.JSONTrees;
+import be.ac.umons.jsonschematools.tree.OrgJSONTreeModel;
+import be.ac.umons.jsonschematools.tree.ValueKind;
+
+/**
+ * A validator for a single schema, translated once into a graph of validation
+ * nodes.
+ * 
+ * Each sub-schema is compiled into a node holding everything the validation
+ * needs: the forbidden values, one check per allowed type (in the order of the
+ * schema), the table of the properties, the nodes for the items, and the nodes
+ * for <code>allOf</code>, <code>anyOf</code>, <code>oneOf</code>, and
+ * <code>not</code>. A node is compiled the first time it is reached, then
+ * reused for every document. Recursive schemas lead to cycles in the graph.
+ * 
+ * The verdicts are the same as the ones of a {@link DefaultValidator}, for
+ * abstracted documents. Documents can be given in any
+ * {@link JSONTreeModel}. A compiled validator can be shared between threads.
+ * 
+ * @author Gaëtan Staquet
+ */
+public class CompiledValidator {
+    private final JSONSchema schema;
+    private final ConcurrentMap<JSONSchema, SchemaNode> nodes = new ConcurrentHashMap<>();
+    private final Node root;
+
+    /**
+     * Compiles a schema.
+     * 
+     * Only the root of the schema is compiled immediately. The other nodes are
+     * compiled when they are first reached.
+     * 
+     * @param schema The schema
+     * @throws JSONSchemaException If the root of the schema can not be compiled
+     */
+    public CompiledValidator(final JSONSchema schema) throws JSONSchemaException {
+        this.schema = schema;
+        this.root = node(schema);
+        root.compile();
+    }
+
+    public JSONSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Gets the number of nodes that are created so far.
+     * 
+     * @return The number of nodes
+     */
+    public int getNumberOfNodes() {
+        return nodes.size();
+    }
+
+    /**
+     * Checks whether the provided document satisfies the schema.
+     * 
+     * @param document The document
+     * @return True if and only if the document is valid
+     * @throws JSONSchemaException If a node can not be compiled
+     */
+    public boolean validate(final JSONObject document) throws JSONSchemaException {
+        return validate(document, OrgJSONTreeModel.INSTANCE);
+    }
+
+    /**
+     * Checks whether the provided document, represented in any tree model,
+     * satisfies the schema.
+     * 
+     * @param document The document
+     * @param model    The model of the document
+     * @return True if and only if the document is valid
+     * @throws JSONSchemaException If a node can not be compiled
+     */
+    public boolean validate(final Object document, final JSONTreeModel model) throws JSONSchemaException {
+        return root.validate(document, model, true);
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    private Node node(final JSONSchema schema) {
+        if (schema == null || JSONSchemaStore.isTrueSchema(schema)) {
+            return Constant.TRUE;
+        } else if (JSONSchemaStore.isFalseSchema(schema)) {
+            return Constant.FALSE;
+        }
+        return nodes.computeIfAbsent(schema, s -> new SchemaNode(this, s));
+    }
+
+    private Node[] nodes(final List<JSONSchema> schemas) {
+        final Node[] nodes = new Node[schemas.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = node(schemas.get(i));
+        }
+        return nodes;
+    }
+
+    interface Node {
+        void compile() throws JSONSchemaException;
+
+        boolean validate(Object value, JSONTreeModel model, boolean abstractConstValue) throws JSONSchemaException;
+    }
+
+    enum Constant implements Node {
+        TRUE,
+        FALSE;
+
+        @Override
+        public void compile() {
+        }
+
+        @Override
+        public boolean validate(final Object value, final JSONTreeModel model, final boolean abstractConstValue) {
+            return this == TRUE;
+        }
+    }
+
+    /**
+     * Checks whether a value has a type, with the constraints that are specific
+     * to this type.
+     */
+    interface TypeCheck {
+        boolean validate(Object value, JSONTreeModel model) throws JSONSchemaException;
+    }
+
+    static final class SchemaNode implements Node {
+        private final CompiledValidator validator;
+        private final JSONSchema schema;
+        private volatile boolean compiled;
+
+        private Object[] forbiddenValues;
+        TypeCheck[] checks;
+        // Set if the schema has a constant value and a type that is not an object or
+        // an array. The check of this type decides the result alone
+        private Object constValue;
+        private Object abstractConstValue;
+        int constIndex;
+        Node allOf;
+        Node[] anyOf;
+        Node[] oneOf;
+        Node not;
+
+        SchemaNode(final CompiledValidator validator, final JSONSchema schema) {
+            this.validator = validator;
+            this.schema = schema;
+        }
+
+        @Override
+        public void compile() throws JSONSchemaException {
+            if (compiled) {
+                return;
+            }
+            synchronized (this) {
+                if (compiled) {
+                    return;
+                }
+                final List<Object> forbidden = new ArrayList<>();
+                for (final Object value : schema.getForbiddenValues()) {
+                    // Forbidden objects and arrays are checked by their type checks
+                    if (!(value instanceof JSONObject || value instanceof JSONArray)) {
+                        forbidden.add(value);
+                    }
+                }
+
+                final List<TypeCheck> checks = new ArrayList<>();
+                int constIndex = -1;
+                for (final Type type : schema.getAllowedTypes()) {
+                    if (type != Type.NULL && type != Type.OBJECT && type != Type.ARRAY
+                            && schema.getConstValue() != null) {
+                        constIndex = checks.size();
+                        checks.add(null);
+                        // The constant decides the result, the following types are never tried
+                        break;
+                    }
+                    checks.add(typeCheck(type));
+                }
+
+                this.forbiddenValues = forbidden.toArray();
+                this.checks = checks.toArray(new TypeCheck[0]);
+                this.constIndex = constIndex;
+                this.constValue = schema.getConstValue();
+                this.abstractConstValue = AbstractConstants.abstractConstValue(constValue);
+                this.allOf = validator.node(schema.getAllOf());
+                this.anyOf = validator.nodes(schema.getAnyOf());
+                // The branches are checked directly, and counted, instead of going
+                // through the XOR combinations
+                this.oneOf = validator.nodes(schema.getOneOfBranches());
+                this.not = validator.node(schema.getRawNot());
+                compiled = true;
+            }
+        }
+
+        private TypeCheck typeCheck(final Type type) throws JSONSchemaException {
+            switch (type) {
+                case BOOLEAN:
+                    return (value, model) -> model.getKind(value) == ValueKind.BOOLEAN;
+                case ENUM:
+                    return new AbstractValueCheck(AbstractConstants.enumConstant);
+                case INTEGER:
+                    return new AbstractValueCheck(AbstractConstants.integerConstant);
+                case NUMBER:
+                    return new AbstractValueCheck(AbstractConstants.numberConstant);
+                case STRING:
+                    return new AbstractValueCheck(AbstractConstants.stringConstant);
+                case OBJECT:
+                    return new ObjectCheck(validator, schema);
+                case ARRAY:
+                    return new ArrayCheck(validator, schema);
+                case NULL:
+                default:
+                    return (value, model) -> model.getKind(value) == ValueKind.NULL;
+            }
+        }
+
+        @Override
+        public boolean validate(final Object value, final JSONTreeModel model, final boolean abstractConstValue)
+                throws JSONSchemaException {
+            compile();
+            for (final Object forbidden : forbiddenValues) {
+                if (equalsScalar(value, model, forbidden)) {
+                    return false;
+                }
+            }
+
+            // The combinators do not depend on the type, they are checked at most once
+            int combinators = -1;
+            for (int i = 0; i < checks.length; i++) {
+                if (i == constIndex) {
+                    return equalsScalar(value, model, abstractConstValue ? this.abstractConstValue : constValue);
+                }
+                if (checks[i].validate(value, model)) {
+                    if (combinators == -1) {
+                        combinators = validateCombinators(value, model) ? 1 : 0;
+                    }
+                    if (combinators == 1) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean validateCombinators(final Object value, final JSONTreeModel model)
+                throws JSONSchemaException {
+            if (!allOf.validate(value, model, true)) {
+                return false;
+            }
+
+            boolean matchedAnyOf = false;
+            for (final Node branch : anyOf) {
+                if (branch.validate(value, model, true)) {
+                    matchedAnyOf = true;
+                    break;
+                }
+            }
+            if (!matchedAnyOf) {
+                return false;
+            }
+
+            boolean matchedOneOf = false;
+            for (final Node branch : oneOf) {
+                if (branch.validate(value, model, true)) {
+                    if (matchedOneOf) {
+                        return false;
+                    }
+                    matchedOneOf = true;
+                }
+            }
+            if (!matchedOneOf) {
+                return false;
+            }
+
+            return !not.validate(value, model, false);
+        }
+    }
+
+    /**
+     * Checks whether a value is equal to a scalar value of the
+     * <code>org.json</code> library.
+     * 
+     * Objects and arrays are never equal to the expected value, and numbers are
+     * compared by value.
+     */
+    static boolean equalsScalar(final Object value, final JSONTreeModel model, final Object expected) {
+        if (expected == null) {
+            return false;
+        }
+        switch (model.getKind(value)) {
+            case STRING:
+                return expected instanceof String && model.getString(value).equals(expected);
+            case BOOLEAN:
+                return expected instanceof Boolean && model.getBoolean(value) == (Boolean) expected;
+            case INTEGER:
+            case NUMBER:
+                return expected instanceof Number
+                        && JSONTrees.compareNumbers(model.getNumber(value), (Number) expected) == 0;
+            case NULL:
+                return JSONObject.NULL.equals(expected);
+            default:
+                return false;
+        }
+    }
+
+    private static final class AbstractValueCheck implements TypeCheck {
+        private final String constant;
+
+        AbstractValueCheck(final String constant) {
+            this.constant = constant;
+        }
+
+        @Override
+        public boolean validate(final Object value, final JSONTreeModel model) {
+            return model.getKind(value) == ValueKind.STRING && model.getString(value).equals(constant);
+        }
+    }
+
+    static final class ObjectCheck implements TypeCheck {
+        final int minProperties;
+        final int maxProperties;
+        final String[] requiredKeys;
+        private final Map<String, Integer> requiredIndices = new HashMap<>();
+        private final Map<String, Node> properties = new HashMap<>();
+        private final Node additionalProperties;
+        final Object[] forbiddenValues;
+        final Object constValue;
+
+        ObjectCheck(final CompiledValidator validator, final JSONSchema schema) throws JSONSchemaException {
+            this.minProperties = schema.getIntOr("minProperties", 0);
+            this.maxProperties = schema.getIntOr("maxProperties", Integer.MAX_VALUE);
+            this.requiredKeys = schema.getRequiredPropertiesKeys().toArray(new String[0]);
+            for (int i = 0; i < requiredKeys.length; i++) {
+                requiredIndices.put(requiredKeys[i], i);
+            }
+            for (final Map.Entry<String, JSONSchema> entry : schema.getNonRequiredProperties().entrySet()) {
+                properties.put(entry.getKey(), validator.node(entry.getValue()));
+            }
+            for (final String key : requiredKeys) {
+                properties.put(key, validator.node(schema.getSchemaForProperty(key)));
+            }
+            this.additionalProperties = validator.node(schema.getAdditionalProperties());
+            this.forbiddenValues = schema.getForbiddenValuesFilteredByType(JSONObject.class).toArray();
+            this.constValue = schema.getConstValue() == null ? null
+                    : AbstractConstants.abstractConstValue(schema.getConstValue());
+        }
+
+        /**
+         * Gets the position of a key in {@link #requiredKeys}.
+         * 
+         * @param key The key
+         * @return The position, or -1 if the key is not required
+         */
+        int requiredIndex(final String key) {
+            return requiredIndices.getOrDefault(key, -1);
+        }
+
+        Node propertyNode(final String key) {
+            return properties.getOrDefault(key, additionalProperties);
+        }
+
+        @Override
+        public boolean validate(final Object value, final JSONTreeModel model) throws JSONSchemaException {
+            if (model.getKind(value) != ValueKind.OBJECT) {
+                return false;
+            }
+            final int size = model.size(value);
+            if (size < minProperties || size > maxProperties) {
+                return false;
+            }
+            for (final String key : requiredKeys) {
+                if (model.getMember(value, key) == null) {
+                    return false;
+                }
+            }
+            for (final String key : model.getKeys(value)) {
+                final Node node = propertyNode(key);
+                if (!node.validate(model.getMember(value, key), model, true)) {
+                    return false;
+                }
+            }
+            for (final Object forbidden : forbiddenValues) {
+                if (JSONTrees.similar(model, value, OrgJSONTreeModel.INSTANCE, forbidden)) {
+                    return false;
+                }
+            }
+            if (constValue != null) {
+                return constValue instanceof JSONObject
+                        && JSONTrees.similar(model, value, OrgJSONTreeModel.INSTANCE, constValue);
+            }
+            return true;
+        }
+    }
+
+    static final class ArrayCheck implements TypeCheck {
+        final int minItems;
+        final int maxItems;
+        final Node[] items;
+        final Object[] forbiddenValues;
+        final Object constValue;
+
+        ArrayCheck(final CompiledValidator validator, final JSONSchema schema) throws JSONSchemaException {
+            this.minItems = schema.getIntOr("minItems", 0);
+            this.maxItems = schema.getIntOr("maxItems", Integer.MAX_VALUE);
+            this.items = validator.nodes(schema.getItemsArray());
+            this.forbiddenValues = schema.getForbiddenValuesFilteredByType(JSONArray.class).toArray();
+            this.constValue = schema.getConstValue() == null ? null
+                    : AbstractConstants.abstractConstValue(schema.getConstValue());
+        }
+
+        @Override
+        public boolean validate(final Object value, final JSONTreeModel model) throws JSONSchemaException {
+            if (model.getKind(value) != ValueKind.ARRAY) {
+                return false;
+            }
+            final int size = model.size(value);
+            if (size < minItems || size > maxItems) {
+                return false;
+            }
+            // As in the default handler, one of the schemas must accept all the items
+            boolean atLeastOne = false;
+            for (final Node node : items) {
+                boolean valid = true;
+                for (int i = 0; i < size; i++) {
+                    if (!node.validate(model.getElement(value, i), model, true)) {
+                        valid = false;
+                        break;
+                    }
+                }
+                if (valid) {
+                    atLeastOne = true;
+                    break;
+                }
+            }
+            if (!atLeastOne) {
+                return false;
+            }
+            for (final Object forbidden : forbiddenValues) {
+                if (JSONTrees.similar(model, value, OrgJSONTreeModel.INSTANCE, forbidden)) {
+                    return false;
+                }
+            }
+            if (constValue != null) {
+                return constValue instanceof JSONArray
+                        && JSONTrees.similar(model, value, OrgJSONTreeModel.INSTANCE, constValue);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,745 @@
+/*
+ * JSONSchemaTools - Generators and validator for JSON schema, with abstract values
+ *
+ * Copyright 2022 University of Mons, University of Antwerp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package be.ac.umons.jsonschematools.validator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import be.ac.umons.jsonschematools.JSONSchema;
+import be.ac.umons.jsonschematools.JSONSchemaException;
+import be.ac.umons.jsonschematools.tree.JSONEventReader;
+import be.ac.umons.jsonschematools.tree.JSONTrees;
+import be.ac.umons.jsonschematools.tree.OrgJSONTreeModel;
+import be.ac.umons.jsonschematools.validator.CompiledValidator.ArrayCheck;
+import be.ac.umons.jsonschematools.validator.CompiledValidator.Constant;
+import be.ac.umons.jsonschematools.validator.CompiledValidator.Node;
+import be.ac.umons.jsonschematools.validator.CompiledValidator.ObjectCheck;
+import be.ac.umons.jsonschematools.validator.CompiledValidator.SchemaNode;
+
+/**
+ * A validator that reads a document token by token, without building it.
+ * 
+ * The validator relies on the nodes of a {@link CompiledValidator}. It keeps a
+ * stack with one frame per open object or array. A frame holds the checks that
+ * follow the container: one per node the container must be validated against
+ * (including the branches of <code>allOf</code>, <code>anyOf</code>,
+ * <code>oneOf</code>, and <code>not</code>), and one per constant or forbidden
+ * value the container is compared to. Scalar values are validated as soon as
+ * they are read. The memory is therefore proportional to the nesting depth of
+ * the document, and not to its size.
+ * 
+ * As soon as a violation makes the document invalid, the validation stops and
+ * the rest of the document is not read. The verdicts are the same as the ones
+ * of a {@link DefaultValidator}, for abstracted documents.
+ * 
+ * @author Gaëtan Staquet
+ */
+public class StreamingValidator {
+    private static final int UNKNOWN = -1;
+    private static final int INVALID = 0;
+    private static final int VALID = 1;
+
+    private final CompiledValidator compiled;
+
+    public StreamingValidator(final JSONSchema schema) throws JSONSchemaException {
+        this(new CompiledValidator(schema));
+    }
+
+    public StreamingValidator(final CompiledValidator compiled) {
+        this.compiled = compiled;
+    }
+
+    public CompiledValidator getCompiledValidator() {
+        return compiled;
+    }
+
+    /**
+     * Checks whether the document in a UTF-8 encoded stream satisfies the
+     * schema.
+     * 
+     * The stream is not closed.
+     * 
+     * @param stream The stream
+     * @return True if and only if the document is valid
+     * @throws IOException         If the stream can not be read
+     * @throws JSONException       If the document is not a valid JSON text
+     * @throws JSONSchemaException If a node can not be compiled
+     */
+    public boolean validate(final InputStream stream) throws IOException, JSONException, JSONSchemaException {
+        return validate(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks whether the document read by a reader satisfies the schema.
+     * 
+     * The reader is not closed. If the document is invalid, the reader may not be
+     * read until its end.
+     * 
+     * @param reader The reader
+     * @return True if and only if the document is valid
+     * @throws IOException         If the reader can not be read
+     * @throws JSONException       If the document is not a valid JSON text (up
+     *                             to the point where it is found to be invalid)
+     * @throws JSONSchemaException If a node can not be compiled
+     */
+    public boolean validate(final Reader reader) throws IOException, JSONException, JSONSchemaException {
+        return new Run(compiled.getRoot(), new JSONEventReader(reader)).run();
+    }
+
+    /**
+     * The evaluation of a container against a node, which can be undecided while
+     * the container is read.
+     */
+    private interface Evaluation {
+        int status();
+    }
+
+    private static final Evaluation VALID_EVALUATION = () -> VALID;
+    private static final Evaluation INVALID_EVALUATION = () -> INVALID;
+
+    /**
+     * A check that follows the events of a container.
+     */
+    private abstract static class Check implements Evaluation {
+        boolean isLive() {
+            return status() == UNKNOWN;
+        }
+
+        abstract void member(String key, Run run);
+
+        abstract void element(int index, Run run);
+
+        abstract void childResult(int slot, boolean valid);
+
+        abstract void end();
+    }
+
+    /**
+     * The result of the validation of a container against a node: the check of
+     * the type of the container, and the combinators.
+     */
+    private static final class Composite implements Evaluation {
+        Evaluation main;
+        Evaluation allOf;
+        Evaluation[] anyOf;
+        Evaluation[] oneOf;
+        Evaluation not;
+        private int decided = UNKNOWN;
+
+        @Override
+        public int status() {
+            if (decided != UNKNOWN) {
+                return decided;
+            }
+            final int mainStatus = main.status();
+            final int allOfStatus = allOf.status();
+            if (mainStatus == INVALID || allOfStatus == INVALID) {
+                return decided = INVALID;
+            }
+            boolean unknown = mainStatus == UNKNOWN || allOfStatus == UNKNOWN;
+
+            boolean anyUnknown = false;
+            boolean anyValid = false;
+            for (final Evaluation branch : anyOf) {
+                final int status = branch.status();
+                if (status == VALID) {
+                    anyValid = true;
+                    break;
+                }
+                anyUnknown |= status == UNKNOWN;
+            }
+            if (!anyValid && !anyUnknown) {
+                return decided = INVALID;
+            }
+            unknown |= !anyValid;
+
+            int valid = 0;
+            int undecided = 0;
+            for (final Evaluation branch : oneOf) {
+                final int status = branch.status();
+                if (status == VALID) {
+                    valid++;
+                } else if (status == UNKNOWN) {
+                    undecided++;
+                }
+            }
+            if (valid > 1 || valid + undecided == 0) {
+                return decided = INVALID;
+            }
+            unknown |= undecided != 0;
+
+            final int not = this.not.status();
+            if (not == VALID) {
+                return decided = INVALID;
+            }
+            unknown |= not == UNKNOWN;
+
+            if (unknown) {
+                return UNKNOWN;
+            }
+            return decided = VALID;
+        }
+    }
+
+    /**
+     * Checks the constraints of an object type: the number of properties, the
+     * required keys, the values of the properties, the forbidden values, and the
+     * constant value.
+     */
+    private static final class ObjectState extends Check {
+        private final ObjectCheck check;
+        private final boolean[] seenRequired;
+        private final MatchState[] forbidden;
+        private final MatchState constant;
+        private int size;
+        private int basic = UNKNOWN;
+
+        ObjectState(final ObjectCheck check, final Frame frame) {
+            this.check = check;
+            this.seenRequired = new boolean[check.requiredKeys.length];
+            frame.checks.add(this);
+            this.forbidden = new MatchState[check.forbiddenValues.length];
+            for (int i = 0; i < forbidden.length; i++) {
+                forbidden[i] = MatchState.create(check.forbiddenValues[i], true, frame, this);
+            }
+            this.constant = check.constValue == null ? null : MatchState.create(check.constValue, true, frame, this);
+        }
+
+        @Override
+        public int status() {
+            if (basic == INVALID) {
+                return INVALID;
+            }
+            boolean unknown = basic == UNKNOWN;
+            for (final MatchState match : forbidden) {
+                final int status = match.status();
+                if (status == VALID) {
+                    return INVALID;
+                }
+                unknown |= status == UNKNOWN;
+            }
+            if (constant != null) {
+                final int status = constant.status();
+                if (status == INVALID) {
+                    return INVALID;
+                }
+                unknown |= status == UNKNOWN;
+            }
+            return unknown ? UNKNOWN : VALID;
+        }
+
+        @Override
+        void member(final String key, final Run run) {
+            if (basic != UNKNOWN) {
+                return;
+            }
+            if (++size > check.maxProperties) {
+                basic = INVALID;
+                return;
+            }
+            final int required = check.requiredIndex(key);
+            if (required >= 0) {
+                seenRequired[required] = true;
+            }
+            run.demand(this, 0, check.propertyNode(key));
+        }
+
+        @Override
+        void element(final int index, final Run run) {
+        }
+
+        @Override
+        void childResult(final int slot, final boolean valid) {
+            if (!valid) {
+                basic = INVALID;
+            }
+        }
+
+        @Override
+        void end() {
+            if (basic != UNKNOWN) {
+                return;
+            }
+            if (size < check.minProperties) {
+                basic = INVALID;
+                return;
+            }
+            for (final boolean seen : seenRequired) {
+                if (!seen) {
+                    basic = INVALID;
+                    return;
+                }
+            }
+            basic = VALID;
+        }
+    }
+
+    /**
+     * Checks the constraints of an array type: the number of items, the items
+     * (one of the schemas must accept all of them), the forbidden values, and the
+     * constant value.
+     */
+    private static final class ArrayState extends Check {
+        private final ArrayCheck check;
+        private final boolean[] alive;
+        private final MatchState[] forbidden;
+        private final MatchState constant;
+        private int numberAlive;
+        private int size;
+        private int basic = UNKNOWN;
+
+        ArrayState(final ArrayCheck check, final Frame frame) {
+            this.check = check;
+            this.alive = new boolean[check.items.length];
+            Arrays.fill(alive, true);
+            this.numberAlive = alive.length;
+            if (numberAlive == 0) {
+                basic = INVALID;
+            }
+            frame.checks.add(this);
+            this.forbidden = new MatchState[check.forbiddenValues.length];
+            for (int i = 0; i < forbidden.length; i++) {
+                forbidden[i] = MatchState.create(check.forbiddenValues[i], false, frame, this);
+            }
+            this.constant = check.constValue == null ? null : MatchState.create(check.constValue, false, frame, this);
+        }
+
+        @Override
+        public int status() {
+            if (basic == INVALID) {
+                return INVALID;
+            }
+            boolean unknown = basic == UNKNOWN;
+            for (final MatchState match : forbidden) {
+                final int status = match.status();
+                if (status == VALID) {
+                    return INVALID;
+                }
+                unknown |= status == UNKNOWN;
+            }
+            if (constant != null) {
+                final int status = constant.status();
+                if (status == INVALID) {
+                    return INVALID;
+                }
+                unknown |= status == UNKNOWN;
+            }
+            return unknown ? UNKNOWN : VALID;
+        }
+
+        @Override
+        void member(final String key, final Run run) {
+        }
+
+        @Override
+        void element(final int index, final Run run) {
+            if (basic != UNKNOWN) {
+                return;
+            }
+            if (++size > check.maxItems) {
+                basic = INVALID;
+                return;
+            }
+            for (int i = 0; i < alive.length; i++) {
+                if (alive[i]) {
+                    run.demand(this, i, check.items[i]);
+                }
+            }
+        }
+
+        @Override
+        void childResult(final int slot, final boolean valid) {
+            if (!valid && alive[slot]) {
+                alive[slot] = false;
+                if (--numberAlive == 0) {
+                    basic = INVALID;
+                }
+            }
+        }
+
+        @Override
+        void end() {
+            if (basic == UNKNOWN) {
+                basic = size < check.minItems ? INVALID : VALID;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a container is similar to an expected value, represented
+     * with the <code>org.json</code> library.
+     */
+    private static final class MatchState extends Check {
+        private final Object expected;
+        private final Check owner;
+        private int count;
+        private int status = UNKNOWN;
+
+        private MatchState(final Object expected, final Check owner) {
+            this.expected = expected;
+            this.owner = owner;
+        }
+
+        static MatchState create(final Object expected, final boolean object, final Frame frame, final Check owner) {
+            final MatchState match = new MatchState(expected, owner);
+            if (object ? expected instanceof JSONObject : expected instanceof JSONArray) {
+                frame.checks.add(match);
+            } else {
+                match.status = INVALID;
+            }
+            return match;
+        }
+
+        @Override
+        public int status() {
+            return status;
+        }
+
+        @Override
+        boolean isLive() {
+            return status == UNKNOWN && (owner == null || owner.isLive());
+        }
+
+        @Override
+        void member(final String key, final Run run) {
+            count++;
+            final Object member = ((JSONObject) expected).opt(key);
+            if (member == null) {
+                status = INVALID;
+            } else {
+                run.demand(this, 0, member);
+            }
+        }
+
+        @Override
+        void element(final int index, final Run run) {
+            count++;
+            final JSONArray array = (JSONArray) expected;
+            if (index >= array.length()) {
+                status = INVALID;
+            } else {
+                run.demand(this, 0, array.opt(index));
+            }
+        }
+
+        @Override
+        void childResult(final int slot, final boolean valid) {
+            if (!valid) {
+                status = INVALID;
+            }
+        }
+
+        @Override
+        void end() {
+            if (status == UNKNOWN) {
+                final int size = expected instanceof JSONObject ? ((JSONObject) expected).length()
+                        : ((JSONArray) expected).length();
+                status = count == size ? VALID : INVALID;
+            }
+        }
+    }
+
+    /**
+     * A request, from a check of the parent container, to evaluate the current
+     * value.
+     */
+    private static final class Request {
+        final Check parent;
+        final int slot;
+        final Evaluation evaluation;
+        boolean resolved;
+
+        Request(final Check parent, final int slot, final Evaluation evaluation) {
+            this.parent = parent;
+            this.slot = slot;
+            this.evaluation = evaluation;
+        }
+    }
+
+    private static final class Frame {
+        final boolean object;
+        final List<Check> checks = new ArrayList<>();
+        final List<Request> requests = new ArrayList<>();
+        int elements;
+
+        Frame(final boolean object) {
+            this.object = object;
+        }
+
+        boolean isDead() {
+            for (final Request request : requests) {
+                if (!request.resolved) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A value to evaluate, requested by a check: either a node, or an expected
+     * value for a {@link MatchState}.
+     */
+    private static final class Demand {
+        Check parent;
+        int slot;
+        Node node;
+        Object expected;
+    }
+
+    private static final class Run {
+        private final Node root;
+        private final JSONEventReader reader;
+        private final List<Frame> stack = new ArrayList<>();
+        private final List<Demand> demands = new ArrayList<>();
+        private int numberOfDemands;
+        private int rootStatus = UNKNOWN;
+
+        Run(final Node root, final JSONEventReader reader) {
+            this.root = root;
+            this.reader = reader;
+        }
+
+        void demand(final Check parent, final int slot, final Node node) {
+            nextDemand(parent, slot).node = node;
+        }
+
+        void demand(final Check parent, final int slot, final Object expected) {
+            nextDemand(parent, slot).expected = expected;
+        }
+
+        private Demand nextDemand(final Check parent, final int slot) {
+            if (numberOfDemands == demands.size()) {
+                demands.add(new Demand());
+            }
+            final Demand demand = demands.get(numberOfDemands++);
+            demand.parent = parent;
+            demand.slot = slot;
+            demand.node = null;
+            demand.expected = null;
+            return demand;
+        }
+
+        boolean run() throws IOException, JSONException, JSONSchemaException {
+            while (true) {
+                final JSONEventReader.Event event = reader.next();
+                switch (event) {
+                    case KEY:
+                        demandChildren(reader.getKey());
+                        break;
+                    case VALUE:
+                        if (stack.isEmpty()) {
+                            return root.validate(reader.getValue(), OrgJSONTreeModel.INSTANCE, true);
+                        }
+                        demandElementIfArray();
+                        scalar(reader.getValue());
+                        break;
+                    case START_OBJECT:
+                    case START_ARRAY:
+                        if (stack.isEmpty()) {
+                            demand(null, 0, root);
+                        } else {
+                            demandElementIfArray();
+                        }
+                        open(event == JSONEventReader.Event.START_OBJECT);
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        close();
+                        break;
+                    case END:
+                    default:
+                        return rootStatus == VALID;
+                }
+                if (rootStatus == INVALID) {
+                    return false;
+                }
+            }
+        }
+
+        private void demandChildren(final String key) {
+            numberOfDemands = 0;
+            final Frame frame = top();
+            for (int i = 0; i < frame.checks.size(); i++) {
+                final Check check = frame.checks.get(i);
+                if (check.isLive()) {
+                    check.member(key, this);
+                }
+            }
+        }
+
+        private void demandElementIfArray() {
+            final Frame frame = top();
+            if (frame.object) {
+                return;
+            }
+            numberOfDemands = 0;
+            final int index = frame.elements++;
+            for (int i = 0; i < frame.checks.size(); i++) {
+                final Check check = frame.checks.get(i);
+                if (check.isLive()) {
+                    check.element(index, this);
+                }
+            }
+        }
+
+        private void scalar(final Object value) throws JSONSchemaException {
+            for (int i = 0; i < numberOfDemands; i++) {
+                final Demand demand = demands.get(i);
+                final boolean valid;
+                if (demand.node != null) {
+                    valid = demand.node.validate(value, OrgJSONTreeModel.INSTANCE, true);
+                } else {
+                    valid = JSONTrees.similar(OrgJSONTreeModel.INSTANCE, value, OrgJSONTreeModel.INSTANCE,
+                            demand.expected);
+                }
+                demand.parent.childResult(demand.slot, valid);
+            }
+            numberOfDemands = 0;
+            settle(stack.size() - 1);
+        }
+
+        private void open(final boolean object) throws JSONSchemaException {
+            final Frame frame = new Frame(object);
+            final Map<Node, Evaluation> evaluations = new IdentityHashMap<>();
+            for (int i = 0; i < numberOfDemands; i++) {
+                final Demand demand = demands.get(i);
+                final Evaluation evaluation;
+                if (demand.node != null) {
+                    evaluation = evaluate(demand.node, frame, evaluations);
+                } else {
+                    evaluation = MatchState.create(demand.expected, object, frame, null);
+                }
+                frame.requests.add(new Request(demand.parent, demand.slot, evaluation));
+            }
+            numberOfDemands = 0;
+            stack.add(frame);
+            // Some requests may already be decided, for instance if the type is wrong
+            settle(stack.size() - 1);
+        }
+
+        private Evaluation evaluate(final Node node, final Frame frame, final Map<Node, Evaluation> evaluations)
+                throws JSONSchemaException {
+            if (node == Constant.TRUE) {
+                return VALID_EVALUATION;
+            } else if (node == Constant.FALSE) {
+                return INVALID_EVALUATION;
+            }
+            final Evaluation known = evaluations.get(node);
+            if (known != null) {
+                return known;
+            }
+
+            final SchemaNode schemaNode = (SchemaNode) node;
+            schemaNode.compile();
+            // Only the check of the type of the container can succeed. A constant value
+            // that is not an object or an array is never equal to a container
+            CompiledValidator.TypeCheck main = null;
+            for (int i = 0; i < schemaNode.checks.length && i != schemaNode.constIndex; i++) {
+                final CompiledValidator.TypeCheck check = schemaNode.checks[i];
+                if (frame.object ? check instanceof ObjectCheck : check instanceof ArrayCheck) {
+                    main = check;
+                    break;
+                }
+            }
+            if (main == null) {
+                evaluations.put(node, INVALID_EVALUATION);
+                return INVALID_EVALUATION;
+            }
+
+            final Composite composite = new Composite();
+            evaluations.put(node, composite);
+            composite.main = frame.object ? new ObjectState((ObjectCheck) main, frame)
+                    : new ArrayState((ArrayCheck) main, frame);
+            composite.allOf = evaluate(schemaNode.allOf, frame, evaluations);
+            composite.anyOf = new Evaluation[schemaNode.anyOf.length];
+            for (int i = 0; i < schemaNode.anyOf.length; i++) {
+                composite.anyOf[i] = evaluate(schemaNode.anyOf[i], frame, evaluations);
+            }
+            composite.oneOf = new Evaluation[schemaNode.oneOf.length];
+            for (int i = 0; i < schemaNode.oneOf.length; i++) {
+                composite.oneOf[i] = evaluate(schemaNode.oneOf[i], frame, evaluations);
+            }
+            composite.not = evaluate(schemaNode.not, frame, evaluations);
+            return composite;
+        }
+
+        private void close() {
+            final Frame frame = stack.remove(stack.size() - 1);
+            for (final Check check : frame.checks) {
+                check.end();
+            }
+            for (final Request request : frame.requests) {
+                if (!request.resolved) {
+                    resolve(request, request.evaluation.status() == VALID);
+                }
+            }
+            settle(stack.size() - 1);
+        }
+
+        private void resolve(final Request request, final boolean valid) {
+            request.resolved = true;
+            if (request.parent == null) {
+                rootStatus = valid ? VALID : INVALID;
+            } else {
+                request.parent.childResult(request.slot, valid);
+            }
+        }
+
+        /**
+         * Resolves the requests that are decided, from the given frame down to the
+         * root.
+         */
+        private void settle(final int level) {
+            for (int depth = level; depth >= 0; depth--) {
+                final Frame frame = stack.get(depth);
+                boolean changed = false;
+                for (final Request request : frame.requests) {
+                    if (!request.resolved && request.evaluation.status() != UNKNOWN) {
+                        changed = true;
+                        resolve(request, request.evaluation.status() == VALID);
+                    }
+                }
+                if (changed && frame.isDead()) {
+                    // Nothing depends on the rest of this container anymore
+                    frame.checks.clear();
+                }
+                if (!changed) {
+                    return;
+                }
+            }
+        }
+
+        private Frame top() {
+            return stack.get(stack.size() - 1);
+        }
+    }
+}
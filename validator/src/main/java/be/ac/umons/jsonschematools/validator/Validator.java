@@ -18,16 +18,38 @@
 
 package be.ac.umons.jsonschematools.validator;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import be.ac.umons.jsonschematools.AbstractConstants;
+import be.ac.umons.jsonschematools.BoundedCache;
+import be.ac.umons.jsonschematools.HashableJSONArray;
+import be.ac.umons.jsonschematools.HashableJSONObject;
 import be.ac.umons.jsonschematools.JSONSchema;
 import be.ac.umons.jsonschematools.JSONSchemaException;
 import be.ac.umons.jsonschematools.JSONSchemaStore;
 import be.ac.umons.jsonschematools.Type;
+import be.ac.umons.jsonschematools.tree.CompactTreeModel;
+import be.ac.umons.jsonschematools.tree.JSONTreeModel;
+import be.ac.umons.jsonschematools.tree.JSONTrees;
+import be.ac.umons.jsonschematools.tree.OrgJSONTreeModel;
 import be.ac.umons.jsonschematools.validator.handlers.Handler;
 
 /**
@@ -37,10 +59,46 @@ import be.ac.umons.jsonschematools.validator.handlers.Handler;
  * a JSON schema. See the {@link be.ac.umons.jsonschematools.validator.handlers
  * handlers package} for implemented handlers.
  * 
+ * The handlers read values of the <code>org.json</code> library. Documents
+ * represented in another tree model can be validated by a
+ * {@link CompiledValidator}, which reads them through their
+ * {@link JSONTreeModel}.
+ * 
+ * A validator can be shared between threads, and the same schema can be used
+ * by multiple threads at the same time, as long as its handlers do not hold
+ * any state (which is the case of the default handlers). The batch methods
+ * ({@link #validateAll(JSONSchema, Collection)} and its variants) rely on this
+ * to validate documents in parallel. The state a validator keeps between calls
+ * is the following:
+ * <ul>
+ * <li>the optional cache of verdicts (see
+ * {@link #configureResultCache(int, BoundedCache.Eviction)}), a striped
+ * {@link BoundedCache} whose entries only hold immutable copies of the
+ * values;</li>
+ * <li>the counters of the branches of <code>anyOf</code> and
+ * <code>oneOf</code>, used by the adaptive ordering (see
+ * {@link #setAdaptiveBranchOrdering(boolean)}), which are updated
+ * atomically;</li>
+ * <li>the copies of the document being validated by each thread, used as keys
+ * of the cache of verdicts, which are confined to that thread and discarded
+ * at the end of the validation.</li>
+ * </ul>
+ * None of this state changes the verdicts: it only changes the work needed to
+ * obtain them. The configuration methods can be called while documents are
+ * being validated, in which case the validations in progress may use either
+ * configuration.
+ * 
  * @author Gaëtan Staquet
  */
 public class Validator {
 
+    // Below this number of documents, a batch is validated by a single task
+    private static final int BATCH_THRESHOLD = 64;
+    // The minimal number of entries in each stripe of the result cache
+    private static final int MINIMAL_STRIPE_SIZE = 256;
+    // The maximal number of schemas whose branch statistics are kept
+    private static final int MAXIMAL_STATISTICS = 4096;
+
     private final Handler stringHandler;
     private final Handler integerHandler;
     private final Handler numberHandler;
@@ -48,6 +106,16 @@ public class Validator {
     private final Handler enumHandler;
     private final Handler objectHandler;
     private final Handler arrayHandler;
+    // The immutable copies of the plain objects and arrays of the document being
+    // validated by the current thread, used as keys of the result cache
+    private final ThreadLocal<Map<Object, Object>> frozenValues = new ThreadLocal<>();
+    private volatile BoundedCache<ResultKey, Boolean> resultCache = new BoundedCache<>(0,
+            BoundedCache.Eviction.LEAST_RECENTLY_USED);
+    private volatile boolean adaptiveBranchOrdering = false;
+    private final BoundedCache<JSONSchema, BranchStatistics> anyOfStatistics = new BoundedCache<>(
+            MAXIMAL_STATISTICS, BoundedCache.Eviction.LEAST_RECENTLY_USED, stripes(MAXIMAL_STATISTICS));
+    private final BoundedCache<JSONSchema, BranchStatistics> oneOfStatistics = new BoundedCache<>(
+            MAXIMAL_STATISTICS, BoundedCache.Eviction.LEAST_RECENTLY_USED, stripes(MAXIMAL_STATISTICS));
 
     public Validator(final Handler stringHandler, final Handler integerHandler, final Handler numberHandler,
             final Handler booleanHandler, final Handler enumHandler, final Handler objectHandler,
@@ -73,6 +141,299 @@ public class Validator {
         return validateValue(schema, document);
     }
 
+    /**
+     * Validates every document of a batch, in parallel, using the common
+     * {@link ForkJoinPool}.
+     * 
+     * @param schema    The schema
+     * @param documents The documents
+     * @return The verdicts, indexed by the iteration order of the collection
+     * @throws JSONSchemaException If the validation of a document fails
+     */
+    public BatchResult validateAll(final JSONSchema schema, final Collection<JSONObject> documents)
+            throws JSONSchemaException {
+        return validateAll(schema, documents, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates every document of a stream, in parallel, using the given pool.
+     * 
+     * The stream is consumed before the validation starts.
+     * 
+     * @param schema    The schema
+     * @param documents The documents
+     * @param pool      The pool
+     * @return The verdicts, indexed by the encounter order of the stream
+     * @throws JSONSchemaException If the validation of a document fails
+     */
+    public BatchResult validateAll(final JSONSchema schema, final Stream<JSONObject> documents,
+            final ForkJoinPool pool) throws JSONSchemaException {
+        return validateAll(schema, documents.collect(Collectors.toList()), pool);
+    }
+
+    /**
+     * Validates every document of a batch, in parallel, using the given pool.
+     * 
+     * The batch is recursively split in halves, until the parts are small enough
+     * to be validated sequentially.
+     * 
+     * @param schema    The schema
+     * @param documents The documents
+     * @param pool      The pool
+     * @return The verdicts, indexed by the iteration order of the collection
+     * @throws JSONSchemaException If the validation of a document fails
+     */
+    public BatchResult validateAll(final JSONSchema schema, final Collection<JSONObject> documents,
+            final ForkJoinPool pool) throws JSONSchemaException {
+        final Batch batch = new Batch(schema, documents);
+        pool.invoke(new BatchTask(batch, 0, batch.documents.size()));
+        return batch.result();
+    }
+
+    /**
+     * Validates every document of a batch, in parallel, using the given executor.
+     * 
+     * The batch is split in one part per thread available to the virtual
+     * machine, and each part is submitted to the executor.
+     * 
+     * @param schema    The schema
+     * @param documents The documents
+     * @param executor  The executor
+     * @return The verdicts, indexed by the iteration order of the collection
+     * @throws JSONSchemaException If the validation of a document fails
+     */
+    public BatchResult validateAll(final JSONSchema schema, final Collection<JSONObject> documents,
+            final Executor executor) throws JSONSchemaException {
+        final Batch batch = new Batch(schema, documents);
+        final int size = batch.documents.size();
+        final int parts = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / BATCH_THRESHOLD));
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[parts];
+        for (int i = 0; i < parts; i++) {
+            final int from = (int) ((long) size * i / parts);
+            final int to = (int) ((long) size * (i + 1) / parts);
+            futures[i] = CompletableFuture.runAsync(() -> batch.validate(from, to), executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+        return batch.result();
+    }
+
+    /**
+     * The shared state of a batch validation.
+     * 
+     * Each document is validated by exactly one thread, which writes its verdict
+     * in its own cell of {@link #verdicts}. The cells are read once every thread
+     * is done.
+     */
+    private final class Batch {
+        private final JSONSchema schema;
+        private final List<JSONObject> documents;
+        private final boolean[] verdicts;
+        private final AtomicReference<JSONSchemaException> failure = new AtomicReference<>();
+
+        Batch(final JSONSchema schema, final Collection<JSONObject> documents) {
+            this.schema = schema;
+            if (documents instanceof List && documents instanceof RandomAccess) {
+                this.documents = (List<JSONObject>) documents;
+            } else {
+                this.documents = new ArrayList<>(documents);
+            }
+            this.verdicts = new boolean[this.documents.size()];
+        }
+
+        void validate(final int from, final int to) {
+            for (int i = from; i < to && failure.get() == null; i++) {
+                try {
+                    verdicts[i] = Validator.this.validate(schema, documents.get(i));
+                } catch (JSONSchemaException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }
+
+        BatchResult result() throws JSONSchemaException {
+            final JSONSchemaException exception = failure.get();
+            if (exception != null) {
+                throw exception;
+            }
+            final BitSet valid = new BitSet(verdicts.length);
+            for (int i = 0; i < verdicts.length; i++) {
+                if (verdicts[i]) {
+                    valid.set(i);
+                }
+            }
+            return new BatchResult(valid, verdicts.length);
+        }
+    }
+
+    private static final class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Batch batch;
+        private final int from;
+        private final int to;
+
+        BatchTask(final Batch batch, final int from, final int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_THRESHOLD) {
+                batch.validate(from, to);
+            } else {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(batch, from, middle), new BatchTask(batch, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Replaces the cache storing the verdicts of the objects and arrays validated
+     * so far.
+     * 
+     * The cache is disabled by default (its maximal size is zero). Once enabled,
+     * an object or an array that is equal (in the sense of
+     * {@link JSONTrees#similar(JSONTreeModel, Object, JSONTreeModel, Object)}) to
+     * a value already validated against the same schema is not validated again.
+     * This is mostly useful for abstracted documents, in which many sub-documents
+     * have the same shape, such as the items of a long array. The keys hold an
+     * immutable copy of each object and array of the document, computed once per
+     * validated document, which makes the cache counter-productive for documents
+     * without repetitions.
+     * 
+     * The verdicts only depend on the values, which assumes that the handlers do
+     * not hold any state.
+     * 
+     * @param maximumSize The maximal number of verdicts in the cache
+     * @param eviction    The eviction policy
+     */
+    public void configureResultCache(final int maximumSize, final BoundedCache.Eviction eviction) {
+        this.resultCache = new BoundedCache<>(maximumSize, eviction, stripes(maximumSize));
+    }
+
+    /**
+     * Computes the number of stripes of a cache shared by the threads of the batch
+     * methods, so that they do not contend on a single lock. Each stripe keeps
+     * enough entries for its eviction to remain meaningful.
+     */
+    private static int stripes(final int maximumSize) {
+        final int stripes = Math.min(maximumSize / MINIMAL_STRIPE_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+        return Math.max(1, stripes);
+    }
+
+    /**
+     * Gets the cache storing the verdicts of the objects and arrays.
+     * 
+     * This can be used to inspect the number of hits and misses.
+     * 
+     * @return The result cache
+     * @see #configureResultCache(int, BoundedCache.Eviction)
+     */
+    public BoundedCache<?, Boolean> getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Enables or disables the adaptive ordering of the branches of
+     * <code>anyOf</code> and <code>oneOf</code>.
+     * 
+     * When enabled, the validator counts how often each branch matches, for each
+     * schema, and tries the branches that matched the most first. This reduces
+     * the number of branches to evaluate for an <code>anyOf</code>, and for a
+     * <code>oneOf</code> in which two branches match. The verdicts do not depend
+     * on the order.
+     * 
+     * The adaptive ordering is disabled by default. Disabling it keeps the
+     * counters, which are used again if it is re-enabled. Only the counters of
+     * the schemas used the most recently are kept (a few thousands), so that a
+     * long-lived validator does not retain every schema it has seen.
+     * 
+     * @param adaptive Whether the branches are reordered
+     * @see #getAnyOfStatistics(JSONSchema)
+     * @see #getOneOfStatistics(JSONSchema)
+     */
+    public void setAdaptiveBranchOrdering(final boolean adaptive) {
+        this.adaptiveBranchOrdering = adaptive;
+    }
+
+    public boolean isAdaptiveBranchOrdering() {
+        return adaptiveBranchOrdering;
+    }
+
+    /**
+     * Gets the counters of the branches of the <code>anyOf</code> of a schema.
+     * 
+     * @param schema The schema
+     * @return The counters, or null if the branches were never evaluated with the
+     *         adaptive ordering, or if the counters were evicted
+     */
+    public BranchStatistics getAnyOfStatistics(final JSONSchema schema) {
+        return anyOfStatistics.get(schema);
+    }
+
+    /**
+     * Gets the counters of the branches of the <code>oneOf</code> of a schema.
+     * 
+     * @param schema The schema
+     * @return The counters, or null if the branches were never evaluated with the
+     *         adaptive ordering, or if the counters were evicted
+     */
+    public BranchStatistics getOneOfStatistics(final JSONSchema schema) {
+        return oneOfStatistics.get(schema);
+    }
+
+    /**
+     * A value and the schema it is validated against.
+     * 
+     * The schema is compared by identity, as the store shares the instances of
+     * equal sub-schemas. The value is an immutable compact tree, or a copy of a
+     * hashable object or array, compared structurally. In both cases, its hash is
+     * cached and computed from the cached hashes of its sub-trees.
+     */
+    private static final class ResultKey {
+        private final JSONSchema schema;
+        private final boolean abstractConstValue;
+        private final Object value;
+        private final int hash;
+
+        ResultKey(final JSONSchema schema, final boolean abstractConstValue, final Object value) {
+            this.schema = schema;
+            this.abstractConstValue = abstractConstValue;
+            this.value = value;
+            this.hash = 31 * (31 * System.identityHashCode(schema) + Boolean.hashCode(abstractConstValue))
+                    + value.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResultKey)) {
+                return false;
+            }
+            final ResultKey other = (ResultKey) obj;
+            return hash == other.hash && schema == other.schema && abstractConstValue == other.abstractConstValue
+                    && (value == other.value || value.equals(other.value));
+        }
+    }
+
     public Handler getArrayHandler() {
         return arrayHandler;
     }
@@ -113,40 +474,78 @@ public class Validator {
 
     private boolean validateAnyOf(final JSONSchema schema, final Object object) throws JSONSchemaException {
         final List<JSONSchema> listAnyOf = schema.getAnyOf();
+        if (adaptiveBranchOrdering && listAnyOf.size() > 1) {
+            final BranchStatistics statistics = statistics(anyOfStatistics, schema, listAnyOf.size());
+            for (final int branch : statistics.order()) {
+                if (validateBranch(listAnyOf.get(branch), object)) {
+                    statistics.record(branch);
+                    return true;
+                }
+            }
+            statistics.record(-1);
+            return false;
+        }
         return validateAnyOf(listAnyOf, object);
     }
 
     private boolean validateAnyOf(final List<JSONSchema> listAnyOf, final Object object) throws JSONSchemaException {
         for (final JSONSchema anyOf : listAnyOf) {
-            if (JSONSchemaStore.isTrueSchema(anyOf)) {
-                return true;
-            } else if (JSONSchemaStore.isFalseSchema(anyOf)) {
-                continue;
-            } else if (validateValue(anyOf, object)) {
+            if (validateBranch(anyOf, object)) {
                 return true;
             }
         }
         return false;
     }
 
+    private static BranchStatistics statistics(final BoundedCache<JSONSchema, BranchStatistics> cache,
+            final JSONSchema schema, final int branches) {
+        BranchStatistics statistics = cache.get(schema);
+        if (statistics == null) {
+            // If two threads create the counters at the same time, one of them is
+            // lost, which only delays the reordering
+            statistics = new BranchStatistics(branches);
+            cache.put(schema, statistics);
+        }
+        return statistics;
+    }
+
+    private boolean validateBranch(final JSONSchema branch, final Object object) throws JSONSchemaException {
+        if (JSONSchemaStore.isTrueSchema(branch)) {
+            return true;
+        } else if (JSONSchemaStore.isFalseSchema(branch)) {
+            return false;
+        }
+        return validateValue(branch, object);
+    }
+
     private boolean validateOneOf(final JSONSchema schema, final Object object) throws JSONSchemaException {
-        final List<JSONSchema> listOneOf = schema.getOneOf();
-        boolean alreadyOne = false;
-        for (final JSONSchema oneOf : listOneOf) {
-            final boolean thisOne;
-            if (JSONSchemaStore.isTrueSchema(oneOf)) {
-                thisOne = true;
-            } else if (JSONSchemaStore.isFalseSchema(oneOf)) {
-                thisOne = false;
-            } else {
-                thisOne = validateAllOf(oneOf, object);
+        // Exactly one branch must match. Checking the branches directly (instead of
+        // the XOR combinations) evaluates each branch at most once, and we stop as
+        // soon as a second branch matches
+        final List<JSONSchema> listOneOf = schema.getOneOfBranches();
+        if (adaptiveBranchOrdering && listOneOf.size() > 1) {
+            final BranchStatistics statistics = statistics(oneOfStatistics, schema, listOneOf.size());
+            int matched = -1;
+            for (final int branch : statistics.order()) {
+                if (validateBranch(listOneOf.get(branch), object)) {
+                    if (matched != -1) {
+                        statistics.record(-1);
+                        return false;
+                    }
+                    matched = branch;
+                }
             }
-            if (alreadyOne && thisOne) {
+            statistics.record(matched);
+            return matched != -1;
+        }
+
+        int matches = 0;
+        for (final JSONSchema oneOf : listOneOf) {
+            if (validateBranch(oneOf, object) && ++matches == 2) {
                 return false;
             }
-            alreadyOne = alreadyOne || thisOne;
         }
-        return alreadyOne;
+        return matches == 1;
     }
 
     private boolean validateNot(final JSONSchema schema, final Object object) throws JSONSchemaException {
@@ -162,15 +561,66 @@ public class Validator {
             return false;
         }
 
+        final BoundedCache<ResultKey, Boolean> cache = resultCache;
+        if (cache.getMaximumSize() != 0 && (object instanceof JSONObject || object instanceof JSONArray)) {
+            // The first (outermost) value converts the whole document once. The
+            // nested values then reuse the copies of their sub-trees, instead of
+            // copying and hashing them again at each level
+            Map<Object, Object> frozen = frozenValues.get();
+            final boolean outermost = frozen == null;
+            if (outermost) {
+                frozen = new IdentityHashMap<>();
+                frozenValues.set(frozen);
+            }
+            try {
+                final ResultKey key = new ResultKey(schema, abstractConstValue, freeze(object, frozen));
+                final Boolean known = cache.get(key);
+                if (known != null) {
+                    return known;
+                }
+                final boolean valid = validateUncachedValue(schema, object, abstractConstValue);
+                cache.put(key, valid);
+                return valid;
+            } finally {
+                if (outermost) {
+                    // The document may be modified after the validation
+                    frozenValues.remove();
+                }
+            }
+        }
+        return validateUncachedValue(schema, object, abstractConstValue);
+    }
+
+    /**
+     * Gets a copy of an object or array that is not affected by later
+     * modifications of the document.
+     * 
+     * The getters of hashable objects and arrays return a new copy at each call,
+     * which would never be found in the identity map of the converted values. They
+     * are copy-on-write, however, so copying them is cheap and keeps their cached
+     * hash.
+     */
+    private static Object freeze(final Object object, final Map<Object, Object> frozen) {
+        if (object instanceof HashableJSONObject) {
+            return new HashableJSONObject((JSONObject) object);
+        } else if (object instanceof HashableJSONArray) {
+            return new HashableJSONArray((JSONArray) object);
+        }
+        return JSONTrees.convert(object, OrgJSONTreeModel.INSTANCE, CompactTreeModel.INSTANCE, frozen);
+    }
+
+    private boolean validateUncachedValue(final JSONSchema schema, final Object object,
+            final boolean abstractConstValue) throws JSONSchemaException {
         for (final Object forbidden : schema.getForbiddenValues()) {
             if (object.equals(forbidden)) {
                 return false;
             }
         }
 
-        List<Type> allowedTypes = schema.getAllowedTypes();
+        final List<Type> allowedTypes = schema.getAllowedTypes();
 
-        for (Type type : allowedTypes) {
+        for (int i = 0; i < allowedTypes.size(); i++) {
+            final Type type = allowedTypes.get(i);
             final Handler handler;
             switch (type) {
                 case BOOLEAN:
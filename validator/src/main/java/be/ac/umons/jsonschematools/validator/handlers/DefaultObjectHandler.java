@@ -20,7 +20,6 @@ package be.ac.umons.jsonschematools.validator.handlers;
 
 import java.util.Set;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import be.ac.umons.jsonschematools.AbstractConstants;
@@ -56,15 +55,9 @@ public class DefaultObjectHandler implements Handler {
         }
 
         for (String key : document.keySet()) {
-            JSONSchema schemaForKey;
+            final JSONSchema schemaForKey = schema.getSchemaForProperty(key);
             final Object objectForKey = document.get(key);
 
-            try {
-                schemaForKey = schema.getSubSchemaProperties(key);
-            } catch (JSONException e) {
-                schemaForKey = schema.getAdditionalProperties();
-            }
-
             if (!validator.validateValue(schemaForKey, objectForKey)) {
                 return false;
             }
@@ -19,14 +19,29 @@
 package be.ac.umons.jsonschematools;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import be.ac.umons.jsonschematools.tree.CompactTreeModel;
+import be.ac.umons.jsonschematools.tree.OrgJSONTreeModel;
+import be.ac.umons.jsonschematools.validator.BatchResult;
+import be.ac.umons.jsonschematools.validator.BranchStatistics;
+import be.ac.umons.jsonschematools.validator.CompiledValidator;
 import be.ac.umons.jsonschematools.validator.DefaultValidator;
+import be.ac.umons.jsonschematools.validator.StreamingValidator;
 import be.ac.umons.jsonschematools.validator.Validator;
 
 public class TestValidator {
@@ -36,6 +51,30 @@ public class TestValidator {
         return store.load(TestValidator.class.getResource("/" + path).toURI());
     }
 
+    /**
+     * Validates a document, and checks that a compiled validator gives the same
+     * verdict, for the document and for its compact tree, and that a streaming
+     * validator and a validator with adaptive branch ordering give the same
+     * verdict.
+     */
+    private boolean validate(Validator validator, JSONSchema schema, JSONObject document) throws JSONSchemaException {
+        final boolean valid = validator.validate(schema, document);
+        final Validator adaptive = new DefaultValidator();
+        adaptive.setAdaptiveBranchOrdering(true);
+        Assert.assertEquals(adaptive.validate(schema, document), valid, document.toString());
+        final CompiledValidator compiled = new CompiledValidator(schema);
+        Assert.assertEquals(compiled.validate(document), valid, document.toString());
+        Assert.assertEquals(compiled.validate(CompactTreeModel.of(document, OrgJSONTreeModel.INSTANCE),
+                CompactTreeModel.INSTANCE), valid, document.toString());
+        try {
+            Assert.assertEquals(new StreamingValidator(compiled).validate(new StringReader(document.toString())),
+                    valid, document.toString());
+        } catch (IOException e) {
+            Assert.fail("Could not read the document", e);
+        }
+        return valid;
+    }
+
     private String escapeSymbol(String string) {
         return "\"\\" + string + "\"";
     }
@@ -51,7 +90,22 @@ public class TestValidator {
             append("\"integer\": ").append(escapeSymbol(AbstractConstants.integerConstant)).
         append("}");
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(stringBuilder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(stringBuilder.toString())));
+    }
+
+    @Test
+    public void testStreamingEarlyRejection()
+            throws FileNotFoundException, IOException, JSONSchemaException, URISyntaxException {
+        JSONSchema schema = loadSchemaResource("basicTypes.json");
+        StreamingValidator validator = new StreamingValidator(schema);
+        // The document is rejected on the first property, before the syntax error
+        String document = "{\"integer\": " + escapeSymbol(AbstractConstants.stringConstant) + ", \"boolean\": }";
+        Assert.assertFalse(validator.validate(new StringReader(document)));
+        document = "{\"array\": [" + escapeSymbol(AbstractConstants.stringConstant) + ", false, ";
+        Assert.assertFalse(validator.validate(new StringReader(document)));
+
+        final String valid = "{\"integer\": " + escapeSymbol(AbstractConstants.integerConstant) + ", \"boolean\": }";
+        Assert.assertThrows(JSONException.class, () -> validator.validate(new StringReader(valid)));
     }
 
     @Test
@@ -83,7 +137,7 @@ public class TestValidator {
                     append(']').
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -116,7 +170,172 @@ public class TestValidator {
                     append(']').
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        final JSONObject document = new JSONObject(builder.toString());
+        Assert.assertTrue(validate(validator, schema, document));
+    }
+
+    @Test
+    public void testResultCache()
+            throws JSONException, JSONSchemaException, FileNotFoundException, URISyntaxException {
+        JSONSchema schema = loadSchemaResource("basicTypes.json");
+        Validator validator = new DefaultValidator();
+        validator.configureResultCache(16, BoundedCache.Eviction.LEAST_RECENTLY_USED);
+        final JSONArray array = new JSONArray();
+        for (int i = 0; i < 100; i++) {
+            array.put(AbstractConstants.stringConstant);
+        }
+        // @formatter:off
+        final JSONObject document = new JSONObject()
+            .put("integer", AbstractConstants.integerConstant)
+            .put("boolean", true)
+            .put("string", AbstractConstants.stringConstant)
+            .put("double", AbstractConstants.numberConstant)
+            .put("enumVar", AbstractConstants.enumConstant)
+            .put("object", new JSONObject().put("anything", AbstractConstants.integerConstant))
+            .put("array", array);
+        // @formatter:on
+        Assert.assertTrue(validate(validator, schema, document));
+        // The document, the object, and the array
+        Assert.assertEquals(validator.getResultCache().getHits(), 0);
+        Assert.assertEquals(validator.getResultCache().getMisses(), 3);
+
+        // An equal document, and an equal document that is modified afterwards
+        final JSONObject copy = new JSONObject(document.toString());
+        Assert.assertTrue(validate(validator, schema, copy));
+        Assert.assertEquals(validator.getResultCache().getHits(), 1);
+        copy.getJSONArray("array").put(false);
+        Assert.assertFalse(validate(validator, schema, copy));
+        final long hits = validator.getResultCache().getHits();
+        Assert.assertTrue(validate(validator, schema, document));
+        Assert.assertEquals(validator.getResultCache().getHits(), hits + 1);
+        Assert.assertEquals(validator.getResultCache().getHitRate(), (double) (hits + 1)
+                / (hits + 1 + validator.getResultCache().getMisses()));
+
+        // The getters of a hashable document return new copies, which must still be
+        // found in the cache
+        final HashableJSONObject hashable = new HashableJSONObject(document);
+        Assert.assertTrue(validate(validator, schema, hashable));
+        final long hashableHits = validator.getResultCache().getHits();
+        Assert.assertTrue(validate(validator, schema, hashable));
+        Assert.assertEquals(validator.getResultCache().getHits(), hashableHits + 1);
+        hashable.put("array", hashable.getJSONArray("array").put(false));
+        Assert.assertFalse(validate(validator, schema, hashable));
+    }
+
+    @Test
+    public void testAdaptiveBranchOrdering() throws JSONException, JSONSchemaException {
+        // @formatter:off
+        final JSONObject document = new JSONObject()
+            .put("anyOf", new JSONArray()
+                .put(new JSONObject().put("type", "integer"))
+                .put(new JSONObject().put("type", "boolean"))
+                .put(new JSONObject().put("type", "string"))
+            )
+            .put("oneOf", new JSONArray()
+                .put(new JSONObject().put("type", "integer"))
+                .put(new JSONObject().put("type", "string"))
+                .put(new JSONObject().put("type", new JSONArray().put("string").put("boolean")))
+            );
+        // @formatter:on
+        final JSONSchema schema = new JSONSchemaStore().loadFromTree(document, OrgJSONTreeModel.INSTANCE);
+        final Validator adaptive = new DefaultValidator();
+        adaptive.setAdaptiveBranchOrdering(true);
+        final Validator validator = new DefaultValidator();
+
+        for (int i = 0; i < 64; i++) {
+            Assert.assertTrue(adaptive.validateValue(schema, true));
+        }
+        final BranchStatistics anyOf = adaptive.getAnyOfStatistics(schema);
+        Assert.assertEquals(anyOf.getNumberOfEvaluations(), 64);
+        Assert.assertEquals(anyOf.getMatches(1), 64);
+        Assert.assertEquals(anyOf.getOrder(), new int[] { 1, 0, 2 });
+        final BranchStatistics oneOf = adaptive.getOneOfStatistics(schema);
+        Assert.assertEquals(oneOf.getMatches(2), 64);
+        Assert.assertEquals(oneOf.getOrder(), new int[] { 2, 0, 1 });
+
+        // The verdicts do not depend on the order
+        for (final Object value : new Object[] { true, AbstractConstants.stringConstant,
+                AbstractConstants.integerConstant, AbstractConstants.numberConstant }) {
+            Assert.assertEquals(adaptive.validateValue(schema, value), validator.validateValue(schema, value),
+                    value.toString());
+        }
+        Assert.assertNull(validator.getAnyOfStatistics(schema));
+    }
+
+    @Test
+    public void testOneOfReferences() throws JSONException, JSONSchemaException {
+        // @formatter:off
+        final JSONObject schemaObject = new JSONObject("{"
+                + "\"type\": \"object\","
+                + "\"definitions\": {"
+                +     "\"A\": {\"type\": \"object\", \"properties\": {\"a\": {\"type\": \"string\"}}, \"required\": [\"a\"]},"
+                +     "\"B\": {\"type\": \"object\", \"properties\": {\"b\": {\"type\": \"integer\"}}, \"required\": [\"b\"]}"
+                + "},"
+                + "\"properties\": {"
+                +     "\"x\": {\"oneOf\": [{\"$ref\": \"#/definitions/A\"}, {\"$ref\": \"#/definitions/B\"}]}"
+                + "}}");
+        // @formatter:on
+        final JSONSchema schema = new JSONSchemaStore().loadFromJSONObject(schemaObject);
+        final Validator validator = new DefaultValidator();
+
+        final JSONObject onlyA = new JSONObject().put("x",
+                new JSONObject().put("a", AbstractConstants.stringConstant));
+        Assert.assertTrue(validate(validator, schema, onlyA));
+        final JSONObject both = new JSONObject().put("x", new JSONObject()
+                .put("a", AbstractConstants.stringConstant).put("b", AbstractConstants.integerConstant));
+        Assert.assertFalse(validate(validator, schema, both));
+        final JSONObject none = new JSONObject().put("x", new JSONObject());
+        Assert.assertFalse(validate(validator, schema, none));
+    }
+
+    @Test
+    public void testBatchValidation()
+            throws JSONException, JSONSchemaException, FileNotFoundException, URISyntaxException {
+        JSONSchema schema = loadSchemaResource("basicTypes.json");
+        Validator validator = new DefaultValidator();
+        // @formatter:off
+        final JSONObject valid = new JSONObject()
+            .put("integer", AbstractConstants.integerConstant)
+            .put("boolean", true)
+            .put("string", AbstractConstants.stringConstant)
+            .put("double", AbstractConstants.numberConstant)
+            .put("enumVar", AbstractConstants.enumConstant)
+            .put("object", new JSONObject())
+            .put("array", new JSONArray().put(AbstractConstants.stringConstant).put(AbstractConstants.stringConstant));
+        // @formatter:on
+        final JSONObject invalid = new JSONObject(valid.toString());
+        invalid.remove("boolean");
+
+        final List<JSONObject> documents = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            documents.add(i % 3 == 0 ? invalid : valid);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final List<BatchResult> results = new ArrayList<>();
+            results.add(validator.validateAll(schema, documents));
+            results.add(validator.validateAll(schema, documents, pool));
+            results.add(validator.validateAll(schema, documents.stream(), pool));
+            results.add(validator.validateAll(schema, documents, executor));
+            for (final BatchResult result : results) {
+                Assert.assertEquals(result.size(), 1000);
+                Assert.assertEquals(result.getNumberOfInvalid(), 334);
+                Assert.assertEquals(result.getNumberOfValid(), 666);
+                for (int i = 0; i < 1000; i++) {
+                    Assert.assertEquals(result.isValid(i), i % 3 != 0);
+                }
+                Assert.assertEquals(result.getValid().cardinality(), 666);
+            }
+        } finally {
+            pool.shutdown();
+            executor.shutdown();
+        }
+
+        final BatchResult empty = validator.validateAll(schema, Collections.emptyList());
+        Assert.assertEquals(empty.size(), 0);
+        Assert.assertEquals(empty.getNumberOfValid(), 0);
     }
 
     @Test
@@ -138,7 +357,7 @@ public class TestValidator {
                 append("}]").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -160,7 +379,7 @@ public class TestValidator {
                 append("}]").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -182,7 +401,47 @@ public class TestValidator {
                 append("}]").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
+    }
+
+    @Test
+    public void testCompiledRecursiveList() throws FileNotFoundException, JSONSchemaException, URISyntaxException {
+        JSONSchema schema = loadSchemaResource("recursiveList.json");
+        schema = schema.getStore().compile(schema);
+        Validator validator = new DefaultValidator();
+        StringBuilder builder = new StringBuilder();
+        // @formatter:off
+        builder.
+            append('{').
+            append("\"name\": ").append(escapeSymbol(AbstractConstants.stringConstant)).
+            append(',').
+            append("\"list\": [{").
+                    append("\"name\": ").append(escapeSymbol(AbstractConstants.stringConstant)).
+                    append(',').
+                    append("\"list\": [{").
+                        append("\"name\": ").append(escapeSymbol(AbstractConstants.stringConstant)).
+                    append("}]").
+                append("}]").
+            append('}');
+        // @formatter:on
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
+
+        builder = new StringBuilder();
+        // @formatter:off
+        builder.
+            append('{').
+            append("\"name\": ").append(escapeSymbol(AbstractConstants.stringConstant)).
+            append(',').
+            append("\"list\": [{").
+                    append("\"name\": ").append(escapeSymbol(AbstractConstants.stringConstant)).
+                    append(',').
+                    append("\"list\": [{").
+                        append("\"name\": ").append(escapeSymbol(AbstractConstants.integerConstant)).
+                    append("}]").
+                append("}]").
+            append('}');
+        // @formatter:on
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -202,7 +461,7 @@ public class TestValidator {
                 append('}').
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -223,7 +482,7 @@ public class TestValidator {
                 append('}').
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -240,7 +499,7 @@ public class TestValidator {
                 append('}').
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -260,7 +519,7 @@ public class TestValidator {
                 append('}').
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -276,7 +535,7 @@ public class TestValidator {
                 append("\"str1\": ").append(escapeSymbol(AbstractConstants.stringConstant)).
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -284,7 +543,7 @@ public class TestValidator {
             append('{').
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -297,7 +556,7 @@ public class TestValidator {
                 append("\"str4\": ").append(escapeSymbol(AbstractConstants.stringConstant)).
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -325,7 +584,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -346,7 +605,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -369,7 +628,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -392,7 +651,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -406,7 +665,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -424,7 +683,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -448,7 +707,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -470,7 +729,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -486,7 +745,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -506,7 +765,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -524,7 +783,7 @@ public class TestValidator {
                 append("]").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -542,7 +801,7 @@ public class TestValidator {
                 append("}").
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -555,7 +814,7 @@ public class TestValidator {
                 append("}").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -568,7 +827,7 @@ public class TestValidator {
                 append("}").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -586,7 +845,7 @@ public class TestValidator {
                 append("}").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -599,7 +858,7 @@ public class TestValidator {
                 append("}").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -612,7 +871,7 @@ public class TestValidator {
                 append("}").
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -666,7 +925,7 @@ public class TestValidator {
                     append(']').
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -717,7 +976,7 @@ public class TestValidator {
                     append(']').
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -764,7 +1023,7 @@ public class TestValidator {
                     append(']').
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -798,7 +1057,7 @@ public class TestValidator {
                 append(escapeSymbol(AbstractConstants.stringConstant)).append(":").append(escapeSymbol(AbstractConstants.integerConstant)).
             append('}');
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -829,7 +1088,7 @@ public class TestValidator {
                 append(escapeSymbol(AbstractConstants.stringConstant)).append(":").append(escapeSymbol(AbstractConstants.integerConstant)).
             append('}');
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
     }
 
     @Test
@@ -843,7 +1102,7 @@ public class TestValidator {
             .append("}")
         ;
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -854,7 +1113,7 @@ public class TestValidator {
             .append("}")
         ;
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -868,7 +1127,7 @@ public class TestValidator {
             .append("}")
         ;
         // @formatter:on
-        Assert.assertFalse(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertFalse(validate(validator, schema, new JSONObject(builder.toString())));
 
         builder = new StringBuilder();
         // @formatter:off
@@ -882,6 +1141,6 @@ public class TestValidator {
             .append("}")
         ;
         // @formatter:on
-        Assert.assertTrue(validator.validate(schema, new JSONObject(builder.toString())));
+        Assert.assertTrue(validate(validator, schema, new JSONObject(builder.toString())));
     }
 }